@@ -23,16 +23,21 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.jar.Attributes;
@@ -45,6 +50,7 @@ import org.apache.tools.ant.util.CollectionUtils;
 import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.ant.util.JavaEnvUtils;
 import org.apache.tools.ant.util.LoaderUtils;
+import org.apache.tools.ant.util.Metrics;
 import org.apache.tools.ant.util.ReflectUtil;
 import org.apache.tools.ant.util.VectorSet;
 import org.apache.tools.ant.launch.Locator;
@@ -70,6 +76,33 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
 
     private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
 
+    private static final Metrics.Counter LOADED_CLASSES = Metrics.getMetrics()
+        .getCounter("ant_classloader_classes_total",
+                    "Classes defined by AntClassLoaders.");
+    private static final Metrics.Histogram FIND_CLASS_TIME = Metrics.getMetrics()
+        .getHistogram("ant_classloader_find_class_nanoseconds",
+                      "Time AntClassLoaders spend searching and defining a class"
+                      + " on their own path.");
+
+    /**
+     * Whether the VM has accepted this class as parallel capable
+     * (Java7+).  If it hasn't, loading classes locks the whole loader.
+     */
+    private static final boolean PARALLEL_CAPABLE;
+
+    static {
+        boolean registered = false;
+        try {
+            // has to be invoked by this class itself
+            Method m = ClassLoader.class
+                .getDeclaredMethod("registerAsParallelCapable", new Class[0]);
+            registered = Boolean.TRUE.equals(m.invoke(null, new Object[0]));
+        } catch (Exception e) {
+            // pre Java7
+        }
+        PARALLEL_CAPABLE = registered;
+    }
+
     /**
      * An enumeration of all resources of a given name found within the
      * classpath of this class loader. This enumeration is used by the
@@ -85,6 +118,11 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
          */
         private String resourceName;
 
+        /**
+         * The classpath elements that may contain the resource.
+         */
+        private File[] components;
+
         /**
          * The index of the next classpath element to search.
          */
@@ -105,6 +143,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
          */
         ResourceEnumeration(String name) {
             this.resourceName = name;
+            this.components = getComponents(name);
             this.pathElementsIndex = 0;
             findNextResource();
         }
@@ -139,9 +178,9 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
          */
         private void findNextResource() {
             URL url = null;
-            while ((pathElementsIndex < pathComponents.size()) && (url == null)) {
+            while ((pathElementsIndex < components.length) && (url == null)) {
                 try {
-                    File pathComponent = (File) pathComponents.elementAt(pathElementsIndex);
+                    File pathComponent = components[pathElementsIndex];
                     url = getResourceURL(pathComponent, this.resourceName);
                     pathElementsIndex++;
                 } catch (BuildException e) {
@@ -212,9 +251,41 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      */
     private Hashtable jarFiles = new Hashtable();
 
+    /**
+     * The directories containing entries of each opened jar, "" for
+     * the root and "org/apache/tools/ant/" for this class' package
+     * (File to Set of Strings).
+     */
+    private Hashtable jarPackages = new Hashtable();
+
+    /**
+     * The path components that may contain resources of a package,
+     * in path order (package directory to File[]).  Directories are
+     * always included as they may change while the loader is used.
+     */
+    private final Map packageComponents = new HashMap();
+
+    /**
+     * Incremented whenever the path changes.
+     */
+    private int pathGeneration = 0;
+
+    /**
+     * Locks used while loading a class if the loader is parallel
+     * capable (class name to Object).
+     */
+    private final Hashtable loadingLocks = new Hashtable();
+
     /** Static map of jar file/time to manifest class-path entries */
     private static Map/*<String,String>*/ pathMap = Collections.synchronizedMap(new HashMap());
 
+    /**
+     * Static map of jar file/time to the directories containing
+     * entries, shared so new loaders don't need to open every jar.
+     */
+    private static Map/*<String,Set<String>>*/ packageMap =
+        Collections.synchronizedMap(new HashMap());
+
     /**
      * The context loader saved when setting the thread's current
      * context loader.
@@ -347,6 +418,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      */
     public void setClassPath(Path classpath) {
         pathComponents.removeAllElements();
+        pathChanged();
         if (classpath != null) {
             Path actualClasspath = classpath.concatSystemClasspath("ignore");
             String[] pathElements = actualClasspath.list();
@@ -459,6 +531,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
             return;
         }
         pathComponents.addElement(file);
+        pathChanged();
     }
 
     /**
@@ -474,6 +547,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
     protected void addPathFile(File pathComponent) throws IOException {
         if (!pathComponents.contains(pathComponent)) {
             pathComponents.addElement(pathComponent);
+            pathChanged();
         }
         if (pathComponent.isDirectory()) {
             return;
@@ -735,10 +809,9 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         // find the class we want.
         InputStream stream = null;
 
-        Enumeration e = pathComponents.elements();
-        while (e.hasMoreElements() && stream == null) {
-            File pathComponent = (File) e.nextElement();
-            stream = getResourceStream(pathComponent, name);
+        File[] components = getComponents(name);
+        for (int i = 0; i < components.length && stream == null; i++) {
+            stream = getResourceStream(components[i], name);
         }
         return stream;
     }
@@ -779,15 +852,10 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
                 }
             } else {
                 if (jarFile == null) {
-                    if (file.exists()) {
-                        jarFile = new JarFile(file);
-                        jarFiles.put(file, jarFile);
-                    } else {
+                    jarFile = getJarFile(file);
+                    if (jarFile == null) {
                         return null;
                     }
-                    //to eliminate a race condition, retrieve the entry
-                    //that is in the hash table under that filename
-                    jarFile = (JarFile) jarFiles.get(file);
                 }
                 JarEntry entry = jarFile.getJarEntry(resourceName);
                 if (entry != null) {
@@ -877,10 +945,9 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         } else {
             // try and load from this loader if the parent either didn't find
             // it or wasn't consulted.
-            Enumeration e = pathComponents.elements();
-            while (e.hasMoreElements() && url == null) {
-                File pathComponent = (File) e.nextElement();
-                url = getResourceURL(pathComponent, name);
+            File[] components = getComponents(name);
+            for (int i = 0; i < components.length && url == null; i++) {
+                url = getResourceURL(components[i], name);
                 if (url != null) {
                     log("Resource " + name + " loaded from ant loader", Project.MSG_DEBUG);
                 }
@@ -998,14 +1065,10 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
                 }
             } else {
                 if (jarFile == null) {
-                    if (file.exists()) {
-                        jarFile = new JarFile(file);
-                        jarFiles.put(file, jarFile);
-                    } else {
+                    jarFile = getJarFile(file);
+                    if (jarFile == null) {
                         return null;
                     }
-                    // potential race-condition
-                    jarFile = (JarFile) jarFiles.get(file);
                 }
                 JarEntry entry = jarFile.getJarEntry(resourceName);
                 if (entry != null) {
@@ -1045,12 +1108,18 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
      * on the system classpath (when not in isolated mode) or this loader's
      * classpath.
      */
-    protected synchronized Class loadClass(String classname, boolean resolve)
+    protected Class loadClass(String classname, boolean resolve)
             throws ClassNotFoundException {
         // 'sync' is needed - otherwise 2 threads can load the same class
         // twice, resulting in LinkageError: duplicated class definition.
         // findLoadedClass avoids that, but without sync it won't work.
+        synchronized (getLoadingLock(classname)) {
+            return loadClassUnlocked(classname, resolve);
+        }
+    }
 
+    private Class loadClassUnlocked(String classname, boolean resolve)
+            throws ClassNotFoundException {
         Class theClass = findLoadedClass(classname);
         if (theClass != null) {
             return theClass;
@@ -1083,6 +1152,23 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         return theClass;
     }
 
+    /**
+     * The object to lock while loading a given class.
+     */
+    private Object getLoadingLock(String classname) {
+        if (!PARALLEL_CAPABLE) {
+            return this;
+        }
+        synchronized (loadingLocks) {
+            Object lock = loadingLocks.get(classname);
+            if (lock == null) {
+                lock = new Object();
+                loadingLocks.put(classname, lock);
+            }
+            return lock;
+        }
+    }
+
     /**
      * Converts the class dot notation to a filesystem equivalent for
      * searching purposes.
@@ -1141,17 +1227,20 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
             return;
         }
         String packageName = className.substring(0, classIndex);
-        if (getPackage(packageName) != null) {
-            // already defined
-            return;
-        }
-        // define the package now
-        Manifest manifest = getJarManifest(container);
+        // classes of the same package may be loaded in parallel
+        synchronized (this) {
+            if (getPackage(packageName) != null) {
+                // already defined
+                return;
+            }
+            // define the package now
+            Manifest manifest = getJarManifest(container);
 
-        if (manifest == null) {
-            definePackage(packageName, null, null, null, null, null, null, null);
-        } else {
-            definePackage(container, packageName, manifest);
+            if (manifest == null) {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            } else {
+                definePackage(container, packageName, manifest);
+            }
         }
     }
 
@@ -1339,16 +1428,19 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         // we can find the class we want.
         InputStream stream = null;
         String classFilename = getClassFilename(name);
+        long start = Metrics.start();
         try {
-            Enumeration e = pathComponents.elements();
-            while (e.hasMoreElements()) {
-                File pathComponent = (File) e.nextElement();
+            File[] components = getComponents(classFilename);
+            for (int i = 0; i < components.length; i++) {
+                File pathComponent = components[i];
                 try {
                     stream = getResourceStream(pathComponent, classFilename);
                     if (stream != null) {
                         log("Loaded from " + pathComponent + " "
                             + classFilename, Project.MSG_DEBUG);
-                        return getClassFromStream(stream, name, pathComponent);
+                        Class c = getClassFromStream(stream, name, pathComponent);
+                        LOADED_CLASSES.increment();
+                        return c;
                     }
                 } catch (SecurityException se) {
                     throw se;
@@ -1360,6 +1452,7 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
             }
             throw new ClassNotFoundException(name);
         } finally {
+            FIND_CLASS_TIME.recordSince(start);
             FileUtils.close(stream);
         }
     }
@@ -1383,6 +1476,116 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
         return parent == null ? findSystemClass(name) : parent.loadClass(name);
     }
 
+    /**
+     * Opens a jar of the path unless it has been opened before.
+     *
+     * @param file the jar.
+     * @return the opened jar or null if the file doesn't exist.
+     * @exception IOException if the file cannot be opened as jar.
+     */
+    private JarFile getJarFile(File file) throws IOException {
+        JarFile jarFile = (JarFile) jarFiles.get(file);
+        if (jarFile == null) {
+            if (!file.exists()) {
+                return null;
+            }
+            jarFile = new JarFile(file);
+            jarFiles.put(file, jarFile);
+            //to eliminate a race condition, retrieve the entry
+            //that is in the hash table under that filename
+            jarFile = (JarFile) jarFiles.get(file);
+        }
+        return jarFile;
+    }
+
+    /**
+     * The directories that contain entries of a jar of the path.
+     *
+     * @param file a component of the path.
+     * @return null if the file is a directory or cannot be read as
+     *         a jar.
+     */
+    private Set getJarPackages(File file) {
+        Set packages = (Set) jarPackages.get(file);
+        if (packages == null && !file.isDirectory() && file.exists()) {
+            String absPathPlusTimeAndLength = file.getAbsolutePath()
+                + file.lastModified() + "-" + file.length();
+            packages = (Set) packageMap.get(absPathPlusTimeAndLength);
+            try {
+                if (packages == null) {
+                    packages = new HashSet();
+                    JarFile jarFile = getJarFile(file);
+                    for (Enumeration e = jarFile.entries(); e.hasMoreElements();) {
+                        String name = ((JarEntry) e.nextElement()).getName();
+                        packages.add(getPackageDir(name));
+                        if (name.endsWith("/")) {
+                            // lookups of the directory itself omit the slash
+                            packages.add(getPackageDir(
+                                name.substring(0, name.length() - 1)));
+                        }
+                    }
+                    packageMap.put(absPathPlusTimeAndLength, packages);
+                }
+                jarPackages.put(file, packages);
+            } catch (IOException ioe) {
+                packages = null;
+                log("Unable to index " + file + ": " + ioe.getMessage(),
+                    Project.MSG_VERBOSE);
+            }
+        }
+        return packages;
+    }
+
+    private static String getPackageDir(String resourceName) {
+        int slash = resourceName.lastIndexOf('/');
+        return slash < 0 ? "" : resourceName.substring(0, slash + 1);
+    }
+
+    /**
+     * The path components that may contain the given resource.
+     *
+     * <p>Skips all jars that don't contain any entry in the
+     * resource's directory, saving the lookup in each of them for
+     * long class paths.</p>
+     *
+     * @param resourceName the name of the resource.
+     * @return the components to search in path order.
+     */
+    private File[] getComponents(String resourceName) {
+        String packageDir = getPackageDir(resourceName);
+        int generation;
+        synchronized (packageComponents) {
+            File[] components = (File[]) packageComponents.get(packageDir);
+            if (components != null) {
+                return components;
+            }
+            generation = pathGeneration;
+        }
+        Object[] all = pathComponents.toArray();
+        List candidates = new ArrayList(all.length);
+        for (int i = 0; i < all.length; i++) {
+            Set packages = getJarPackages((File) all[i]);
+            if (packages == null || packages.contains(packageDir)) {
+                candidates.add(all[i]);
+            }
+        }
+        File[] components =
+            (File[]) candidates.toArray(new File[candidates.size()]);
+        synchronized (packageComponents) {
+            if (generation == pathGeneration) {
+                packageComponents.put(packageDir, components);
+            }
+        }
+        return components;
+    }
+
+    private void pathChanged() {
+        synchronized (packageComponents) {
+            pathGeneration++;
+            packageComponents.clear();
+        }
+    }
+
     /**
      * Cleans up any resources held by this classloader. Any open archive
      * files are closed.
@@ -1397,6 +1600,8 @@ public class AntClassLoader extends ClassLoader implements SubBuildListener {
             }
         }
         jarFiles = new Hashtable();
+        jarPackages = new Hashtable();
+        pathChanged();
         if (project != null) {
             project.removeBuildListener(this);
         }
@@ -0,0 +1,217 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant;
+
+/**
+ * Hands "message logged" events to the build listeners from a
+ * separate thread so the thread logging the message doesn't have to
+ * wait for the listeners writing to the console or a file.
+ *
+ * <p>Events are kept in a bounded ring buffer and passed on in the
+ * order they have been logged.  Threads logging a message block while
+ * the buffer is full.  The dispatching thread takes all buffered
+ * events at once and notifies the listeners without holding the
+ * lock.</p>
+ *
+ * <p>Project invokes {@link #flush flush} before it sends any other
+ * event, so listeners see the same order of events as they would
+ * without this class.</p>
+ *
+ * @since Ant 1.8.3
+ */
+final class AsyncMessageDispatcher implements Runnable {
+
+    /** Number of events that may be waiting for the dispatcher. */
+    private static final int CAPACITY = 1024;
+
+    private final BuildEvent[] events = new BuildEvent[CAPACITY];
+    private final BuildListener[][] receivers = new BuildListener[CAPACITY][];
+    private int head = 0;
+    private int count = 0;
+
+    /** whether the dispatcher thread is notifying listeners */
+    private boolean busy = false;
+    private boolean stopped = false;
+
+    /** first exception thrown by a listener, rethrown by flush */
+    private Throwable failure = null;
+
+    private final ThreadLocal isLoggingMessage;
+    private final Thread thread;
+
+    /**
+     * Starts the dispatcher thread.
+     * @param project the project whose events are dispatched.
+     * @param isLoggingMessage the project's flag that suppresses
+     * messages logged by listeners while they handle a message.
+     */
+    AsyncMessageDispatcher(Project project, ThreadLocal isLoggingMessage) {
+        this.isLoggingMessage = isLoggingMessage;
+        String name = project.getName();
+        thread = new Thread(this, "Ant message dispatcher"
+                            + (name == null ? "" : " for " + name));
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an event, waits while the buffer is full.
+     * @param event the event to send.
+     * @param listeners the listeners to send it to.
+     */
+    void dispatch(BuildEvent event, BuildListener[] listeners) {
+        if (!enqueue(event, listeners)) {
+            // the dispatcher has been stopped, keep the message anyway
+            dispatchNow(event, listeners);
+        }
+    }
+
+    private synchronized boolean enqueue(BuildEvent event,
+                                         BuildListener[] listeners) {
+        boolean interrupted = false;
+        while (count == CAPACITY && !stopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (stopped) {
+            return false;
+        }
+        int tail = (head + count) % CAPACITY;
+        events[tail] = event;
+        receivers[tail] = listeners;
+        if (count++ == 0) {
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Waits until all queued events have been sent to the listeners.
+     * @throws BuildException if a listener has failed.
+     */
+    synchronized void flush() {
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        boolean interrupted = false;
+        while ((count > 0 || busy) && !stopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            Throwable t = failure;
+            failure = null;
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new BuildException(t);
+        }
+    }
+
+    /**
+     * Sends all queued events and stops the dispatcher thread.
+     * @throws BuildException if a listener has failed.
+     */
+    void shutdown() {
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                stopped = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Sends the queued events in batches until the dispatcher is
+     * stopped.
+     */
+    public void run() {
+        isLoggingMessage.set(Boolean.TRUE);
+        BuildEvent[] batch = new BuildEvent[CAPACITY];
+        BuildListener[][] batchReceivers = new BuildListener[CAPACITY][];
+        while (true) {
+            int size;
+            synchronized (this) {
+                while (count == 0 && !stopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                if (count == 0) {
+                    return;
+                }
+                size = count;
+                for (int i = 0; i < size; i++) {
+                    int index = (head + i) % CAPACITY;
+                    batch[i] = events[index];
+                    batchReceivers[i] = receivers[index];
+                    events[index] = null;
+                    receivers[index] = null;
+                }
+                head = (head + size) % CAPACITY;
+                count = 0;
+                busy = true;
+                notifyAll();
+            }
+            Throwable t = null;
+            for (int i = 0; i < size; i++) {
+                try {
+                    dispatchNow(batch[i], batchReceivers[i]);
+                } catch (RuntimeException e) {
+                    t = t == null ? e : t;
+                } catch (Error e) {
+                    t = t == null ? e : t;
+                }
+                batch[i] = null;
+                batchReceivers[i] = null;
+            }
+            synchronized (this) {
+                if (failure == null) {
+                    failure = t;
+                }
+                busy = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private static void dispatchNow(BuildEvent event, BuildListener[] listeners) {
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].messageLogged(event);
+        }
+    }
+}
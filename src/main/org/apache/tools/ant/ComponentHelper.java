@@ -64,6 +64,16 @@ public class ComponentHelper  {
     /** Map from component name to anttypedefinition */
     private AntTypeTable antTypeTable;
 
+    /**
+     * Definitions inherited from the parent project that have not
+     * been copied into antTypeTable yet.  Shared with the parent and
+     * sibling projects and never modified.
+     */
+    private Map inheritedDefinitions;
+
+    /** Definitions handed out to subprojects, null if outdated */
+    private Map definitionSnapshot;
+
     /** Map of tasks generated from antTypeTable */
     private final Hashtable taskClassDefinitions = new Hashtable();
 
@@ -190,6 +200,8 @@ public class ComponentHelper  {
     public void setProject(Project project) {
         this.project = project;
         antTypeTable = new AntTypeTable(project);
+        inheritedDefinitions = null;
+        definitionSnapshot = null;
     }
 
     /**
@@ -229,12 +241,21 @@ public class ComponentHelper  {
      */
     public void initSubProject(ComponentHelper helper) {
         // add the types of the parent project
-        AntTypeTable typeTable = (AntTypeTable) helper.antTypeTable.clone();
-        synchronized (antTypeTable) { 
-            for (Iterator i = typeTable.values().iterator(); i.hasNext();) {
-                AntTypeDefinition def = (AntTypeDefinition) i.next();
-                antTypeTable.put(def.getName(), def);
+        Map parentDefinitions = helper.getDefinitionSnapshot();
+        synchronized (antTypeTable) {
+            if (antTypeTable.isEmpty() && inheritedDefinitions == null) {
+                // share them until this project needs to enumerate
+                // its definitions
+                inheritedDefinitions = parentDefinitions;
+            } else {
+                copyInheritedDefinitions();
+                for (Iterator i = parentDefinitions.values().iterator();
+                     i.hasNext();) {
+                    AntTypeDefinition def = (AntTypeDefinition) i.next();
+                    antTypeTable.put(def.getName(), def);
+                }
             }
+            definitionSnapshot = null;
         }
         // add the parsed namespaces of the parent project
         Set inheritedCheckedNamespace = helper.getCheckedNamespace();
@@ -306,7 +327,60 @@ public class ComponentHelper  {
      */
     public AntTypeDefinition getDefinition(String componentName) {
         checkNamespace(componentName);
-        return antTypeTable.getDefinition(componentName);
+        return lookupDefinition(componentName);
+    }
+
+    /**
+     * Looks up a definition in this project's table and the
+     * definitions shared with the parent project.
+     */
+    private AntTypeDefinition lookupDefinition(String componentName) {
+        synchronized (antTypeTable) {
+            AntTypeDefinition def = antTypeTable.getDefinition(componentName);
+            if (def == null && inheritedDefinitions != null) {
+                def = (AntTypeDefinition) inheritedDefinitions.get(componentName);
+            }
+            return def;
+        }
+    }
+
+    /**
+     * Copies the definitions shared with the parent project into
+     * antTypeTable so it can be enumerated or handed out.
+     * Callers must hold the lock on antTypeTable.
+     */
+    private void copyInheritedDefinitions() {
+        if (inheritedDefinitions != null) {
+            for (Iterator i = inheritedDefinitions.entrySet().iterator();
+                 i.hasNext();) {
+                Map.Entry e = (Map.Entry) i.next();
+                if (!antTypeTable.containsKey(e.getKey())) {
+                    antTypeTable.put(e.getKey(), e.getValue());
+                }
+            }
+            inheritedDefinitions = null;
+        }
+    }
+
+    /**
+     * Returns all definitions of this project as a map that is
+     * never modified, so subprojects can share it.  The map is only
+     * recreated after definitions have changed.
+     */
+    private Map getDefinitionSnapshot() {
+        synchronized (antTypeTable) {
+            if (definitionSnapshot == null) {
+                if (antTypeTable.isEmpty() && inheritedDefinitions != null) {
+                    definitionSnapshot = inheritedDefinitions;
+                } else {
+                    Map m = inheritedDefinitions == null ? new HashMap()
+                        : new HashMap(inheritedDefinitions);
+                    m.putAll(antTypeTable);
+                    definitionSnapshot = m;
+                }
+            }
+            return definitionSnapshot;
+        }
     }
 
     /**
@@ -317,6 +391,9 @@ public class ComponentHelper  {
     public void initDefaultDefinitions() {
         initTasks();
         initTypes();
+        synchronized (antTypeTable) {
+            definitionSnapshot = null;
+        }
     }
 
     /**
@@ -398,6 +475,7 @@ public class ComponentHelper  {
         synchronized (taskClassDefinitions) {
             synchronized (antTypeTable) {
                 if (rebuildTaskClassDefinitions) {
+                    copyInheritedDefinitions();
                     taskClassDefinitions.clear();
                     for (Iterator i = antTypeTable.keySet().iterator(); i.hasNext();) {
                         String name = (String) i.next();
@@ -427,6 +505,7 @@ public class ComponentHelper  {
         synchronized (typeClassDefinitions) {
             synchronized (antTypeTable) {
                 if (rebuildTypeClassDefinitions) {
+                    copyInheritedDefinitions();
                     typeClassDefinitions.clear();
                     for (Iterator i = antTypeTable.keySet().iterator(); i.hasNext();) {
                         String name = (String) i.next();
@@ -503,6 +582,9 @@ public class ComponentHelper  {
      *         (String to Class).
      */
     public Hashtable getAntTypeTable() {
+        synchronized (antTypeTable) {
+            copyInheritedDefinitions();
+        }
         return antTypeTable;
     }
 
@@ -617,6 +699,7 @@ public class ComponentHelper  {
         Class elementClass = o.getClass();
         String elementClassname = elementClass.getName();
         synchronized (antTypeTable) {
+            copyInheritedDefinitions();
             for (Iterator i = antTypeTable.values().iterator(); i.hasNext();) {
                 AntTypeDefinition def = (AntTypeDefinition) i.next();
                 if (elementClassname.equals(def.getClassName())
@@ -716,12 +799,12 @@ public class ComponentHelper  {
         synchronized (antTypeTable) {
             rebuildTaskClassDefinitions = true;
             rebuildTypeClassDefinitions = true;
-            AntTypeDefinition old = antTypeTable.getDefinition(name);
+            AntTypeDefinition old = lookupDefinition(name);
             if (old != null) {
                 if (sameDefinition(def, old)) {
                     return;
                 }
-                Class oldClass = antTypeTable.getExposedClass(name);
+                Class oldClass = old.getExposedClass(project);
                 boolean isTask = oldClass != null && Task.class.isAssignableFrom(oldClass);
                 project.log("Trying to override old definition of "
                         + (isTask ? "task " : "datatype ") + name, (def.similarDefinition(old,
@@ -729,6 +812,7 @@ public class ComponentHelper  {
             }
             project.log(" +Datatype " + name + " " + def.getClassName(), Project.MSG_DEBUG);
             antTypeTable.put(name, def);
+            definitionSnapshot = null;
         }
     }
 
@@ -1020,6 +1104,9 @@ public class ComponentHelper  {
         out.println("Action: Check that any <presetdef>/<macrodef>"
                 + " declarations have taken place.");
         if (uri.length() > 0) {
+            synchronized (antTypeTable) {
+                copyInheritedDefinitions();
+            }
             List matches = antTypeTable.findMatches(uri);
             if (matches.size() > 0) {
                 out.println();
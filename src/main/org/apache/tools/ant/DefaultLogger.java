@@ -91,6 +91,21 @@ public class DefaultLogger implements BuildLogger {
         this.msgOutputLevel = level;
     }
 
+    /**
+     * The highest level of message this logger responds to.
+     *
+     * <p>If all listeners of a project are DefaultLoggers, the
+     * project doesn't even create events for messages of a higher
+     * level.  Subclasses that want to see all messages need to
+     * return <code>Project.MSG_DEBUG</code>.</p>
+     *
+     * @return the logging level of the logger.
+     * @since Ant 1.8.3
+     */
+    public int getMessageOutputLevel() {
+        return msgOutputLevel;
+    }
+
     /**
      * Sets the output stream to which this logger is to send its output.
      *
@@ -41,6 +41,7 @@ import org.apache.tools.ant.types.selectors.TokenizedPath;
 import org.apache.tools.ant.types.selectors.TokenizedPattern;
 import org.apache.tools.ant.util.CollectionUtils;
 import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.Metrics;
 import org.apache.tools.ant.util.SymbolicLinkUtils;
 import org.apache.tools.ant.util.VectorSet;
 
@@ -211,6 +212,16 @@ public class DirectoryScanner
     private static final SymbolicLinkUtils SYMLINK_UTILS =
         SymbolicLinkUtils.getSymbolicLinkUtils();
 
+    private static final Metrics.Histogram SCAN_TIME = Metrics.getMetrics()
+        .getHistogram("ant_directoryscanner_scan_nanoseconds",
+                      "Time spent in DirectoryScanner.scan.");
+    private static final Metrics.Counter SCANNED_DIRECTORIES = Metrics.getMetrics()
+        .getCounter("ant_directoryscanner_directories_total",
+                    "Directories listed by DirectoryScanner.");
+    private static final Metrics.Counter SCANNED_FILES = Metrics.getMetrics()
+        .getCounter("ant_directoryscanner_files_total",
+                    "Files and directories examined by DirectoryScanner.");
+
     /**
      * Patterns which should be excluded by default.
      *
@@ -842,6 +853,7 @@ public class DirectoryScanner
             scanning = true;
         }
         File savedBase = basedir;
+        long start = Metrics.start();
         try {
             synchronized (this) {
                 illegal = null;
@@ -907,6 +919,7 @@ public class DirectoryScanner
             throw new BuildException(ex);
         } finally {
             basedir = savedBase;
+            SCAN_TIME.recordSince(start);
             synchronized (scanLock) {
                 scanning = false;
                 scanLock.notifyAll();
@@ -1241,6 +1254,8 @@ public class DirectoryScanner
         } else {
             directoryNamesFollowed.addFirst(dir.getName());
         }
+        SCANNED_DIRECTORIES.increment();
+        SCANNED_FILES.add(newfiles.length);
 
         for (int i = 0; i < newfiles.length; i++) {
             String name = vpath + newfiles[i];
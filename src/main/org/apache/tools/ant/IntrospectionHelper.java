@@ -25,9 +25,11 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import org.apache.tools.ant.types.EnumeratedAttribute;
 import org.apache.tools.ant.types.Resource;
 import org.apache.tools.ant.types.resources.FileProvider;
@@ -83,6 +85,20 @@ public final class IntrospectionHelper {
         }
     }
 
+    /**
+     * Attribute types whose instances are immutable, so a value
+     * converted from a String can be reused for the same String.
+     */
+    private static final Set IMMUTABLE_TYPES = new HashSet();
+
+    static {
+        Class[] types = {Byte.class, Short.class, Integer.class, Long.class,
+                         Float.class, Double.class};
+        for (int i = 0; i < types.length; i++) {
+            IMMUTABLE_TYPES.add(types[i]);
+        }
+    }
+
     private static final int MAX_REPORT_NESTED_TEXT = 20;
     private static final String ELLIPSIS = "...";
 
@@ -377,8 +393,12 @@ public final class IntrospectionHelper {
      */
     public void setAttribute(Project p, Object element, String attributeName,
             Object value) throws BuildException {
-        AttributeSetter as = (AttributeSetter) attributeSetters.get(
+        // attribute names are almost always lower case already
+        AttributeSetter as = (AttributeSetter) attributeSetters.get(attributeName);
+        if (as == null) {
+            as = (AttributeSetter) attributeSetters.get(
                 attributeName.toLowerCase(Locale.ENGLISH));
+        }
         if (as == null && value != null) {
             if (element instanceof DynamicAttributeNS) {
                 DynamicAttributeNS dc = (DynamicAttributeNS) element;
@@ -1133,12 +1153,17 @@ public final class IntrospectionHelper {
         }
 
         if (java.lang.Long.class.equals(reflectedArg)) {
+            final ConversionCache cache = new ConversionCache();
             return new AttributeSetter(m, arg) {
                 public void set(Project p, Object parent, String value)
                         throws InvocationTargetException, IllegalAccessException, BuildException {
                     try {
-                        m.invoke(parent, new Object[] {
-                                new Long(StringUtils.parseHumanSizes(value)) });
+                        Object l = cache.get(value);
+                        if (l == null) {
+                            l = new Long(StringUtils.parseHumanSizes(value));
+                            cache.put(value, l);
+                        }
+                        m.invoke(parent, new Object[] {l});
                     } catch (NumberFormatException e) {
                         throw new BuildException("Can't assign non-numeric"
                                                  + " value '" + value + "' to"
@@ -1175,16 +1200,25 @@ public final class IntrospectionHelper {
         }
         final boolean finalIncludeProject = includeProject;
         final Constructor finalConstructor = c;
+        final boolean setProject = hasSetProject(reflectedArg);
+        final ConversionCache cache = !includeProject
+            && IMMUTABLE_TYPES.contains(reflectedArg) ? new ConversionCache() : null;
 
         return new AttributeSetter(m, arg) {
             public void set(Project p, Object parent, String value)
                     throws InvocationTargetException, IllegalAccessException, BuildException {
                 try {
-                    Object[] args = finalIncludeProject
+                    Object attribute = cache == null ? null : cache.get(value);
+                    if (attribute == null) {
+                        Object[] args = finalIncludeProject
                             ? new Object[] {p, value} : new Object[] {value};
 
-                    Object attribute = finalConstructor.newInstance(args);
-                    if (p != null) {
+                        attribute = finalConstructor.newInstance(args);
+                        if (cache != null) {
+                            cache.put(value, attribute);
+                        }
+                    }
+                    if (p != null && setProject) {
                         p.setProjectReference(attribute);
                     }
                     m.invoke(parent, new Object[] {attribute});
@@ -1215,16 +1249,26 @@ public final class IntrospectionHelper {
             //ignore
         }
         if (enumClass != null && enumClass.isAssignableFrom(reflectedArg)) {
+            final Method valueOf;
+            try {
+                valueOf = reflectedArg.getMethod("valueOf",
+                                                 new Class[] {String.class});
+            } catch (NoSuchMethodException e) {
+                // every enum has one
+                throw new BuildException(e);
+            }
+            final ConversionCache cache = new ConversionCache();
             return new AttributeSetter(m, arg) {
                 public void set(Project p, Object parent, String value)
                     throws InvocationTargetException, IllegalAccessException,
                     BuildException {
                     try {
-                        m.invoke(
-                            parent, new Object[] {
-                                reflectedArg.getMethod(
-                                    "valueOf", new Class[] {String.class}).
-                                invoke(null, new Object[] {value})});
+                        Object e = cache.get(value);
+                        if (e == null) {
+                            e = valueOf.invoke(null, new Object[] {value});
+                            cache.put(value, e);
+                        }
+                        m.invoke(parent, new Object[] {e});
                     } catch (InvocationTargetException x) {
                         //there is specific logic here for the value
                         // being out of the allowed set of enumerations.
@@ -1247,6 +1291,24 @@ public final class IntrospectionHelper {
         return null;
     }
 
+    /**
+     * Whether Project#setProjectReference would do anything for
+     * instances of the given class.
+     */
+    private static boolean hasSetProject(Class c) {
+        if (ProjectComponent.class.isAssignableFrom(c)) {
+            return true;
+        }
+        try {
+            return c.getMethod("setProject", new Class[] {Project.class}) != null;
+        } catch (NoSuchMethodException e) {
+            return false;
+        } catch (SecurityException e) {
+            // let setProjectReference deal with it
+            return true;
+        }
+    }
+
     /**
      * Returns a description of the type of the given element in
      * relation to a given project. This is used for logging purposes
@@ -1505,6 +1567,40 @@ public final class IntrospectionHelper {
                 throws InvocationTargetException, IllegalAccessException, BuildException;
     }
 
+    /**
+     * Small cache of String to attribute value conversions for
+     * attribute types with immutable instances, as macros and loops
+     * set the same literal values over and over again.
+     *
+     * <p>Direct mapped, a colliding value simply replaces the
+     * previous one.  Entries are immutable so no locking is
+     * required.</p>
+     */
+    private static final class ConversionCache {
+        private static final int SIZE = 16;
+        private final Conversion[] entries = new Conversion[SIZE];
+
+        Object get(String value) {
+            Conversion c = entries[value.hashCode() & (SIZE - 1)];
+            return c != null && c.value.equals(value) ? c.result : null;
+        }
+
+        void put(String value, Object result) {
+            entries[value.hashCode() & (SIZE - 1)] =
+                new Conversion(value, result);
+        }
+    }
+
+    private static final class Conversion {
+        private final String value;
+        private final Object result;
+
+        private Conversion(String value, Object result) {
+            this.value = value;
+            this.result = result;
+        }
+    }
+
     /**
      * Clears the static cache of on build finished.
      */
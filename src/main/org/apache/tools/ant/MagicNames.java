@@ -183,6 +183,42 @@ public final class MagicNames {
      */
     public static final String REFID_CLASSPATH_REUSE_LOADER = "ant.reuse.loader";
 
+    /**
+     * Name of the magic property that makes ClasspathUtils share
+     * class loaders for identical class paths of jars between all
+     * projects inside the VM.
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String CLASSLOADER_CACHE = "ant.classloader.cache";
+
+    /**
+     * Name of the magic property that makes projects pass logged
+     * messages to their build listeners from a separate thread while
+     * targets are executed.
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String ASYNC_LOGGING = "ant.logging.async";
+
+    /**
+     * Name of the magic property that switches on the collection of
+     * metrics while targets are executed.
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String METRICS = "ant.metrics";
+
+    /**
+     * Name of the magic property holding the file metrics are written
+     * to once the targets have been executed.  Metrics are written as
+     * JSON if the file name ends with .json and in the Prometheus text
+     * format otherwise.
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String METRICS_FILE = "ant.metrics.file";
+
     /**
      * Prefix used to store classloader references.
      * Value: {@value}
@@ -248,5 +284,62 @@ public final class MagicNames {
      */
     public static final String PROJECT_INVOKED_TARGETS
         = "ant.project.invoked-targets";
-}
 
+    /**
+     * Name of the property that enables the in-VM cache of parsed
+     * build files if set to true.
+     *
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String PARSER_CACHE = "ant.parser.cache";
+
+    /**
+     * Name of the property holding a directory where parsed build
+     * files are cached across runs.  Setting it implies {@link
+     * #PARSER_CACHE}.
+     *
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String PARSER_CACHE_DIR = "ant.parser.cachedir";
+
+    /**
+     * Name of the property holding the directory of the local target
+     * cache.
+     *
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String TARGET_CACHE_DIR = "ant.target.cache.dir";
+
+    /**
+     * Name of the property holding a directory used as remote target
+     * cache.
+     *
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String TARGET_CACHE_REMOTE_DIR
+        = "ant.target.cache.remote.dir";
+
+    /**
+     * Name of the property holding the classname of a
+     * TargetCacheBackend used as remote target cache.
+     *
+     * Value: {@value}
+     * @since Ant 1.8.3
+     */
+    public static final String TARGET_CACHE_REMOTE_CLASSNAME
+        = "ant.target.cache.remote.class";
+
+    /**
+     * Name of the property holding the directory in which tasks keep
+     * their change journals.
+     *
+     * Value: {@value}
+     * @see org.apache.tools.ant.util.ChangeJournal
+     * @since Ant 1.8.3
+     */
+    public static final String CHANGE_JOURNAL_DIR = "ant.change.journal.dir";
+}
@@ -36,6 +36,7 @@ import java.util.Vector;
 import org.apache.tools.ant.input.DefaultInputHandler;
 import org.apache.tools.ant.input.InputHandler;
 import org.apache.tools.ant.launch.AntMain;
+import org.apache.tools.ant.launch.ReusableAntMain;
 import org.apache.tools.ant.property.ResolvePropertyMap;
 import org.apache.tools.ant.util.ClasspathUtils;
 import org.apache.tools.ant.util.FileUtils;
@@ -53,7 +54,7 @@ import org.apache.tools.ant.util.ProxySetup;
  * class to see how it manipulates the Ant project classes.
  *
  */
-public class Main implements AntMain {
+public class Main implements ReusableAntMain {
 
     /**
      * A Set of args are are handled by the launcher and should
@@ -67,6 +68,7 @@ public class Main implements AntMain {
         LAUNCH_COMMANDS.add("--noclasspath");
         LAUNCH_COMMANDS.add("-nouserlib");
         LAUNCH_COMMANDS.add("-main");
+        LAUNCH_COMMANDS.add("-daemon");
     }
 
     /** The default build file name. {@value} */
@@ -191,14 +193,32 @@ public class Main implements AntMain {
      */
     public void startAnt(String[] args, Properties additionalUserProperties,
                          ClassLoader coreLoader) {
+        exit(runAnt(args, additionalUserProperties, coreLoader));
+    }
+
+    /**
+     * Run Ant without calling {@link #exit exit} at the end.
+     * @param args command line args
+     * @param additionalUserProperties properties to set beyond those that
+     *        may be specified on the args list
+     * @param coreLoader - not used
+     * @return the exit code of the build
+     *
+     * @since Ant 1.8.3
+     */
+    public int runAnt(String[] args, Properties additionalUserProperties,
+                      ClassLoader coreLoader) {
+        // a previous run in the same VM may have redirected them
+        out = System.out;
+        err = System.err;
+        isLogFileUsed = false;
 
         try {
             processArgs(args);
         } catch (Throwable exc) {
             handleLogfile();
             printMessage(exc);
-            exit(1);
-            return;
+            return 1;
         }
 
         if (additionalUserProperties != null) {
@@ -232,7 +252,7 @@ public class Main implements AntMain {
         } finally {
             handleLogfile();
         }
-        exit(exitCode);
+        return exitCode;
     }
 
     /**
@@ -972,7 +992,10 @@ public class Main implements AntMain {
         msg.append("  -noclasspath           Run ant without using CLASSPATH" + lSep);
         msg.append("  -autoproxy             Java1.5+: use the OS proxy settings"
                 + lSep);
-        msg.append("  -main <class>          override Ant's normal entry point");
+        msg.append("  -main <class>          override Ant's normal entry point" + lSep);
+        msg.append("  -daemon                keep a VM running that builds on behalf of"
+                   + lSep
+                   + "                         org.apache.tools.ant.launch.AntClient");
         System.out.println(msg.toString());
     }
 
@@ -18,11 +18,15 @@
 package org.apache.tools.ant;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.EOFException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -47,6 +51,7 @@ import org.apache.tools.ant.types.resources.FileResource;
 import org.apache.tools.ant.util.CollectionUtils;
 import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.ant.util.JavaEnvUtils;
+import org.apache.tools.ant.util.Metrics;
 import org.apache.tools.ant.util.StringUtils;
 import org.apache.tools.ant.util.VectorSet;
 
@@ -128,6 +133,10 @@ public class Project implements ResourceFactory {
     /** Instance of a utility class to use for file operations. */
     private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
 
+    /** Location of ant.jar, it doesn't change while the VM is running. */
+    private static String antLibLocation;
+    private static boolean antLibLocationKnown = false;
+
     /** Name of this project. */
     private String name;
     /** Description for this project (if any). */
@@ -172,6 +181,12 @@ public class Project implements ResourceFactory {
     /** List of listeners to notify of build events. */
     private volatile BuildListener[] listeners = new BuildListener[0];
 
+    /**
+     * Passes logged messages to the listeners while targets are
+     * executed if the ant.logging.async property is set.
+     */
+    private volatile AsyncMessageDispatcher messageDispatcher = null;
+
     /** for each thread, record whether it is currently executing
         messageLogged */
     private final ThreadLocal isLoggingMessage = new ThreadLocal() {
@@ -321,11 +336,20 @@ public class Project implements ResourceFactory {
      * to the result
      */
     private void setAntLib() {
-        File antlib = org.apache.tools.ant.launch.Locator.getClassSource(
-            Project.class);
+        String antlib = getAntLibLocation();
         if (antlib != null) {
-            setPropertyInternal(MagicNames.ANT_LIB, antlib.getAbsolutePath());
+            setPropertyInternal(MagicNames.ANT_LIB, antlib);
+        }
+    }
+
+    private static synchronized String getAntLibLocation() {
+        if (!antLibLocationKnown) {
+            File antlib = org.apache.tools.ant.launch.Locator.getClassSource(
+                Project.class);
+            antLibLocation = antlib == null ? null : antlib.getAbsolutePath();
+            antLibLocationKnown = true;
         }
+        return antLibLocation;
     }
     /**
      * Factory method to create a class loader for loading classes from
@@ -1248,8 +1272,67 @@ public class Project implements ResourceFactory {
     public void executeTargets(Vector names) throws BuildException {
         setUserProperty(MagicNames.PROJECT_INVOKED_TARGETS,
                         CollectionUtils.flattenToString(names));
-        getExecutor().executeTargets(this,
-            (String[]) (names.toArray(new String[names.size()])));
+        AsyncMessageDispatcher dispatcher = null;
+        if (messageDispatcher == null
+            && toBoolean(getProperty(MagicNames.ASYNC_LOGGING))) {
+            dispatcher = new AsyncMessageDispatcher(this, isLoggingMessage);
+            messageDispatcher = dispatcher;
+        }
+        boolean collectMetrics = !Metrics.isEnabled()
+            && toBoolean(getProperty(MagicNames.METRICS));
+        if (collectMetrics) {
+            Metrics.getMetrics().reset();
+            Metrics.setEnabled(true);
+        }
+        try {
+            getExecutor().executeTargets(this,
+                (String[]) (names.toArray(new String[names.size()])));
+        } finally {
+            if (collectMetrics) {
+                Metrics.setEnabled(false);
+                writeMetrics();
+            }
+            if (dispatcher != null) {
+                messageDispatcher = null;
+                dispatcher.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics to the file named by the ant.metrics.file
+     * property.
+     */
+    private void writeMetrics() {
+        String name = getProperty(MagicNames.METRICS_FILE);
+        if (name == null) {
+            return;
+        }
+        File file = resolveFile(name);
+        Writer w = null;
+        try {
+            w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            if (name.endsWith(".json")) {
+                Metrics.getMetrics().writeJson(w);
+            } else {
+                Metrics.getMetrics().writePrometheus(w);
+            }
+        } catch (IOException e) {
+            log("Failed to write metrics to " + file + ": " + e.getMessage(),
+                MSG_WARN);
+        } finally {
+            FileUtils.close(w);
+        }
+    }
+
+    /**
+     * The metrics collected by Ant's core classes.
+     *
+     * @return the metrics shared by all projects of this VM.
+     * @since Ant 1.8.3
+     */
+    public Metrics getMetrics() {
+        return Metrics.getMetrics();
     }
 
     /**
@@ -2071,6 +2154,7 @@ public class Project implements ResourceFactory {
      * to the build listeners for this project.
      */
     public void fireBuildStarted() {
+        flushMessages();
         BuildEvent event = new BuildEvent(this);
         BuildListener[] currListeners = listeners;
         for (int i = 0; i < currListeners.length; i++) {
@@ -2086,6 +2170,7 @@ public class Project implements ResourceFactory {
      *                  a successful build.
      */
     public void fireBuildFinished(Throwable exception) {
+        flushMessages();
         BuildEvent event = new BuildEvent(this);
         event.setException(exception);
         BuildListener[] currListeners = listeners;
@@ -2103,6 +2188,7 @@ public class Project implements ResourceFactory {
      * @since Ant 1.6.2
      */
     public void fireSubBuildStarted() {
+        flushMessages();
         BuildEvent event = new BuildEvent(this);
         BuildListener[] currListeners = listeners;
         for (int i = 0; i < currListeners.length; i++) {
@@ -2122,6 +2208,7 @@ public class Project implements ResourceFactory {
      * @since Ant 1.6.2
      */
     public void fireSubBuildFinished(Throwable exception) {
+        flushMessages();
         BuildEvent event = new BuildEvent(this);
         event.setException(exception);
         BuildListener[] currListeners = listeners;
@@ -2140,6 +2227,7 @@ public class Project implements ResourceFactory {
      *               Must not be <code>null</code>.
      */
     protected void fireTargetStarted(Target target) {
+        flushMessages();
         BuildEvent event = new BuildEvent(target);
         BuildListener[] currListeners = listeners;
         for (int i = 0; i < currListeners.length; i++) {
@@ -2159,6 +2247,7 @@ public class Project implements ResourceFactory {
      *                  a successful build.
      */
     protected void fireTargetFinished(Target target, Throwable exception) {
+        flushMessages();
         BuildEvent event = new BuildEvent(target);
         event.setException(exception);
         BuildListener[] currListeners = listeners;
@@ -2176,6 +2265,7 @@ public class Project implements ResourceFactory {
      *               Must not be <code>null</code>.
      */
     protected void fireTaskStarted(Task task) {
+        flushMessages();
         // register this as the current task on the current thread.
         registerThreadTask(Thread.currentThread(), task);
         BuildEvent event = new BuildEvent(task);
@@ -2196,6 +2286,7 @@ public class Project implements ResourceFactory {
      *                  a successful build.
      */
     protected void fireTaskFinished(Task task, Throwable exception) {
+        flushMessages();
         registerThreadTask(Thread.currentThread(), null);
         System.out.flush();
         System.err.flush();
@@ -2208,6 +2299,51 @@ public class Project implements ResourceFactory {
 
     }
 
+    /**
+     * Waits until the listeners have seen all messages logged so far.
+     */
+    private void flushMessages() {
+        AsyncMessageDispatcher dispatcher = messageDispatcher;
+        if (dispatcher != null) {
+            dispatcher.flush();
+        }
+    }
+
+    /**
+     * Loggers of Ant itself known to ignore all messages above their
+     * message output level.  Subclasses written by others may look at
+     * more messages.
+     */
+    private static final Set THRESHOLD_LOGGERS = new HashSet(Arrays.asList(
+        new String[] {
+            "org.apache.tools.ant.DefaultLogger",
+            "org.apache.tools.ant.NoBannerLogger",
+            "org.apache.tools.ant.listener.AnsiColorLogger",
+            "org.apache.tools.ant.listener.MailLogger",
+            "org.apache.tools.ant.listener.ProfileLogger",
+            "org.apache.tools.ant.listener.SimpleBigProjectLogger",
+            "org.apache.tools.ant.listener.TimestampedLogger"
+        }));
+
+    /**
+     * The highest priority of messages any of the listeners is
+     * interested in.  Messages with a priority above this aren't sent
+     * at all.
+     */
+    /*package*/ static int getMessageThreshold(BuildListener[] currListeners) {
+        int threshold = -1;
+        for (int i = 0; i < currListeners.length; i++) {
+            if (!THRESHOLD_LOGGERS.contains(currListeners[i].getClass()
+                                            .getName())) {
+                return MSG_DEBUG;
+            }
+            threshold = Math.max(threshold,
+                                 ((DefaultLogger) currListeners[i])
+                                 .getMessageOutputLevel());
+        }
+        return threshold;
+    }
+
     /**
      * Send a &quot;message logged&quot; event to the build listeners
      * for this project.
@@ -2250,6 +2386,11 @@ public class Project implements ResourceFactory {
         try {
             isLoggingMessage.set(Boolean.TRUE);
             BuildListener[] currListeners = listeners;
+            AsyncMessageDispatcher dispatcher = messageDispatcher;
+            if (dispatcher != null) {
+                dispatcher.dispatch(event, currListeners);
+                return;
+            }
             for (int i = 0; i < currListeners.length; i++) {
                 currListeners[i].messageLogged(event);
             }
@@ -2285,6 +2426,9 @@ public class Project implements ResourceFactory {
      */
     protected void fireMessageLogged(Project project, String message,
             Throwable throwable, int priority) {
+        if (priority > getMessageThreshold(listeners)) {
+            return;
+        }
         BuildEvent event = new BuildEvent(project);
         event.setException(throwable);
         fireMessageLoggedEvent(event, message, priority);
@@ -2317,6 +2461,9 @@ public class Project implements ResourceFactory {
      */
     protected void fireMessageLogged(Target target, String message,
             Throwable throwable, int priority) {
+        if (priority > getMessageThreshold(listeners)) {
+            return;
+        }
         BuildEvent event = new BuildEvent(target);
         event.setException(throwable);
         fireMessageLoggedEvent(event, message, priority);
@@ -2348,6 +2495,9 @@ public class Project implements ResourceFactory {
      */
     protected void fireMessageLogged(Task task, String message,
             Throwable throwable, int priority) {
+        if (priority > getMessageThreshold(listeners)) {
+            return;
+        }
         BuildEvent event = new BuildEvent(task);
         event.setException(throwable);
         fireMessageLoggedEvent(event, message, priority);
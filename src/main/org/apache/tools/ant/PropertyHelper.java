@@ -34,6 +34,7 @@ import org.apache.tools.ant.property.GetProperty;
 import org.apache.tools.ant.property.ParseNextProperty;
 import org.apache.tools.ant.property.PropertyExpander;
 import org.apache.tools.ant.property.ParseProperties;
+import org.apache.tools.ant.util.Metrics;
 
 /* ISSUES:
  - ns param. It could be used to provide "namespaces" for properties, which
@@ -246,10 +247,33 @@ public class PropertyHelper implements GetProperty {
         }
     };
 
+    /**
+     * Number of parsed Strings kept in the template cache, must be a
+     * power of two.
+     */
+    private static final int TEMPLATE_CACHE_SIZE = 1024;
+
+    /** Strings longer than that are not cached. */
+    private static final int MAX_TEMPLATE_LENGTH = 1024;
+
+    /**
+     * Direct mapped cache of Strings parsed with the default
+     * expanders, shared by all PropertyHelpers as the result of
+     * parsing only depends on the String itself.
+     */
+    private static final Template[] TEMPLATES = new Template[TEMPLATE_CACHE_SIZE];
+
+    private static final Metrics.Histogram EXPANSION_TIME = Metrics.getMetrics()
+        .getHistogram("ant_property_expansion_nanoseconds",
+                      "Time spent expanding property references in a String.");
+
     private Project project;
     private PropertyHelper next;
     private Hashtable delegates = new Hashtable();
 
+    /** The expanders installed by the constructor. */
+    private final Collection defaultExpanders;
+
     /** Project properties map (usually String to String). */
     private Hashtable properties = new Hashtable();
 
@@ -275,6 +299,8 @@ public class PropertyHelper implements GetProperty {
         add(TO_STRING);
         add(SKIP_DOUBLE_DOLLAR);
         add(DEFAULT_EXPANDER);
+        // not via getExpanders() which subclasses may override
+        defaultExpanders = (Collection) delegates.get(PropertyExpander.class);
     }
 
     //  --------------------------------------------------------
@@ -389,7 +415,19 @@ public class PropertyHelper implements GetProperty {
      *
      * @return the project's property helper.
      */
-    public static synchronized PropertyHelper getPropertyHelper(Project project) {
+    public static PropertyHelper getPropertyHelper(Project project) {
+        if (project != null) {
+            // the usual case, avoid the global lock
+            PropertyHelper helper = (PropertyHelper) project.getReference(MagicNames
+                                                                          .REFID_PROPERTY_HELPER);
+            if (helper != null) {
+                return helper;
+            }
+        }
+        return createPropertyHelper(project);
+    }
+
+    private static synchronized PropertyHelper createPropertyHelper(Project project) {
         PropertyHelper helper = null;
         if (project != null) {
             helper = (PropertyHelper) project.getReference(MagicNames
@@ -584,8 +622,18 @@ public class PropertyHelper implements GetProperty {
      *         <code>null</code> if the original string is <code>null</code>.
      */
     public Object parseProperties(String value) throws BuildException {
-        return new ParseProperties(getProject(), getExpanders(), this)
-            .parseProperties(value);
+        long start = Metrics.start();
+        try {
+            Collection expanders = getExpanders();
+            if (expanders == defaultExpanders && value != null
+                && value.length() > 0) {
+                return getTemplate(value).expand(this);
+            }
+            return new ParseProperties(getProject(), expanders, this)
+                .parseProperties(value);
+        } finally {
+            EXPANSION_TIME.recordSince(start);
+        }
     }
 
     /**
@@ -594,10 +642,31 @@ public class PropertyHelper implements GetProperty {
      * @return <code>true</code> if <code>value</code> contains property notation.
      */
     public boolean containsProperties(String value) {
-        return new ParseProperties(getProject(), getExpanders(), this)
+        Collection expanders = getExpanders();
+        if (expanders == defaultExpanders && value != null) {
+            return getTemplate(value).containsProperties();
+        }
+        return new ParseProperties(getProject(), expanders, this)
             .containsProperties(value);
     }
 
+    /**
+     * Parses the String with the default expanders or takes the
+     * result of an earlier parse from the cache.
+     */
+    private static Template getTemplate(String value) {
+        if (value.length() > MAX_TEMPLATE_LENGTH) {
+            return Template.parse(value);
+        }
+        int index = value.hashCode() & (TEMPLATE_CACHE_SIZE - 1);
+        Template t = TEMPLATES[index];
+        if (t == null || !t.raw.equals(value)) {
+            t = Template.parse(value);
+            TEMPLATES[index] = t;
+        }
+        return t;
+    }
+
     // -------------------- Default implementation  --------------------
     // Methods used to support the default behavior and provide backward
     // compatibility. Some will be deprecated, you should avoid calling them.
@@ -1213,4 +1282,130 @@ public class PropertyHelper implements GetProperty {
     public boolean testUnlessCondition(Object value) {
         return nullOrEmpty(value) || !evalAsBooleanOrPropertyName(value);
     }
+
+    /**
+     * A String split into literal text and property references the
+     * way DEFAULT_EXPANDER and SKIP_DOUBLE_DOLLAR would do it.
+     *
+     * <p>Instances are immutable so they can be shared between
+     * threads without locking.</p>
+     */
+    private static final class Template {
+        private final String raw;
+        /** Literal Strings and PropertyRefs, null if there are no references. */
+        private final Object[] parts;
+        /** The text with $$ unescaped if there are no references. */
+        private final String literal;
+        /**
+         * Message of the syntax error, parts and literal only cover
+         * the text in front of it.
+         */
+        private final String error;
+
+        private Template(String raw, Object[] parts, String literal,
+                         String error) {
+            this.raw = raw;
+            this.parts = parts;
+            this.literal = literal;
+            this.error = error;
+        }
+
+        static Template parse(String value) {
+            List parts = new ArrayList();
+            StringBuffer sb = new StringBuffer();
+            final int len = value.length();
+            String error = null;
+            int i = 0;
+            while (i < len) {
+                char c = value.charAt(i);
+                if (c == '$') {
+                    if (len - i >= 3 && value.charAt(i + 1) == '{') {
+                        int end = value.indexOf('}', i + 2);
+                        if (end < 0) {
+                            error = "Syntax error in property: "
+                                + value.substring(i);
+                            break;
+                        }
+                        if (sb.length() > 0) {
+                            parts.add(sb.toString());
+                            sb.setLength(0);
+                        }
+                        parts.add(new PropertyRef(value.substring(i + 2, end),
+                                                  value.substring(i, end + 1)));
+                        i = end + 1;
+                        continue;
+                    }
+                    if (len - i >= 2 && value.charAt(i + 1) == '$') {
+                        // $$ maps to $
+                        i++;
+                    }
+                }
+                sb.append(value.charAt(i++));
+            }
+            if (parts.size() == 0) {
+                return new Template(value, null, sb.toString(), error);
+            }
+            if (sb.length() > 0) {
+                parts.add(sb.toString());
+            }
+            return new Template(value, parts.toArray(), null, error);
+        }
+
+        boolean containsProperties() {
+            // like ParseProperties stop at the first reference
+            if (parts == null && error != null) {
+                throw new BuildException(error);
+            }
+            return parts != null;
+        }
+
+        Object expand(PropertyHelper helper) {
+            if (error != null) {
+                throw new BuildException(error);
+            }
+            if (parts == null) {
+                return literal;
+            }
+            if (parts.length == 1) {
+                // keep the type of the value
+                PropertyRef ref = (PropertyRef) parts[0];
+                Object o = ref.resolve(helper);
+                return o == null ? ref.text : o;
+            }
+            StringBuffer sb = new StringBuffer(raw.length() * 2);
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i] instanceof PropertyRef) {
+                    PropertyRef ref = (PropertyRef) parts[i];
+                    Object o = ref.resolve(helper);
+                    sb.append(o == null ? ref.text : o);
+                } else {
+                    sb.append((String) parts[i]);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A ${name} reference inside of a Template.
+     */
+    private static final class PropertyRef {
+        private final String name;
+        private final String text;
+
+        private PropertyRef(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+
+        Object resolve(PropertyHelper helper) {
+            Object o = helper.getProperty(name);
+            if (o == null && helper.getProject() != null) {
+                helper.getProject().log("Property \"" + name
+                                        + "\" has not been set",
+                                        Project.MSG_VERBOSE);
+            }
+            return o;
+        }
+    }
 }
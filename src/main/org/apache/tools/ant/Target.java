@@ -25,6 +25,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
 
+import org.apache.tools.ant.helper.TargetCache;
 import org.apache.tools.ant.property.LocalProperties;
 
 /**
@@ -60,6 +61,12 @@ public class Target implements TaskContainer {
     /** Description of this target, if any. */
     private String description = null;
 
+    /** Id of the resource collection holding the inputs, if any. */
+    private String cacheInputs = null;
+
+    /** Id of the resource collection holding the outputs, if any. */
+    private String cacheOutputs = null;
+
     /** Default constructor. */
     public Target() {
         //empty
@@ -77,6 +84,8 @@ public class Target implements TaskContainer {
         this.location = other.location;
         this.project = other.project;
         this.description = other.description;
+        this.cacheInputs = other.cacheInputs;
+        this.cacheOutputs = other.cacheOutputs;
         // The children are added to after this cloning
         this.children = other.children;
     }
@@ -341,6 +350,54 @@ public class Target implements TaskContainer {
         return description;
     }
 
+    /**
+     * Sets the id of the resource collection holding the inputs of
+     * this target.  Together with the outputs this enables the target
+     * cache for this target.
+     *
+     * @param refid the id of a resource collection.
+     * @since Ant 1.8.3
+     * @see TargetCache
+     */
+    public void setCacheInputs(String refid) {
+        cacheInputs = refid;
+    }
+
+    /**
+     * Returns the id of the resource collection holding the inputs
+     * of this target.
+     *
+     * @return the id or <code>null</code> if none has been set.
+     * @since Ant 1.8.3
+     */
+    public String getCacheInputs() {
+        return cacheInputs;
+    }
+
+    /**
+     * Sets the id of the resource collection holding the outputs of
+     * this target.  Together with the inputs this enables the target
+     * cache for this target.
+     *
+     * @param refid the id of a resource collection of files.
+     * @since Ant 1.8.3
+     * @see TargetCache
+     */
+    public void setCacheOutputs(String refid) {
+        cacheOutputs = refid;
+    }
+
+    /**
+     * Returns the id of the resource collection holding the outputs
+     * of this target.
+     *
+     * @return the id or <code>null</code> if none has been set.
+     * @since Ant 1.8.3
+     */
+    public String getCacheOutputs() {
+        return cacheOutputs;
+    }
+
     /**
      * Returns the name of this target.
      *
@@ -353,7 +410,10 @@ public class Target implements TaskContainer {
 
     /**
      * Executes the target if the "if" and "unless" conditions are
-     * satisfied. Dependency checking should be done before calling this
+     * satisfied. If the target declares its inputs and outputs and
+     * the outputs for the current inputs are found in the target
+     * cache, the outputs are restored instead. Dependency checking
+     * should be done before calling this
      * method, as it does no checking of its own. If either the "if"
      * or "unless" test prevents this target from being executed, a verbose
      * message is logged giving the reason. It is recommended that clients
@@ -378,6 +438,15 @@ public class Target implements TaskContainer {
                     + project.replaceProperties(unlessCondition) + "' set.", Project.MSG_VERBOSE);
             return;
         }
+        TargetCache cache = null;
+        String cacheKey = null;
+        if (cacheInputs != null && cacheOutputs != null) {
+            cache = new TargetCache(this);
+            cacheKey = cache.computeKey();
+            if (cache.restore(cacheKey)) {
+                return;
+            }
+        }
         LocalProperties localProperties = LocalProperties.get(getProject());
         localProperties.enterScope();
         try {
@@ -397,6 +466,9 @@ public class Target implements TaskContainer {
         } finally {
             localProperties.exitScope();
         }
+        if (cache != null) {
+            cache.store(cacheKey);
+        }
     }
 
     /**
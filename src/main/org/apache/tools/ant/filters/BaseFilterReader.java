@@ -32,12 +32,18 @@ public abstract class BaseFilterReader extends FilterReader {
     /** Buffer size used when reading */
     private static final int BUFFER_SIZE = 8192;
 
+    /** Initial size of the buffer used by readLine */
+    private static final int LINE_BUFFER_SIZE = 128;
+
     /** Have the parameters passed been interpreted? */
     private boolean initialized = false;
 
     /** The Ant project this filter is part of. */
     private Project project = null;
 
+    /** Buffer reused by readLine, grows to the longest line seen. */
+    private char[] lineBuffer = null;
+
     /**
      * Constructor used by Ant's introspection mechanism.
      * The original filter reader is only used for chaining
@@ -172,16 +178,23 @@ public abstract class BaseFilterReader extends FilterReader {
             return null;
         }
 
-        StringBuffer line = new StringBuffer();
-
+        if (lineBuffer == null) {
+            lineBuffer = new char[LINE_BUFFER_SIZE];
+        }
+        int len = 0;
         while (ch != -1) {
-            line.append ((char) ch);
+            if (len == lineBuffer.length) {
+                char[] bigger = new char[lineBuffer.length * 2];
+                System.arraycopy(lineBuffer, 0, bigger, 0, len);
+                lineBuffer = bigger;
+            }
+            lineBuffer[len++] = (char) ch;
             if (ch == '\n') {
                 break;
             }
             ch = in.read();
         }
-        return line.toString();
+        return new String(lineBuffer, 0, len);
     }
 
     /**
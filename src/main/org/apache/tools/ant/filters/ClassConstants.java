@@ -50,6 +50,9 @@ public final class ClassConstants
     /** Data that must be read from, if not null. */
     private String queuedData = null;
 
+    /** Index of the next character of <code>queuedData</code> to return. */
+    private int queueIndex = 0;
+
     /** Helper Class to be invoked via reflection. */
     private static final String JAVA_CLASS_HELPER =
         "org.apache.tools.ant.filters.util.JavaClassHelper";
@@ -94,10 +97,10 @@ public final class ClassConstants
         }
 
         if (queuedData != null) {
-            ch = queuedData.charAt(0);
-            queuedData = queuedData.substring(1);
-            if (queuedData.length() == 0) {
+            ch = queuedData.charAt(queueIndex++);
+            if (queueIndex == queuedData.length()) {
                 queuedData = null;
+                queueIndex = 0;
             }
         } else {
             final String clazz = readFully();
@@ -64,6 +64,9 @@ public final class LineContains
      */
     private String line = null;
 
+    /** Index of the next character of <code>line</code> to return. */
+    private int linePos = 0;
+
     private boolean negate = false;
 
     /**
@@ -104,11 +107,10 @@ public final class LineContains
         int ch = -1;
 
         if (line != null) {
-            ch = line.charAt(0);
-            if (line.length() == 1) {
+            ch = line.charAt(linePos++);
+            if (linePos == line.length()) {
                 line = null;
-            } else {
-                line = line.substring(1);
+                linePos = 0;
             }
         } else {
             final int containsSize = contains.size();
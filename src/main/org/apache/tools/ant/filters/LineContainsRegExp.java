@@ -66,6 +66,9 @@ public final class LineContainsRegExp
      */
     private String line = null;
 
+    /** Index of the next character of <code>line</code> to return. */
+    private int linePos = 0;
+
     private boolean negate = false;
     private int regexpOptions = Regexp.MATCH_DEFAULT;
 
@@ -108,11 +111,10 @@ public final class LineContainsRegExp
         int ch = -1;
 
         if (line != null) {
-            ch = line.charAt(0);
-            if (line.length() == 1) {
+            ch = line.charAt(linePos++);
+            if (linePos == line.length()) {
                 line = null;
-            } else {
-                line = line.substring(1);
+                linePos = 0;
             }
         } else {
             final int regexpsSize = regexps.size();
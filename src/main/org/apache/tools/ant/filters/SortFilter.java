@@ -17,6 +17,14 @@
  */
 package org.apache.tools.ant.filters;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -27,6 +35,7 @@ import java.util.List;
 
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.types.Parameter;
+import org.apache.tools.ant.util.FileUtils;
 
 /**
  * <p>
@@ -117,6 +126,12 @@ import org.apache.tools.ant.types.Parameter;
  * 
  * <p> If parameter <code>comparator</code> is present, then
  * <code>reverse</code> parameter will not be taken into account.  </p>
+ *
+ * <p> If parameter <code>memorylimit</code> is set to a positive number
+ * of bytes, lines are sorted in chunks of roughly that size which are
+ * written to temporary files (in <code>tempdir</code> if set) and merged
+ * when the whole input has been read.  This allows inputs larger than
+ * the available memory to be sorted.  </p>
  * 
  * @since Ant 1.8.0
  */
@@ -132,6 +147,41 @@ public final class SortFilter extends BaseParamFilterReader
      */
     private static final String COMPARATOR_KEY = "comparator";
 
+    /** Parameter name for the memory limit. */
+    private static final String MEMORY_LIMIT_KEY = "memorylimit";
+
+    /** Parameter name for the directory to hold temporary files. */
+    private static final String TEMP_DIR_KEY = "tempdir";
+
+    /**
+     * Approximate number of bytes a line occupies in memory on top of
+     * its characters.
+     */
+    private static final int LINE_OVERHEAD = 40;
+
+    /**
+     * Maximum number of temporary files merged at once, more files
+     * are merged in several passes so the number of open files stays
+     * bounded.
+     */
+    private static final int MAX_MERGE_WIDTH = 64;
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    /** Compares lines using their natural order. */
+    private static final Comparator NATURAL_ORDER = new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return ((String) o1).compareTo((String) o2);
+            }
+        };
+
+    /** Compares lines using the reverse of their natural order. */
+    private static final Comparator REVERSE_ORDER = new Comparator() {
+            public int compare(Object o1, Object o2) {
+                return -((String) o1).compareTo((String) o2);
+            }
+        };
+
     /**
      * Instance of comparator class to be used for sorting.
      */
@@ -145,6 +195,25 @@ public final class SortFilter extends BaseParamFilterReader
      */
     private boolean reverse;
 
+    /**
+     * Maximum number of bytes the lines held in memory may occupy
+     * before they get written to a temporary file.  Zero or a negative
+     * number means there is no limit.
+     */
+    private long memoryLimit = 0;
+
+    /**
+     * Directory to create temporary files in, the default temporary
+     * directory if <code>null</code>.
+     */
+    private File tempDir = null;
+
+    /**
+     * Merges the sorted temporary files if the lines didn't fit into
+     * the memory limit.
+     */
+    private RunMerger merger = null;
+
     /**
      * Stores the lines to be sorted.
      */
@@ -157,6 +226,9 @@ public final class SortFilter extends BaseParamFilterReader
      */
     private String line = null;
 
+    /** Index of the next character of <code>line</code> to return. */
+    private int linePos = 0;
+
     private Iterator iterator = null;
 
     /**
@@ -204,30 +276,18 @@ public final class SortFilter extends BaseParamFilterReader
              * We are on the state: "reading the current line", lines are
              * already sorted
              */
-            ch = line.charAt(0);
-            if (line.length() == 1) {
+            ch = line.charAt(linePos++);
+            if (linePos == line.length()) {
                 line = null;
-            } else {
-                line = line.substring(1);
+                linePos = 0;
             }
         } else {
-            if (lines == null) {
+            if (lines == null && merger == null) {
                 // We read all lines and sort them
-                lines = new ArrayList();
-                for (line = readLine(); line != null; line = readLine()) {
-                    lines.add(line);
-                }
-                sort();
-                iterator = lines.iterator();
+                readLines();
             }
 
-            if (iterator.hasNext()) {
-                line = (String) iterator.next();
-            } else {
-                line = null;
-                lines = null;
-                iterator = null;
-            }
+            line = nextSortedLine();
             if (line != null) {
                 return read();
             }
@@ -235,6 +295,167 @@ public final class SortFilter extends BaseParamFilterReader
         return ch;
     }
 
+    /**
+     * Closes the underlying stream and removes any temporary files.
+     *
+     * @exception IOException if the underlying stream throws an IOException
+     * @since Ant 1.8.3
+     */
+    public void close() throws IOException {
+        if (merger != null) {
+            merger.close();
+            merger = null;
+        }
+        super.close();
+    }
+
+    /**
+     * Reads all lines and sorts them, writing sorted chunks to
+     * temporary files if the memory limit has been exceeded.
+     */
+    private void readLines() throws IOException {
+        lines = new ArrayList();
+        List runs = new ArrayList();
+        boolean success = false;
+        try {
+            long size = 0;
+            for (String l = readLine(); l != null; l = readLine()) {
+                lines.add(l);
+                size += LINE_OVERHEAD + 2 * l.length();
+                if (memoryLimit > 0 && size > memoryLimit) {
+                    sort();
+                    runs.add(writeRun());
+                    lines.clear();
+                    size = 0;
+                }
+            }
+            sort();
+            if (runs.size() == 0) {
+                iterator = lines.iterator();
+            } else {
+                if (lines.size() > 0) {
+                    runs.add(writeRun());
+                }
+                lines = null;
+                reduceRuns(runs);
+                merger = new RunMerger((File[]) runs.toArray(new File[runs.size()]),
+                                       getSortComparator());
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                for (Iterator it = runs.iterator(); it.hasNext();) {
+                    FILE_UTILS.tryHardToDelete((File) it.next());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the next line in sorted order, or <code>null</code> once
+     * all lines have been returned.
+     */
+    private String nextSortedLine() throws IOException {
+        String next = null;
+        if (merger != null) {
+            next = merger.next();
+            if (next == null) {
+                merger.close();
+                merger = null;
+            }
+        } else if (iterator.hasNext()) {
+            next = (String) iterator.next();
+        } else {
+            lines = null;
+            iterator = null;
+        }
+        return next;
+    }
+
+    /**
+     * Merges groups of consecutive runs until no more than
+     * MAX_MERGE_WIDTH are left.  Merging consecutive runs keeps equal
+     * lines in their original order.
+     * @param runs the temporary files, replaced by the merged ones.
+     */
+    private void reduceRuns(List runs) throws IOException {
+        while (runs.size() > MAX_MERGE_WIDTH) {
+            for (int i = 0; i < runs.size(); i++) {
+                int end = Math.min(i + MAX_MERGE_WIDTH, runs.size());
+                if (end - i > 1) {
+                    List group = runs.subList(i, end);
+                    File merged =
+                        mergeRuns((File[]) group.toArray(new File[group.size()]));
+                    group.clear();
+                    runs.add(i, merged);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges some runs into a new one and deletes them.
+     * @return the file written.
+     */
+    private File mergeRuns(File[] runs) throws IOException {
+        File run = FILE_UTILS.createTempFile("sortfilter", ".tmp", tempDir,
+                                             false, true);
+        RunMerger m = null;
+        DataOutputStream out = null;
+        boolean success = false;
+        try {
+            m = new RunMerger(runs, getSortComparator());
+            out = new DataOutputStream(new BufferedOutputStream(
+                                           new FileOutputStream(run)));
+            for (String l = m.next(); l != null; l = m.next()) {
+                writeRunLine(out, l);
+            }
+            out.flush();
+            success = true;
+        } finally {
+            FileUtils.close(out);
+            if (m != null) {
+                m.close();
+            }
+            if (!success) {
+                FILE_UTILS.tryHardToDelete(run);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Writes the (sorted) lines to a new temporary file.
+     * @return the file written.
+     */
+    private File writeRun() throws IOException {
+        File run = FILE_UTILS.createTempFile("sortfilter", ".tmp", tempDir,
+                                             false, true);
+        DataOutputStream out = null;
+        boolean success = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                                           new FileOutputStream(run)));
+            for (Iterator it = lines.iterator(); it.hasNext();) {
+                writeRunLine(out, (String) it.next());
+            }
+            out.flush();
+            success = true;
+        } finally {
+            FileUtils.close(out);
+            if (!success) {
+                FILE_UTILS.tryHardToDelete(run);
+            }
+        }
+        return run;
+    }
+
+    private static void writeRunLine(DataOutputStream out, String l)
+        throws IOException {
+        out.writeInt(l.length());
+        out.writeChars(l);
+    }
+
     /**
      * Creates a new SortReader using the passed in Reader for instantiation.
      * 
@@ -249,6 +470,8 @@ public final class SortFilter extends BaseParamFilterReader
         SortFilter newFilter = new SortFilter(rdr);
         newFilter.setReverse(isReverse());
         newFilter.setComparator(getComparator());
+        newFilter.setMemoryLimit(getMemoryLimit());
+        newFilter.setTempDir(getTempDir());
         newFilter.setInitialized(true);
         return newFilter;
     }
@@ -294,6 +517,50 @@ public final class SortFilter extends BaseParamFilterReader
         this.comparator = comparator;
     }
 
+    /**
+     * Returns the number of bytes the lines held in memory may occupy.
+     *
+     * @return the memory limit, zero or negative if there is no limit.
+     * @since Ant 1.8.3
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Sets the number of bytes the lines held in memory may occupy
+     * before they are sorted and written to a temporary file.  The
+     * default of zero keeps all lines in memory.
+     *
+     * @param memoryLimit the approximate limit in bytes.
+     * @since Ant 1.8.3
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Returns the directory temporary files are created in.
+     *
+     * @return the directory, <code>null</code> for the default
+     * temporary directory.
+     * @since Ant 1.8.3
+     */
+    public File getTempDir() {
+        return tempDir;
+    }
+
+    /**
+     * Sets the directory temporary files are created in when the
+     * memory limit is exceeded.
+     *
+     * @param tempDir the directory.
+     * @since Ant 1.8.3
+     */
+    public void setTempDir(File tempDir) {
+        this.tempDir = tempDir;
+    }
+
     /**
      * Set the comparator to be used as sorting criterium as nested element.
      * 
@@ -321,6 +588,22 @@ public final class SortFilter extends BaseParamFilterReader
                                .booleanValue());
                     continue;
                 }
+                if (MEMORY_LIMIT_KEY.equals(paramName)) {
+                    try {
+                        setMemoryLimit(Long.parseLong(params[i].getValue()));
+                    } catch (NumberFormatException e) {
+                        throw new BuildException("Value of memorylimit"
+                                                 + " should be a number of"
+                                                 + " bytes", e);
+                    }
+                    continue;
+                }
+                if (TEMP_DIR_KEY.equals(paramName)) {
+                    setTempDir(getProject() == null
+                               ? new File(params[i].getValue())
+                               : getProject().resolveFile(params[i].getValue()));
+                    continue;
+                }
                 if (COMPARATOR_KEY.equals(paramName)) {
                     try {
                         String className = (String) params[i].getValue();
@@ -356,20 +639,144 @@ public final class SortFilter extends BaseParamFilterReader
      * 
      */
     private void sort() {
-        if (comparator == null) {
-            if (reverse) {
-                Collections.sort(lines, new Comparator() {
-                        public int compare(Object o1, Object o2) {
-                            String s1 = (String) o1;
-                            String s2 = (String) o2;
-                            return (-s1.compareTo(s2));
-                        }
-                    });
-            } else {
-                Collections.sort(lines);
+        Collections.sort(lines, getSortComparator());
+    }
+
+    /**
+     * The comparator implementing the sorting criteria defined by the
+     * user.
+     */
+    private Comparator getSortComparator() {
+        if (comparator != null) {
+            return comparator;
+        }
+        return reverse ? REVERSE_ORDER : NATURAL_ORDER;
+    }
+
+    /**
+     * Performs a k-way merge of sorted temporary files.
+     *
+     * <p>The files are read in parallel, the smallest current line of
+     * all files is kept at the top of a binary heap.  Lines that compare
+     * equal are returned in the order of the files they've been read
+     * from, so the merged result is as stable as the in-memory sort.</p>
+     */
+    private static class RunMerger {
+        private final File[] runs;
+        private final DataInputStream[] ins;
+        private final String[] heads;
+        private final int[] heap;
+        private int heapSize = 0;
+        private final Comparator cmp;
+
+        RunMerger(File[] runs, Comparator cmp) throws IOException {
+            this.runs = runs;
+            this.cmp = cmp;
+            ins = new DataInputStream[runs.length];
+            heads = new String[runs.length];
+            heap = new int[runs.length];
+            boolean success = false;
+            try {
+                for (int i = 0; i < runs.length; i++) {
+                    ins[i] = new DataInputStream(new BufferedInputStream(
+                                                     new FileInputStream(runs[i])));
+                    heads[i] = readRunLine(ins[i]);
+                    if (heads[i] != null) {
+                        heap[heapSize] = i;
+                        siftUp(heapSize++);
+                    }
+                }
+                success = true;
+            } finally {
+                if (!success) {
+                    close();
+                }
             }
-        } else {
-            Collections.sort(lines, comparator);
+        }
+
+        /**
+         * The next line in sorted order or null if all files have been
+         * consumed.
+         */
+        String next() throws IOException {
+            if (heapSize == 0) {
+                return null;
+            }
+            int run = heap[0];
+            String result = heads[run];
+            heads[run] = readRunLine(ins[run]);
+            if (heads[run] == null) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(0);
+            return result;
+        }
+
+        /**
+         * Closes and deletes all temporary files.
+         */
+        void close() {
+            for (int i = 0; i < runs.length; i++) {
+                FileUtils.close(ins[i]);
+                FILE_UTILS.tryHardToDelete(runs[i]);
+            }
+            heapSize = 0;
+        }
+
+        private boolean less(int run1, int run2) {
+            int c = cmp.compare(heads[run1], heads[run2]);
+            return c < 0 || (c == 0 && run1 < run2);
+        }
+
+        private void siftUp(int pos) {
+            while (pos > 0) {
+                int parent = (pos - 1) / 2;
+                if (!less(heap[pos], heap[parent])) {
+                    break;
+                }
+                swap(pos, parent);
+                pos = parent;
+            }
+        }
+
+        private void siftDown(int pos) {
+            while (true) {
+                int smallest = pos;
+                int left = 2 * pos + 1;
+                int right = left + 1;
+                if (left < heapSize && less(heap[left], heap[smallest])) {
+                    smallest = left;
+                }
+                if (right < heapSize && less(heap[right], heap[smallest])) {
+                    smallest = right;
+                }
+                if (smallest == pos) {
+                    break;
+                }
+                swap(pos, smallest);
+                pos = smallest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int t = heap[i];
+            heap[i] = heap[j];
+            heap[j] = t;
+        }
+
+        private static String readRunLine(DataInputStream in)
+            throws IOException {
+            int len;
+            try {
+                len = in.readInt();
+            } catch (EOFException eof) {
+                return null;
+            }
+            char[] c = new char[len];
+            for (int i = 0; i < len; i++) {
+                c[i] = in.readChar();
+            }
+            return new String(c);
         }
     }
 }
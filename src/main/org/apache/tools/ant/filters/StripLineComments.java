@@ -59,6 +59,9 @@ public final class StripLineComments
     /** The line that has been read ahead. */
     private String line = null;
 
+    /** Index of the next character of <code>line</code> to return. */
+    private int linePos = 0;
+
     /**
      * Constructor for "dummy" instances.
      *
@@ -98,11 +101,10 @@ public final class StripLineComments
         int ch = -1;
 
         if (line != null) {
-            ch = line.charAt(0);
-            if (line.length() == 1) {
+            ch = line.charAt(linePos++);
+            if (linePos == line.length()) {
                 line = null;
-            } else {
-                line = line.substring(1);
+                linePos = 0;
             }
         } else {
             line = readLine();
@@ -47,6 +47,9 @@ public final class SuffixLines
     /** Data that must be read from, if not null. */
     private String queuedData = null;
 
+    /** Index of the next character of <code>queuedData</code> to return. */
+    private int queueIndex = 0;
+
     /**
      * Constructor for "dummy" instances.
      *
@@ -91,10 +94,10 @@ public final class SuffixLines
         }
 
         if (queuedData != null) {
-            ch = queuedData.charAt(0);
-            queuedData = queuedData.substring(1);
-            if (queuedData.length() == 0) {
+            ch = queuedData.charAt(queueIndex++);
+            if (queueIndex == queuedData.length()) {
                 queuedData = null;
+                queueIndex = 0;
             }
         } else {
             queuedData = readLine();
@@ -19,7 +19,6 @@ package org.apache.tools.ant.filters;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.util.LinkedList;
 import org.apache.tools.ant.types.Parameter;
 import org.apache.tools.ant.util.LineTokenizer;
 
@@ -65,7 +64,8 @@ public final class TailFilter extends BaseParamFilterReader
     /** the position in the current line */
     private int       linePos   = 0;
 
-    private LinkedList lineList = new LinkedList();
+    /** the lines read ahead, packed into a single char array */
+    private LineRing lineList = new LineRing();
 
     /**
      * Constructor for "dummy" instances.
@@ -212,31 +212,122 @@ public final class TailFilter extends BaseParamFilterReader
                 lineList.add(line);
                 if (lines == -1) {
                     if (lineList.size() > skip) {
-                        return (String) lineList.removeFirst();
+                        return lineList.removeFirst();
                     }
                 } else {
                     long linesToKeep = lines + (skip > 0 ? skip : 0);
                     if (linesToKeep < lineList.size()) {
-                        lineList.removeFirst();
+                        lineList.dropFirst();
                     }
                 }
                 return "";
             }
             completedReadAhead = true;
             if (skip > 0) {
-                for (int i = 0; i < skip; ++i) {
-                    lineList.removeLast();
+                for (int i = 0; i < skip && lineList.size() > 0; ++i) {
+                    lineList.dropLast();
                 }
             }
             if (lines > -1) {
                 while (lineList.size() > lines) {
-                    lineList.removeFirst();
+                    lineList.dropFirst();
                 }
             }
         }
         if (lineList.size() > 0) {
-            return (String) lineList.removeFirst();
+            return lineList.removeFirst();
         }
         return null;
     }
+
+    /**
+     * A queue of lines backed by a circular char array.
+     *
+     * <p>Unlike a list of Strings there is no per-line object
+     * overhead, the only per-line state is the line's length.  Both
+     * arrays grow when needed but are never shrunk, so memory use is
+     * bounded by the largest window of lines held.</p>
+     */
+    private static class LineRing {
+        private static final int INITIAL_CHARS = 1024;
+        private static final int INITIAL_LINES = 16;
+
+        private char[] chars = new char[INITIAL_CHARS];
+        /** position of the first char of the oldest line */
+        private int charStart = 0;
+        private int charCount = 0;
+
+        private int[] lengths = new int[INITIAL_LINES];
+        /** position of the oldest line's length */
+        private int first = 0;
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        void add(String line) {
+            final int len = line.length();
+            if (charCount + len > chars.length) {
+                growChars(charCount + len);
+            }
+            if (size == lengths.length) {
+                growLines();
+            }
+            int pos = (charStart + charCount) % chars.length;
+            int firstPart = Math.min(len, chars.length - pos);
+            line.getChars(0, firstPart, chars, pos);
+            line.getChars(firstPart, len, chars, 0);
+            charCount += len;
+            lengths[(first + size) % lengths.length] = len;
+            size++;
+        }
+
+        String removeFirst() {
+            final int len = lengths[first];
+            String result;
+            if (charStart + len <= chars.length) {
+                result = new String(chars, charStart, len);
+            } else {
+                char[] c = new char[len];
+                int firstPart = chars.length - charStart;
+                System.arraycopy(chars, charStart, c, 0, firstPart);
+                System.arraycopy(chars, 0, c, firstPart, len - firstPart);
+                result = new String(c);
+            }
+            dropFirst();
+            return result;
+        }
+
+        void dropFirst() {
+            final int len = lengths[first];
+            charStart = (charStart + len) % chars.length;
+            charCount -= len;
+            first = (first + 1) % lengths.length;
+            size--;
+        }
+
+        void dropLast() {
+            charCount -= lengths[(first + size - 1) % lengths.length];
+            size--;
+        }
+
+        private void growChars(int needed) {
+            char[] c = new char[Math.max(chars.length * 2, needed)];
+            int firstPart = Math.min(charCount, chars.length - charStart);
+            System.arraycopy(chars, charStart, c, 0, firstPart);
+            System.arraycopy(chars, 0, c, firstPart, charCount - firstPart);
+            chars = c;
+            charStart = 0;
+        }
+
+        private void growLines() {
+            int[] l = new int[lengths.length * 2];
+            int firstPart = Math.min(size, lengths.length - first);
+            System.arraycopy(lengths, first, l, 0, firstPart);
+            System.arraycopy(lengths, 0, l, firstPart, size - firstPart);
+            lengths = l;
+            first = 0;
+        }
+    }
 }
@@ -147,6 +147,19 @@ public class TokenFilter extends BaseFilterReader
     public final Reader chain(final Reader reader) {
         TokenFilter newFilter = new TokenFilter(reader);
         newFilter.filters = filters;
+        for (int i = 0; i < filters.size(); i++) {
+            if (filters.elementAt(i) instanceof UniqFilter) {
+                // uniqfilter remembers the tokens it has seen
+                newFilter.filters = new Vector(filters.size());
+                for (Enumeration e = filters.elements(); e.hasMoreElements();) {
+                    Object f = e.nextElement();
+                    newFilter.filters.addElement(f instanceof UniqFilter
+                                                 ? ((UniqFilter) f).newInstance()
+                                                 : f);
+                }
+                break;
+            }
+        }
         newFilter.tokenizer = tokenizer;
         newFilter.delimOutput = delimOutput;
         newFilter.setProject(getProject());
@@ -322,6 +335,15 @@ public class TokenFilter extends BaseFilterReader
             this.byLine = byLine;
         }
 
+        /**
+         * Whether a linetokenizer is used.
+         * @return true unless a filetokenizer is used
+         * @since Ant 1.8.3
+         */
+        public boolean isByLine() {
+            return byLine;
+        }
+
         /**
          * Chain a tokenfilter reader to a reader,
          *
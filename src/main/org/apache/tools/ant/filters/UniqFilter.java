@@ -17,6 +17,8 @@
  */
 package org.apache.tools.ant.filters;
 
+import java.io.Reader;
+
 /**
  * Like the Unix uniq(1) command, only returns tokens that are
  * different from their ancestor token.
@@ -24,14 +26,159 @@ package org.apache.tools.ant.filters;
  * <p>This filter is probably most useful if used together with a
  * sortfilter.</p>
  *
+ * <p>If the global attribute is true, all tokens that have been
+ * seen before are suppressed, not only those matching their ancestor.
+ * Only a 64 bit fingerprint is kept for each distinct token so memory
+ * use doesn't depend on the length of the tokens, unless verify is
+ * true as well which keeps the tokens in order to rule out fingerprint
+ * collisions.</p>
+ *
  * @since Ant 1.8.0
  */
 public class UniqFilter extends TokenFilter.ChainableReaderFilter {
 
     private String lastLine = null;
 
+    private boolean global = false;
+    private boolean verify = false;
+    private FingerprintSet seen = null;
+
+    /**
+     * Whether to suppress all tokens that have been seen before rather
+     * than only those equal to their ancestor.
+     * @param global boolean
+     * @since Ant 1.8.3
+     */
+    public void setGlobal(boolean global) {
+        this.global = global;
+    }
+
+    /**
+     * Whether to compare the tokens themselves when their fingerprints
+     * match in global mode.  This requires all distinct tokens to be
+     * kept in memory.
+     * @param verify boolean
+     * @since Ant 1.8.3
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Chains a filter that starts without any tokens seen, so tokens
+     * of one file don't suppress those of the next and concurrent
+     * copies don't share state.
+     * @param reader the input reader object
+     * @return the chained reader object
+     * @since Ant 1.8.3
+     */
+    public Reader chain(Reader reader) {
+        return newInstance().chainThis(reader);
+    }
+
+    private Reader chainThis(Reader reader) {
+        return super.chain(reader);
+    }
+
+    /**
+     * A filter with the same configuration that hasn't seen any tokens.
+     */
+    /*package*/ UniqFilter newInstance() {
+        UniqFilter f = new UniqFilter();
+        f.setProject(getProject());
+        f.setByLine(isByLine());
+        f.global = global;
+        f.verify = verify;
+        return f;
+    }
+
     public String filter(String string) {
+        if (global) {
+            if (seen == null) {
+                seen = new FingerprintSet(verify);
+            }
+            return seen.add(string) ? string : null;
+        }
         return lastLine == null || !lastLine.equals(string)
             ? (lastLine = string) : null;
     }
+
+    /**
+     * Open addressing hash set of 64 bit FNV-1a fingerprints of strings.
+     */
+    private static class FingerprintSet {
+        private static final int INITIAL_CAPACITY = 1024;
+        private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+        private static final int BYTE_MASK = 0xff;
+        private static final int BITS_PER_BYTE = 8;
+
+        /** Fingerprints, 0 marks an empty slot. */
+        private long[] fingerprints = new long[INITIAL_CAPACITY];
+        /** The strings if they are verified, null otherwise. */
+        private String[] strings;
+        private int size = 0;
+
+        FingerprintSet(boolean verify) {
+            strings = verify ? new String[INITIAL_CAPACITY] : null;
+        }
+
+        /**
+         * Adds the string.
+         * @return true if the string has not been seen before.
+         */
+        boolean add(String s) {
+            long fp = fingerprint(s);
+            int mask = fingerprints.length - 1;
+            int slot = (int) (fp ^ (fp >>> 32)) & mask;
+            while (fingerprints[slot] != 0) {
+                if (fingerprints[slot] == fp
+                    && (strings == null || strings[slot].equals(s))) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            fingerprints[slot] = fp;
+            if (strings != null) {
+                strings[slot] = s;
+            }
+            if (++size * 2 > fingerprints.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            long[] oldFingerprints = fingerprints;
+            String[] oldStrings = strings;
+            fingerprints = new long[oldFingerprints.length * 2];
+            strings = oldStrings == null ? null
+                : new String[oldFingerprints.length * 2];
+            int mask = fingerprints.length - 1;
+            for (int i = 0; i < oldFingerprints.length; i++) {
+                long fp = oldFingerprints[i];
+                if (fp != 0) {
+                    int slot = (int) (fp ^ (fp >>> 32)) & mask;
+                    while (fingerprints[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    fingerprints[slot] = fp;
+                    if (strings != null) {
+                        strings[slot] = oldStrings[i];
+                    }
+                }
+            }
+        }
+
+        private static long fingerprint(String s) {
+            long h = FNV_OFFSET_BASIS;
+            final int len = s.length();
+            for (int i = 0; i < len; i++) {
+                char c = s.charAt(i);
+                h = (h ^ (c & BYTE_MASK)) * FNV_PRIME;
+                h = (h ^ (c >>> BITS_PER_BYTE)) * FNV_PRIME;
+            }
+            return h == 0 ? 1 : h;
+        }
+    }
 }
@@ -17,6 +17,7 @@
  */
 package org.apache.tools.ant.filters.util;
 
+import java.io.BufferedReader;
 import java.io.FilterReader;
 import java.io.IOException;
 import java.io.Reader;
@@ -139,6 +140,15 @@ public final class ChainReaderHelper {
         final int filtersCount = finalFilters.size();
 
         if (filtersCount > 0) {
+            if (!(instream instanceof BufferedReader)) {
+                // filters read their input one char at a time; callers
+                // may set bufferSize to the size of the whole resource
+                instream = new BufferedReader(instream,
+                                              bufferSize > 0
+                                              ? Math.min(bufferSize,
+                                                         DEFAULT_BUFFER_SIZE)
+                                              : DEFAULT_BUFFER_SIZE);
+            }
             boolean success = false;
             try {
                 for (int i = 0; i < filtersCount; i++) {
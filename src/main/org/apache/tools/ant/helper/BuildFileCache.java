@@ -0,0 +1,566 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.util.FileUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.LocatorImpl;
+
+/**
+ * Caches the SAX events of parsed build files so they can be fed to
+ * ProjectHelper2's handlers again without parsing the XML.
+ *
+ * <p>It is the event stream that gets cached rather than the
+ * resulting targets and tasks since those depend on the project and
+ * import chain the file is parsed for and must be created anew each
+ * time anyway.  Replaying the events through the same handlers
+ * guarantees the outcome is exactly the same as if the file had been
+ * parsed.</p>
+ *
+ * <p>Recordings are kept in memory for the lifetime of the VM and
+ * optionally written to a directory so they can be reused by later
+ * runs.  A recording is only used if the build file's size and
+ * modification time are still the same as when it was recorded.
+ * Build files that use external entities are never cached since a
+ * change to the entity wouldn't be detected.</p>
+ *
+ * @since Ant 1.8.3
+ */
+public final class BuildFileCache {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    /** Maximum number of recordings kept in memory. */
+    private static final int MAX_ENTRIES = 512;
+
+    private static final int MAGIC = 0x416e7450; // "AntP"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".antparse";
+
+    private static final byte START_PREFIX = 1;
+    private static final byte END_PREFIX = 2;
+    private static final byte START_ELEMENT = 3;
+    private static final byte END_ELEMENT = 4;
+    private static final byte CHARACTERS = 5;
+
+    private static final int HEX = 16;
+    private static final long INT_MASK = 0xffffffffL;
+
+    /** normalized path to Recording, least recently used first. */
+    private static final Map CACHE = new LinkedHashMap(HEX, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+    private BuildFileCache() {
+    }
+
+    /**
+     * Whether parsed build files should be cached for this project.
+     *
+     * @param project the project a file is being parsed for.
+     * @return true if either of the magic properties is set.
+     */
+    public static boolean isEnabled(Project project) {
+        return Project.toBoolean(project.getProperty(MagicNames.PARSER_CACHE))
+            || project.getProperty(MagicNames.PARSER_CACHE_DIR) != null;
+    }
+
+    /**
+     * Looks up a recording of the given file that is still up to date.
+     *
+     * @param project the project the file is parsed for.
+     * @param buildFile the normalized build file.
+     * @return the recording or null if there is none.
+     */
+    public static Recording lookup(Project project, File buildFile) {
+        if (!isEnabled(project)) {
+            return null;
+        }
+        String key = buildFile.getAbsolutePath();
+        Recording r;
+        synchronized (CACHE) {
+            r = (Recording) CACHE.get(key);
+        }
+        if (r != null && r.isUpToDate(buildFile)) {
+            return r;
+        }
+        File cacheFile = getCacheFile(project, buildFile);
+        if (cacheFile != null && cacheFile.isFile()) {
+            try {
+                r = Recording.read(cacheFile);
+            } catch (IOException e) {
+                project.log("Ignoring unreadable parser cache " + cacheFile
+                            + ": " + e.getMessage(), Project.MSG_VERBOSE);
+                r = null;
+            }
+            if (r != null && key.equals(r.path) && r.isUpToDate(buildFile)) {
+                synchronized (CACHE) {
+                    CACHE.put(key, r);
+                }
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a handler that records all events it passes on to the
+     * given handler.
+     *
+     * @param delegate the handler actually processing the events.
+     * @param buildFile the file being parsed.
+     * @return the recorder.
+     */
+    public static Recorder createRecorder(DefaultHandler delegate,
+                                          File buildFile) {
+        return new Recorder(delegate, buildFile);
+    }
+
+    /**
+     * Stores the recording of a successful parse.
+     *
+     * @param project the project the file has been parsed for.
+     * @param recorder the recorder the parser has been fed to.
+     */
+    public static void store(Project project, Recorder recorder) {
+        Recording r = recorder.getRecording();
+        if (r == null) {
+            return;
+        }
+        synchronized (CACHE) {
+            CACHE.put(r.path, r);
+        }
+        File cacheFile = getCacheFile(project, recorder.buildFile);
+        if (cacheFile != null) {
+            // write to a temporary file first so concurrent builds never
+            // see a partially written cache
+            File tmp = FILE_UTILS.createTempFile("parse", ".tmp",
+                                                 cacheFile.getParentFile(),
+                                                 false, false);
+            try {
+                r.write(tmp);
+                FILE_UTILS.rename(tmp, cacheFile);
+            } catch (IOException e) {
+                project.log("Couldn't write parser cache " + cacheFile
+                            + ": " + e.getMessage(), Project.MSG_VERBOSE);
+                FILE_UTILS.tryHardToDelete(tmp);
+            }
+        }
+    }
+
+    /**
+     * Removes all recordings held in memory.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static File getCacheFile(Project project, File buildFile) {
+        String dir = project.getProperty(MagicNames.PARSER_CACHE_DIR);
+        if (dir == null) {
+            return null;
+        }
+        File cacheDir = project.resolveFile(dir);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            return null;
+        }
+        String path = buildFile.getAbsolutePath();
+        return new File(cacheDir, buildFile.getName() + "-"
+                        + Long.toString(path.hashCode() & INT_MASK, HEX)
+                        + SUFFIX);
+    }
+
+    /**
+     * The SAX events of a single build file.
+     */
+    public static final class Recording {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final String systemId;
+        private final String[] strings;
+        private final byte[] events;
+
+        private Recording(String path, long lastModified, long length,
+                          String systemId, String[] strings, byte[] events) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.systemId = systemId;
+            this.strings = strings;
+            this.events = events;
+        }
+
+        private boolean isUpToDate(File buildFile) {
+            return buildFile.lastModified() == lastModified
+                && buildFile.length() == length;
+        }
+
+        /**
+         * Feeds the recorded events to the given handler.
+         *
+         * @param handler the handler to feed.
+         * @throws SAXException if the handler throws one.
+         */
+        public void replay(DefaultHandler handler) throws SAXException {
+            LocatorImpl locator = new LocatorImpl();
+            locator.setSystemId(systemId);
+            handler.setDocumentLocator(locator);
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(events));
+            try {
+                handler.startDocument();
+                int op;
+                while ((op = in.read()) != -1) {
+                    switch (op) {
+                    case START_PREFIX:
+                        handler.startPrefixMapping(string(in), string(in));
+                        break;
+                    case END_PREFIX:
+                        handler.endPrefixMapping(string(in));
+                        break;
+                    case START_ELEMENT:
+                        locate(in, locator);
+                        String uri = string(in);
+                        String localName = string(in);
+                        String qName = string(in);
+                        int count = in.readInt();
+                        AttributesImpl attrs = new AttributesImpl();
+                        for (int i = 0; i < count; i++) {
+                            attrs.addAttribute(string(in), string(in),
+                                               string(in), string(in),
+                                               string(in));
+                        }
+                        handler.startElement(uri, localName, qName, attrs);
+                        break;
+                    case END_ELEMENT:
+                        locate(in, locator);
+                        handler.endElement(string(in), string(in), string(in));
+                        break;
+                    case CHARACTERS:
+                        locate(in, locator);
+                        char[] c = string(in).toCharArray();
+                        handler.characters(c, 0, c.length);
+                        break;
+                    default:
+                        throw new SAXException("corrupt parser cache for "
+                                               + path);
+                    }
+                }
+                handler.endDocument();
+            } catch (IOException e) {
+                // can't happen for a byte array
+                throw new SAXException(e);
+            }
+        }
+
+        private void locate(DataInputStream in, LocatorImpl locator)
+            throws IOException {
+            locator.setLineNumber(in.readInt());
+            locator.setColumnNumber(in.readInt());
+        }
+
+        private String string(DataInputStream in) throws IOException {
+            int idx = in.readInt();
+            return idx < 0 ? null : strings[idx];
+        }
+
+        private void write(File f) throws IOException {
+            DataOutputStream out = null;
+            try {
+                out = new DataOutputStream(new BufferedOutputStream(
+                                               new FileOutputStream(f)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, path);
+                out.writeLong(lastModified);
+                out.writeLong(length);
+                writeString(out, systemId);
+                out.writeInt(strings.length);
+                for (int i = 0; i < strings.length; i++) {
+                    writeString(out, strings[i]);
+                }
+                out.writeInt(events.length);
+                out.write(events);
+            } finally {
+                FileUtils.close(out);
+            }
+        }
+
+        private static Recording read(File f) throws IOException {
+            long max = f.length();
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(
+                                             new FileInputStream(f)));
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return null;
+                }
+                String path = readString(in, max);
+                long lastModified = in.readLong();
+                long length = in.readLong();
+                String systemId = readString(in, max);
+                String[] strings = new String[readLength(in, max)];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = readString(in, max);
+                }
+                byte[] events = new byte[readLength(in, max)];
+                in.readFully(events);
+                return new Recording(path, lastModified, length, systemId,
+                                     strings, events);
+            } finally {
+                FileUtils.close(in);
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+            byte[] b = s.getBytes("UTF-8");
+            out.writeInt(b.length);
+            out.write(b);
+        }
+
+        private static String readString(DataInputStream in, long max)
+            throws IOException {
+            byte[] b = new byte[readLength(in, max)];
+            in.readFully(b);
+            return new String(b, "UTF-8");
+        }
+
+        /**
+         * Reads the length of an array, which can't be bigger than
+         * the file holding it.
+         */
+        private static int readLength(DataInputStream in, long max)
+            throws IOException {
+            int l = in.readInt();
+            if (l < 0 || l > max) {
+                throw new IOException("corrupt array length " + l);
+            }
+            return l;
+        }
+    }
+
+    /**
+     * Passes all events on to another handler and records the ones
+     * ProjectHelper2 is interested in.
+     */
+    public static final class Recorder extends DefaultHandler {
+        private final DefaultHandler delegate;
+        private final File buildFile;
+        private final long lastModified;
+        private final long length;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream events = new DataOutputStream(bytes);
+        private final Map stringIndex = new HashMap();
+        private final List strings = new ArrayList();
+        private org.xml.sax.Locator locator;
+        private String systemId;
+        private boolean cacheable = true;
+
+        private Recorder(DefaultHandler delegate, File buildFile) {
+            this.delegate = delegate;
+            this.buildFile = buildFile;
+            // taken before parsing so a concurrent modification makes
+            // the recording outdated rather than wrong
+            lastModified = buildFile.lastModified();
+            length = buildFile.length();
+        }
+
+        private Recording getRecording() {
+            if (!cacheable || systemId == null) {
+                return null;
+            }
+            return new Recording(buildFile.getAbsolutePath(), lastModified,
+                                 length, systemId,
+                                 (String[]) strings.toArray(new String[strings.size()]),
+                                 bytes.toByteArray());
+        }
+
+        public InputSource resolveEntity(String publicId, String systemId)
+            throws IOException, SAXException {
+            cacheable = false;
+            return delegate.resolveEntity(publicId, systemId);
+        }
+
+        public void notationDecl(String name, String publicId,
+                                 String systemId) throws SAXException {
+            cacheable = false;
+            delegate.notationDecl(name, publicId, systemId);
+        }
+
+        public void unparsedEntityDecl(String name, String publicId,
+                                       String systemId, String notationName)
+            throws SAXException {
+            cacheable = false;
+            delegate.unparsedEntityDecl(name, publicId, systemId,
+                                        notationName);
+        }
+
+        public void skippedEntity(String name) throws SAXException {
+            cacheable = false;
+            delegate.skippedEntity(name);
+        }
+
+        public void setDocumentLocator(org.xml.sax.Locator locator) {
+            this.locator = locator;
+            delegate.setDocumentLocator(locator);
+        }
+
+        public void startDocument() throws SAXException {
+            delegate.startDocument();
+        }
+
+        public void endDocument() throws SAXException {
+            delegate.endDocument();
+        }
+
+        public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+            try {
+                events.write(START_PREFIX);
+                writeString(prefix);
+                writeString(uri);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            delegate.startPrefixMapping(prefix, uri);
+        }
+
+        public void endPrefixMapping(String prefix) throws SAXException {
+            try {
+                events.write(END_PREFIX);
+                writeString(prefix);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            delegate.endPrefixMapping(prefix);
+        }
+
+        public void startElement(String uri, String localName, String qName,
+                                 Attributes attrs) throws SAXException {
+            if (systemId == null && locator != null) {
+                // parsers may reset the locator once the document is done
+                systemId = locator.getSystemId();
+            }
+            try {
+                events.write(START_ELEMENT);
+                writeLocation();
+                writeString(uri);
+                writeString(localName);
+                writeString(qName);
+                int count = attrs.getLength();
+                events.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    writeString(attrs.getURI(i));
+                    writeString(attrs.getLocalName(i));
+                    writeString(attrs.getQName(i));
+                    writeString(attrs.getType(i));
+                    writeString(attrs.getValue(i));
+                }
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            delegate.startElement(uri, localName, qName, attrs);
+        }
+
+        public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+            try {
+                events.write(END_ELEMENT);
+                writeLocation();
+                writeString(uri);
+                writeString(localName);
+                writeString(qName);
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            delegate.endElement(uri, localName, qName);
+        }
+
+        public void characters(char[] ch, int start, int length)
+            throws SAXException {
+            try {
+                events.write(CHARACTERS);
+                writeLocation();
+                writeString(new String(ch, start, length));
+            } catch (IOException e) {
+                throw new SAXException(e);
+            }
+            delegate.characters(ch, start, length);
+        }
+
+        public void warning(SAXParseException e) throws SAXException {
+            delegate.warning(e);
+        }
+
+        public void error(SAXParseException e) throws SAXException {
+            delegate.error(e);
+        }
+
+        public void fatalError(SAXParseException e) throws SAXException {
+            delegate.fatalError(e);
+        }
+
+        private void writeLocation() throws IOException {
+            events.writeInt(locator == null ? -1 : locator.getLineNumber());
+            events.writeInt(locator == null ? -1 : locator.getColumnNumber());
+        }
+
+        private void writeString(String s) throws IOException {
+            if (s == null) {
+                events.writeInt(-1);
+                return;
+            }
+            Integer idx = (Integer) stringIndex.get(s);
+            if (idx == null) {
+                idx = new Integer(strings.size());
+                strings.add(s);
+                stringIndex.put(s, idx);
+            }
+            events.writeInt(idx.intValue());
+        }
+    }
+}
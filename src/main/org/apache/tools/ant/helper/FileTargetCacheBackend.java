@@ -0,0 +1,108 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.helper;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Stores the entries of the target cache as files in a directory,
+ * which may as well be a directory shared by several machines.
+ *
+ * <p>Entries are written to a temporary file first and renamed once
+ * they are complete, so builds reading the directory at the same time
+ * never see half written entries.</p>
+ *
+ * @since Ant 1.8.3
+ */
+public class FileTargetCacheBackend implements TargetCacheBackend {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private File dir;
+
+    /** Creates a backend without a directory. */
+    public FileTargetCacheBackend() {
+    }
+
+    /**
+     * Creates a backend using the given directory.
+     * @param dir the directory, will be created if needed.
+     */
+    public FileTargetCacheBackend(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * The directory holding the entries.
+     * @param dir the directory, will be created if needed.
+     */
+    public void setDir(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * The directory holding the entries.
+     * @return the directory.
+     */
+    public File getDir() {
+        return dir;
+    }
+
+    /** {@inheritDoc} */
+    public boolean contains(String key) throws IOException {
+        return getFile(key).isFile();
+    }
+
+    /** {@inheritDoc} */
+    public boolean get(String key, File file) throws IOException {
+        File entry = getFile(key);
+        if (!entry.isFile()) {
+            return false;
+        }
+        FILE_UTILS.copyFile(entry, file, null, true);
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public void put(String key, File file) throws IOException {
+        File entry = getFile(key);
+        File parent = entry.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Failed to create directory " + parent);
+        }
+        File tmp = FILE_UTILS.createTempFile("entry", ".tmp", parent,
+                                             false, true);
+        try {
+            FILE_UTILS.copyFile(file, tmp, null, true);
+            FILE_UTILS.rename(tmp, entry);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private File getFile(String key) throws IOException {
+        if (dir == null) {
+            throw new IOException("No directory has been set for the "
+                                  + "target cache");
+        }
+        return new File(dir, key.replace('/', File.separatorChar));
+    }
+}
@@ -267,6 +267,19 @@ public class ProjectHelper2 extends ProjectHelper {
         ZipFile zf = null;
 
         try {
+            BuildFileCache.Recorder recorder = null;
+            if (buildFile != null && BuildFileCache.isEnabled(project)) {
+                BuildFileCache.Recording recording =
+                    BuildFileCache.lookup(project, buildFile);
+                if (recording != null) {
+                    project.log("using cached parse of buildfile "
+                                + buildFileName, Project.MSG_VERBOSE);
+                    recording.replay(handler);
+                    return;
+                }
+                recorder = BuildFileCache.createRecorder(handler, buildFile);
+            }
+
             /**
              * SAX 2 style parser used to parse the given file.
              */
@@ -298,13 +311,17 @@ public class ProjectHelper2 extends ProjectHelper {
                         + uri + (zf != null ? " from a zip file" : ""),
                         Project.MSG_VERBOSE);
 
-            DefaultHandler hb = handler;
+            DefaultHandler hb = recorder != null ? (DefaultHandler) recorder
+                : handler;
 
             parser.setContentHandler(hb);
             parser.setEntityResolver(hb);
             parser.setErrorHandler(hb);
             parser.setDTDHandler(hb);
             parser.parse(inputSource);
+            if (recorder != null) {
+                BuildFileCache.store(project, recorder);
+            }
         } catch (SAXParseException exc) {
             Location location = new Location(exc.getSystemId(), exc.getLineNumber(), exc
                                              .getColumnNumber());
@@ -895,8 +912,10 @@ public class ProjectHelper2 extends ProjectHelper {
          * with the element name and attributes. The attributes which
          * this handler can deal with are: <code>"name"</code>,
          * <code>"depends"</code>, <code>"if"</code>,
-         * <code>"unless"</code>, <code>"id"</code> and
-         * <code>"description"</code>.
+         * <code>"unless"</code>, <code>"id"</code>,
+         * <code>"description"</code>, <code>"extensionOf"</code>,
+         * <code>"onMissingExtensionPoint"</code>,
+         * <code>"cacheInputs"</code> and <code>"cacheOutputs"</code>.
          *
          * @param uri The namespace URI for this element.
          * @param tag Name of the element which caused this handler
@@ -957,6 +976,10 @@ public class ProjectHelper2 extends ProjectHelper {
                     } catch (IllegalArgumentException e) {
                         throw new BuildException("Invalid onMissingExtensionPoint " + value);
                     }
+                } else if (key.equals("cacheInputs")) {
+                    target.setCacheInputs(value);
+                } else if (key.equals("cacheOutputs")) {
+                    target.setCacheOutputs(value);
                 } else {
                     throw new SAXParseException("Unexpected attribute \"" + key + "\"", context
                                                 .getLocator());
@@ -1025,6 +1048,12 @@ public class ProjectHelper2 extends ProjectHelper {
                 context.getCurrentTargets().put(newName, newTarget);
                 project.addOrReplaceTarget(newName, newTarget);
             }
+            if ((target.getCacheInputs() == null)
+                != (target.getCacheOutputs() == null)) {
+                throw new BuildException("cacheInputs and cacheOutputs must "
+                                         + "be specified together",
+                                         target.getLocation());
+            }
             if (extensionPointMissing != null && extensionPoint == null) {
                 throw new BuildException("onMissingExtensionPoint attribute cannot " +
                                          "be specified unless extensionOf is specified", 
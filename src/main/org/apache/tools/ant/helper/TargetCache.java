@@ -0,0 +1,468 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.helper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.RuntimeConfigurable;
+import org.apache.tools.ant.Target;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
+import org.apache.tools.ant.types.resources.FileProvider;
+import org.apache.tools.ant.util.FastHash;
+import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.Metrics;
+
+/**
+ * Restores the outputs of targets from a content addressed store
+ * instead of running the targets again.
+ *
+ * <p>Targets take part if they declare their inputs and outputs as
+ * references to resource collections via their cacheInputs and
+ * cacheOutputs attributes.  The key of a target's cache entry is the
+ * hash of the project's and target's name, the id of the outputs,
+ * the content of the build file, the target's tasks with their
+ * attributes and nested text after property expansion and the names
+ * and content hashes of all inputs.  Once the target has
+ * run successfully, the content of each output file is stored under
+ * its hash and a list mapping the output files to their hashes is
+ * stored under the target's key.  When the key of a target is found
+ * the next time, the outputs are copied from the store and the tasks
+ * of the target are not run.</p>
+ *
+ * <p>The local store lives in the directory given by the {@link
+ * MagicNames#TARGET_CACHE_DIR ant.target.cache.dir} property and
+ * defaults to <code>.ant/target-cache</code> in the user's home
+ * directory.  A remote store may be used in addition, it is either a
+ * directory given by {@link MagicNames#TARGET_CACHE_REMOTE_DIR
+ * ant.target.cache.remote.dir} or an implementation of {@link
+ * TargetCacheBackend TargetCacheBackend} whose class name is given
+ * by {@link MagicNames#TARGET_CACHE_REMOTE_CLASSNAME
+ * ant.target.cache.remote.class}.  Entries found in the remote store
+ * are copied to the local store.</p>
+ *
+ * <p>Problems accessing the stores are logged as warnings and make
+ * the target run as if there was no cache.</p>
+ *
+ * @since Ant 1.8.3
+ */
+public final class TargetCache {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    /** Hash used for keys and contents. */
+    private static final String ALGORITHM = FastHash.MURMUR3_128;
+
+    /** Changes if the way keys are computed changes. */
+    private static final String FORMAT = "ant-target-cache-1";
+
+    private static final String CONTENTS = "cas/";
+    private static final String ACTIONS = "ac/";
+
+    private static final String MISSING = "-";
+    private static final String DIRECTORY = "d";
+
+    private static final Metrics.Counter HITS = Metrics.getMetrics()
+        .getCounter("ant_target_cache_hits_total",
+                    "Targets whose outputs have been restored from the target cache.");
+    private static final Metrics.Counter MISSES = Metrics.getMetrics()
+        .getCounter("ant_target_cache_misses_total",
+                    "Targets with cached outputs that had to be run.");
+
+    private final Project project;
+    private final Target target;
+    private final TargetCacheBackend local;
+    private final TargetCacheBackend remote;
+    /** Content keys whose entries didn't match their hash. */
+    private final Set corrupt = new HashSet();
+
+    /**
+     * Creates a cache for the given target.
+     * @param target a target declaring its inputs and outputs.
+     */
+    public TargetCache(Target target) {
+        this.target = target;
+        project = target.getProject();
+        String dir = project.getProperty(MagicNames.TARGET_CACHE_DIR);
+        local = new FileTargetCacheBackend(dir != null
+            ? project.resolveFile(dir)
+            : new File(System.getProperty("user.home"),
+                       ".ant" + File.separator + "target-cache"));
+        remote = createRemote();
+    }
+
+    /**
+     * Computes the key of the target's entry from its current inputs.
+     * @return the key.
+     * @throws BuildException if the inputs cannot be read.
+     */
+    public String computeKey() {
+        FastHash hash = FastHash.getInstance(ALGORITHM);
+        update(hash, FORMAT);
+        update(hash, String.valueOf(project.getName()));
+        update(hash, target.getName());
+        update(hash, target.getCacheOutputs());
+        updateDefinition(hash);
+        List inputs = new ArrayList();
+        for (Iterator i = getCollection(target.getCacheInputs()).iterator();
+             i.hasNext();) {
+            Resource r = (Resource) i.next();
+            inputs.add(r.getName() + "\u0000" + hash(r));
+        }
+        Collections.sort(inputs);
+        for (Iterator i = inputs.iterator(); i.hasNext();) {
+            update(hash, (String) i.next());
+        }
+        return FastHash.toHex(hash.digest());
+    }
+
+    /**
+     * Restores the outputs stored for the given key.
+     * @param key the key of the target's entry.
+     * @return true if the outputs have been restored.
+     */
+    public boolean restore(String key) {
+        File list = FILE_UTILS.createTempFile("outputs", ".properties",
+                                              null, false, false);
+        try {
+            if (!fetch(ACTIONS + key, list)) {
+                MISSES.increment();
+                return false;
+            }
+            Properties outputs = load(list);
+            // make sure all names are safe and all contents are there
+            // before touching any output
+            for (Iterator i = outputs.keySet().iterator(); i.hasNext();) {
+                String name = (String) i.next();
+                checkOutputName(name);
+                if (!fetchContent(outputs.getProperty(name))) {
+                    MISSES.increment();
+                    return false;
+                }
+            }
+            for (Iterator i = outputs.keySet().iterator(); i.hasNext();) {
+                String name = (String) i.next();
+                String hash = outputs.getProperty(name);
+                File output = project.resolveFile(name);
+                if (!local.get(contentKey(hash), output)) {
+                    throw new IOException("content of " + name
+                                          + " vanished from the cache");
+                }
+                if (!hash.equals(FastHash.hash(output, ALGORITHM))) {
+                    corrupt.add(contentKey(hash));
+                    throw new IOException("content of " + name
+                                          + " doesn't match its hash");
+                }
+            }
+            HITS.increment();
+            project.log(target, "Restored " + outputs.size() + " file"
+                        + (outputs.size() == 1 ? "" : "s")
+                        + " from the target cache.", Project.MSG_INFO);
+            return true;
+        } catch (IOException e) {
+            project.log(target, "Failed to use the target cache: "
+                        + e.getMessage(), Project.MSG_WARN);
+            MISSES.increment();
+            return false;
+        } finally {
+            list.delete();
+        }
+    }
+
+    /**
+     * Stores the current outputs of the target.
+     * @param key the key of the target's entry.
+     */
+    public void store(String key) {
+        File list = FILE_UTILS.createTempFile("outputs", ".properties",
+                                              null, false, false);
+        try {
+            Properties outputs = new Properties();
+            for (Iterator i = getCollection(target.getCacheOutputs())
+                     .iterator(); i.hasNext();) {
+                Resource r = (Resource) i.next();
+                FileProvider fp = (FileProvider) r.as(FileProvider.class);
+                if (fp == null) {
+                    project.log(target, "Not caching outputs since " + r
+                                + " is not a file.", Project.MSG_WARN);
+                    return;
+                }
+                File f = fp.getFile();
+                if (!f.isFile()) {
+                    continue;
+                }
+                if (!FILE_UTILS.isLeadingPath(project.getBaseDir(), f)) {
+                    project.log(target, "Not caching outputs since " + f
+                                + " is outside of the basedir.",
+                                Project.MSG_WARN);
+                    return;
+                }
+                String hash = FastHash.hash(f, ALGORITHM);
+                String contentKey = contentKey(hash);
+                boolean replace = corrupt.contains(contentKey);
+                if (replace || !local.contains(contentKey)) {
+                    local.put(contentKey, f);
+                }
+                if (remote != null
+                    && (replace || !remote.contains(contentKey))) {
+                    remote.put(contentKey, f);
+                }
+                outputs.setProperty(FILE_UTILS
+                                    .removeLeadingPath(project.getBaseDir(), f)
+                                    .replace(File.separatorChar, '/'),
+                                    hash);
+            }
+            OutputStream out = new FileOutputStream(list);
+            try {
+                outputs.store(out, null);
+            } finally {
+                FileUtils.close(out);
+            }
+            // the list goes last so nobody sees it before the contents
+            local.put(ACTIONS + key, list);
+            if (remote != null) {
+                remote.put(ACTIONS + key, list);
+            }
+            project.log(target, "Stored " + outputs.size() + " file"
+                        + (outputs.size() == 1 ? "" : "s")
+                        + " in the target cache.", Project.MSG_VERBOSE);
+        } catch (IOException e) {
+            project.log(target, "Failed to store outputs in the target cache: "
+                        + e.getMessage(), Project.MSG_WARN);
+        } catch (BuildException e) {
+            project.log(target, "Failed to store outputs in the target cache: "
+                        + e.getMessage(), Project.MSG_WARN);
+        } finally {
+            list.delete();
+        }
+    }
+
+    /**
+     * Reads an entry from the local store or copies it from the
+     * remote store to the local store first.
+     */
+    private boolean fetch(String key, File file) throws IOException {
+        if (local.get(key, file)) {
+            return true;
+        }
+        if (remote != null && remote.get(key, file)) {
+            local.put(key, file);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Makes sure the local store holds the given content, content
+     * of the remote store that doesn't match its hash is ignored.
+     */
+    private boolean fetchContent(String hash) throws IOException {
+        String key = contentKey(hash);
+        if (local.contains(key)) {
+            return true;
+        }
+        if (remote == null) {
+            return false;
+        }
+        File tmp = FILE_UTILS.createTempFile("content", ".tmp", null,
+                                             false, false);
+        try {
+            if (!remote.get(key, tmp)) {
+                return false;
+            }
+            if (!hash.equals(FastHash.hash(tmp, ALGORITHM))) {
+                corrupt.add(key);
+                project.log(target, "Ignoring " + key + " of the remote"
+                            + " target cache as it doesn't match its hash.",
+                            Project.MSG_WARN);
+                return false;
+            }
+            local.put(key, tmp);
+            return true;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Adds the build file and the tasks of the target with their
+     * properties expanded to the key, so changing what the target
+     * does invalidates its entries.
+     */
+    private void updateDefinition(FastHash hash) {
+        String buildFile = target.getLocation().getFileName();
+        if (buildFile != null && new File(buildFile).isFile()) {
+            try {
+                update(hash, FastHash.hash(new File(buildFile), ALGORITHM));
+            } catch (IOException e) {
+                throw new BuildException("Failed to read build file "
+                                         + buildFile, e, target.getLocation());
+            }
+        }
+        Task[] tasks = target.getTasks();
+        for (int i = 0; i < tasks.length; i++) {
+            update(hash, tasks[i].getRuntimeConfigurableWrapper());
+        }
+    }
+
+    private void update(FastHash hash, RuntimeConfigurable element) {
+        update(hash, "<" + element.getElementTag());
+        Hashtable attributes = element.getAttributeMap();
+        List names = new ArrayList(attributes.keySet());
+        Collections.sort(names);
+        for (Iterator i = names.iterator(); i.hasNext();) {
+            String name = (String) i.next();
+            update(hash, name);
+            update(hash, project.replaceProperties((String) attributes
+                                                   .get(name)));
+        }
+        update(hash, project.replaceProperties(element.getText().toString()));
+        for (Enumeration e = element.getChildren(); e.hasMoreElements();) {
+            update(hash, (RuntimeConfigurable) e.nextElement());
+        }
+        update(hash, ">");
+    }
+
+    /**
+     * Entries may come from a shared store, make sure they cannot
+     * write files outside of the project's basedir.
+     */
+    private void checkOutputName(String name) throws IOException {
+        if (FileUtils.isAbsolutePath(name)) {
+            throw new IOException("refusing to restore absolute path "
+                                  + name);
+        }
+        File base = FILE_UTILS.normalize(project.getBaseDir()
+                                         .getAbsolutePath());
+        File output = project.resolveFile(name);
+        if (!FILE_UTILS.isLeadingPath(base, output)
+            || output.equals(base)) {
+            throw new IOException("refusing to restore " + name
+                                  + " which is outside of " + base);
+        }
+    }
+
+    private TargetCacheBackend createRemote() {
+        String dir = project.getProperty(MagicNames.TARGET_CACHE_REMOTE_DIR);
+        if (dir != null) {
+            return new FileTargetCacheBackend(project.resolveFile(dir));
+        }
+        String classname =
+            project.getProperty(MagicNames.TARGET_CACHE_REMOTE_CLASSNAME);
+        if (classname == null) {
+            return null;
+        }
+        Object o;
+        try {
+            o = Class.forName(classname, true, project.getCoreLoader() != null
+                              ? project.getCoreLoader()
+                              : TargetCache.class.getClassLoader())
+                .newInstance();
+        } catch (Exception e) {
+            throw new BuildException("Unable to create target cache backend "
+                                     + classname, e, target.getLocation());
+        }
+        if (!(o instanceof TargetCacheBackend)) {
+            throw new BuildException(classname + " is not a "
+                                     + TargetCacheBackend.class.getName(),
+                                     target.getLocation());
+        }
+        project.setProjectReference(o);
+        return (TargetCacheBackend) o;
+    }
+
+    private ResourceCollection getCollection(String refid) {
+        Object o = project.getReference(refid);
+        if (!(o instanceof ResourceCollection)) {
+            throw new BuildException("Reference " + refid + " of target "
+                                     + target.getName()
+                                     + " doesn't denote a resource collection",
+                                     target.getLocation());
+        }
+        return (ResourceCollection) o;
+    }
+
+    private String hash(Resource r) {
+        if (!r.isExists()) {
+            return MISSING;
+        }
+        if (r.isDirectory()) {
+            return DIRECTORY;
+        }
+        try {
+            FileProvider fp = (FileProvider) r.as(FileProvider.class);
+            if (fp != null) {
+                return FastHash.hash(fp.getFile(), ALGORITHM);
+            }
+            FastHash hash = FastHash.getInstance(ALGORITHM);
+            InputStream in = r.getInputStream();
+            try {
+                hash.update(in);
+            } finally {
+                FileUtils.close(in);
+            }
+            return FastHash.toHex(hash.digest());
+        } catch (IOException e) {
+            throw new BuildException("Failed to read input " + r, e,
+                                     target.getLocation());
+        }
+    }
+
+    private static String contentKey(String hash) {
+        return CONTENTS + hash.substring(0, 2) + "/" + hash;
+    }
+
+    private static Properties load(File f) throws IOException {
+        Properties p = new Properties();
+        InputStream in = new FileInputStream(f);
+        try {
+            p.load(in);
+        } finally {
+            FileUtils.close(in);
+        }
+        return p;
+    }
+
+    private static void update(FastHash hash, String s) {
+        try {
+            byte[] b = (s + "\u0000").getBytes("UTF-8");
+            hash.update(b, 0, b.length);
+        } catch (UnsupportedEncodingException e) {
+            throw new BuildException(e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.helper;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Storage of the target cache.
+ *
+ * <p>Entries are identified by keys made of lower case hex digits
+ * and forward slashes.  Keys starting with <code>cas/</code> denote
+ * file contents and are named after the hash of the content, keys
+ * starting with <code>ac/</code> denote the list of outputs of a
+ * target.  Entries are never modified once they have been stored,
+ * an entry may be stored again with the same content by another
+ * build.</p>
+ *
+ * <p>Implementations used as remote backend are created via their
+ * no-arg constructor, they get the project if they have a public
+ * setProject method.</p>
+ *
+ * @see TargetCache
+ * @since Ant 1.8.3
+ */
+public interface TargetCacheBackend {
+
+    /**
+     * Whether an entry exists.
+     * @param key the key of the entry.
+     * @return true if the entry exists.
+     * @throws IOException on error.
+     */
+    boolean contains(String key) throws IOException;
+
+    /**
+     * Copies an entry to a file.
+     * @param key the key of the entry.
+     * @param file the file to write, may exist and is overwritten.
+     * @return false if the entry doesn't exist.
+     * @throws IOException on error.
+     */
+    boolean get(String key, File file) throws IOException;
+
+    /**
+     * Stores the content of a file as an entry.
+     * @param key the key of the entry.
+     * @param file the file to read.
+     * @throws IOException on error.
+     */
+    void put(String key, File file) throws IOException;
+}
@@ -0,0 +1,206 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.launch;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Runs a build inside a VM started with <code>ant -daemon</code>.
+ *
+ * <p>Takes the same arguments as {@link Launcher}, the build is run
+ * by the daemon with the current working directory of the client.
+ * If no daemon is running, the command line contains options that
+ * only the launcher understands or the environment variables differ
+ * from those the daemon has been started with, the build is run by
+ * {@link Launcher} inside this VM instead.</p>
+ *
+ * <p>The daemon can't change its working directory, tasks that
+ * resolve relative file names against the working directory instead
+ * of the project's basedir and processes started without an explicit
+ * directory see the daemon's working directory.</p>
+ *
+ * <p><code>-stop</code> as the only argument stops a running
+ * daemon.</p>
+ *
+ * @since Ant 1.8.3
+ */
+public class AntClient {
+
+    /** Options that change the class path the daemon has been started with. */
+    private static final String[] LAUNCHER_ONLY = {
+        "-lib", "-cp", "-noclasspath", "--noclasspath", "-nouserlib",
+        "--nouserlib", "-main", "--launchdiag", "-daemon"
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Entry point for running builds through the daemon.
+     *
+     * @param args commandline arguments
+     */
+    public static void main(String[] args) {
+        int exitCode;
+        try {
+            exitCode = new AntClient().run(args);
+        } catch (IOException e) {
+            exitCode = Launcher.EXIT_CODE_ERROR;
+            System.err.println("Failed to talk to the Ant daemon: "
+                               + e.getMessage());
+        }
+        if (exitCode < 0) {
+            Launcher.main(args);
+            return;
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Run the build inside the daemon.
+     * @param args the command line arguments
+     * @return the exit code of the build or -1 if the build has to
+     *         be run by the launcher instead.
+     * @throws IOException if the communication with the daemon fails
+     */
+    private int run(String[] args) throws IOException {
+        boolean stop = args.length == 1 && args[0].equals("-stop");
+        if (!stop && usesLauncherOptions(args)) {
+            return -1;
+        }
+        Properties p = AntDaemon.readDaemonFile(AntDaemon.getDaemonFile());
+        if (p == null) {
+            if (stop) {
+                System.err.println("No Ant daemon is running");
+                return Launcher.EXIT_CODE_ERROR;
+            }
+            return -1;
+        }
+        if (!stop) {
+            String env = AntDaemon.getEnvironmentFingerprint();
+            if (env == null
+                || !env.equals(p.getProperty(AntDaemon.KEY_ENVIRONMENT))) {
+                // the build would see the daemon's environment
+                return -1;
+            }
+        }
+        Socket s;
+        try {
+            s = new Socket(InetAddress.getByName("127.0.0.1"),
+                           Integer.parseInt(p.getProperty(AntDaemon.KEY_PORT)));
+        } catch (ConnectException ex) {
+            // stale file of a daemon that has been killed
+            return stop ? 0 : -1;
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            out.writeUTF(p.getProperty(AntDaemon.KEY_SECRET));
+            if (stop) {
+                out.writeUTF(AntDaemon.COMMAND_STOP);
+            } else {
+                out.writeUTF(AntDaemon.COMMAND_BUILD);
+                out.writeUTF(System.getProperty("user.dir"));
+                out.writeInt(args.length);
+                for (int i = 0; i < args.length; i++) {
+                    out.writeUTF(args[i]);
+                }
+            }
+            out.flush();
+            if (!stop) {
+                forwardInput(System.in, s);
+            }
+            return readResponse(new DataInputStream(
+                new BufferedInputStream(s.getInputStream(), BUFFER_SIZE)));
+        } finally {
+            s.close();
+        }
+    }
+
+    private static boolean usesLauncherOptions(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            for (int j = 0; j < LAUNCHER_ONLY.length; j++) {
+                if (args[i].equals(LAUNCHER_ONLY[j])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the output frames sent by the daemon to our own streams.
+     * @return the exit code sent by the daemon.
+     */
+    private static int readResponse(DataInputStream in) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (true) {
+            int type = in.readByte();
+            if (type == AntDaemon.FRAME_EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return in.readInt();
+            }
+            PrintStream target =
+                type == AntDaemon.FRAME_ERR ? System.err : System.out;
+            int len = in.readInt();
+            while (len > 0) {
+                int n = in.read(buf, 0, Math.min(len, buf.length));
+                if (n < 0) {
+                    throw new IOException("Connection closed by the daemon");
+                }
+                target.write(buf, 0, n);
+                len -= n;
+            }
+            target.flush();
+        }
+    }
+
+    /**
+     * Forwards our standard input to the daemon in a background
+     * thread.
+     */
+    private static void forwardInput(final InputStream in, final Socket s) {
+        Thread t = new Thread("Ant daemon input") {
+            public void run() {
+                byte[] buf = new byte[BUFFER_SIZE];
+                try {
+                    OutputStream out = s.getOutputStream();
+                    int n;
+                    while ((n = in.read(buf)) >= 0) {
+                        out.write(buf, 0, n);
+                        out.flush();
+                    }
+                    s.shutdownOutput();
+                } catch (IOException ex) {
+                    // the build is over
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.launch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A VM that stays around and runs builds on behalf of {@link
+ * AntClient}.
+ *
+ * <p>The daemon listens on a socket bound to the loopback interface
+ * and records its port together with a random secret in
+ * <code>${user.home}/.ant/daemon.properties</code>.  Clients send the
+ * secret, their working directory and their command line; the daemon
+ * runs the build in a new Project using the class loader the
+ * launcher has set up once and forwards the client's standard input
+ * and the build's output over the connection.</p>
+ *
+ * <p>The daemon file also holds a fingerprint of the daemon's
+ * environment variables, clients with a different environment run
+ * the build themselves.  The working directory of the daemon can't
+ * be changed, only the build file and file arguments of the command
+ * line are resolved relative to the client's working directory.</p>
+ *
+ * <p>Builds are run one at a time as System.in, System.out and
+ * System.err are redirected for the duration of a build.</p>
+ *
+ * @since Ant 1.8.3
+ */
+class AntDaemon {
+
+    /**
+     * System property holding the port the daemon listens on, an
+     * ephemeral port is used if it is not set.
+     * {@value}
+     */
+    static final String PORT_PROPERTY = "ant.daemon.port";
+
+    /**
+     * Name of the file inside ${user.home}/.ant holding port and
+     * secret of a running daemon.
+     * {@value}
+     */
+    static final String DAEMON_FILE = "daemon.properties";
+
+    /** Key of the port in the daemon file. */
+    static final String KEY_PORT = "port";
+    /** Key of the secret in the daemon file. */
+    static final String KEY_SECRET = "secret";
+    /** Key of the fingerprint of the environment in the daemon file. */
+    static final String KEY_ENVIRONMENT = "environment";
+
+    /** Request running a build. */
+    static final String COMMAND_BUILD = "build";
+    /** Request stopping the daemon. */
+    static final String COMMAND_STOP = "stop";
+
+    /** Frame holding the exit code, ends the response. */
+    static final int FRAME_EXIT = 0;
+    /** Frame holding output of the build. */
+    static final int FRAME_OUT = 1;
+    /** Frame holding error output of the build. */
+    static final int FRAME_ERR = 2;
+
+    /**
+     * Property added to every build so parsed build files are kept
+     * in memory between builds.
+     */
+    private static final String PARSER_CACHE = "-Dant.parser.cache=true";
+
+    private static final int SECRET_BYTES = 16;
+    private static final int HEX = 16;
+    private static final int BYTE_MASK = 0xff;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Milliseconds a client may take to send its request before the
+     * daemon gives up on it and accepts the next one.
+     */
+    private static final int HANDSHAKE_TIMEOUT = 10000;
+
+    private final Class mainClass;
+    private final File daemonFile;
+    private final String secret;
+
+    /**
+     * @param mainClass the ReusableAntMain implementation to run.
+     * @param daemonFile the file to advertise port and secret in.
+     * @throws LaunchException if mainClass can't be reused.
+     */
+    AntDaemon(Class mainClass, File daemonFile) throws LaunchException {
+        if (!ReusableAntMain.class.isAssignableFrom(mainClass)) {
+            throw new LaunchException(mainClass.getName()
+                + " doesn't implement " + ReusableAntMain.class.getName()
+                + " and can't be used in daemon mode");
+        }
+        this.mainClass = mainClass;
+        this.daemonFile = daemonFile;
+        byte[] b = new byte[SECRET_BYTES];
+        new SecureRandom().nextBytes(b);
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < b.length; i++) {
+            sb.append(Integer.toHexString((b[i] & BYTE_MASK) | 0x100)
+                      .substring(1));
+        }
+        secret = sb.toString();
+    }
+
+    /**
+     * The file a daemon advertises itself in.
+     * @return ${user.home}/.ant/daemon.properties
+     */
+    static File getDaemonFile() {
+        return new File(new File(System.getProperty(Launcher.USER_HOMEDIR),
+                                 Launcher.ANT_PRIVATEDIR), DAEMON_FILE);
+    }
+
+    /**
+     * Reads port and secret of a running daemon.
+     * @param f the file to read.
+     * @return the properties or null if no daemon has been started.
+     * @throws IOException on error.
+     */
+    static Properties readDaemonFile(File f) throws IOException {
+        if (!f.exists()) {
+            return null;
+        }
+        Properties p = new Properties();
+        InputStream in = new FileInputStream(f);
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+        return p;
+    }
+
+    /**
+     * Accepts requests until a client asks the daemon to stop.
+     * @return the exit code of the daemon.
+     * @throws IOException if the server socket can't be created.
+     */
+    int run() throws IOException {
+        int port = Integer.getInteger(PORT_PROPERTY, 0).intValue();
+        ServerSocket server =
+            new ServerSocket(port, 0, InetAddress.getByName("127.0.0.1"));
+        try {
+            writeDaemonFile(server.getLocalPort());
+            System.out.println("Ant daemon listening on port "
+                               + server.getLocalPort());
+            boolean running = true;
+            while (running) {
+                Socket s = server.accept();
+                try {
+                    running = serve(s);
+                } catch (IOException ex) {
+                    // the client went away, wait for the next one
+                    if (Launcher.launchDiag) {
+                        ex.printStackTrace(System.err);
+                    }
+                } finally {
+                    try {
+                        s.close();
+                    } catch (IOException ex) {
+                        // ignore
+                    }
+                }
+            }
+        } finally {
+            daemonFile.delete();
+            server.close();
+        }
+        return 0;
+    }
+
+    /**
+     * Handles a single request.
+     * @return false if the daemon should stop.
+     */
+    private boolean serve(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(s.getInputStream());
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(s.getOutputStream(), BUFFER_SIZE));
+        // don't let a client that never sends anything block everybody
+        s.setSoTimeout(HANDSHAKE_TIMEOUT);
+        if (!secret.equals(in.readUTF())) {
+            return true;
+        }
+        String command = in.readUTF();
+        if (COMMAND_STOP.equals(command)) {
+            sendExit(out, 0);
+            return false;
+        }
+        if (!COMMAND_BUILD.equals(command)) {
+            return true;
+        }
+        String cwd = in.readUTF();
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        // standard input of the build may legitimately stay silent
+        s.setSoTimeout(0);
+        sendExit(out, build(cwd, args, in, out));
+        return true;
+    }
+
+    /**
+     * Runs a build with the standard streams redirected to the
+     * client.
+     */
+    private int build(String cwd, String[] args, InputStream in,
+                      DataOutputStream out) {
+        PrintStream buildOut =
+            new PrintStream(new FrameOutputStream(out, FRAME_OUT), true);
+        PrintStream buildErr =
+            new PrintStream(new FrameOutputStream(out, FRAME_ERR), true);
+        InputStream savedIn = System.in;
+        PrintStream savedOut = System.out;
+        PrintStream savedErr = System.err;
+        String savedDir = System.getProperty("user.dir");
+        System.setIn(in);
+        System.setOut(buildOut);
+        System.setErr(buildErr);
+        System.setProperty("user.dir", cwd);
+        try {
+            ReusableAntMain main = (ReusableAntMain) mainClass.newInstance();
+            return main.runAnt(resolveArgs(cwd, args), null, null);
+        } catch (Throwable t) {
+            t.printStackTrace(buildErr);
+            return Launcher.EXIT_CODE_ERROR;
+        } finally {
+            System.setIn(savedIn);
+            System.setOut(savedOut);
+            System.setErr(savedErr);
+            System.setProperty("user.dir", savedDir);
+            buildOut.flush();
+            buildErr.flush();
+        }
+    }
+
+    /**
+     * Makes file arguments absolute relative to the client's working
+     * directory as the daemon's own working directory can't be
+     * changed.
+     * @param cwd the working directory of the client.
+     * @param args the client's command line.
+     * @return the command line for Main.
+     */
+    static String[] resolveArgs(String cwd, String[] args) {
+        List result = new ArrayList();
+        result.add(PARSER_CACHE);
+        boolean buildFileGiven = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            result.add(arg);
+            boolean isBuildFile = arg.equals("-buildfile")
+                || arg.equals("-file") || arg.equals("-f");
+            if (arg.equals("-find") || arg.equals("-s")) {
+                buildFileGiven = true;
+            } else if (i < args.length - 1
+                       && (isBuildFile || arg.equals("-logfile")
+                           || arg.equals("-l")
+                           || arg.equals("-propertyfile"))) {
+                buildFileGiven |= isBuildFile;
+                result.add(resolve(cwd, args[++i]));
+            }
+        }
+        if (!buildFileGiven) {
+            result.add("-buildfile");
+            result.add(new File(cwd, "build.xml").getAbsolutePath());
+        }
+        return (String[]) result.toArray(new String[result.size()]);
+    }
+
+    private static String resolve(String cwd, String name) {
+        File f = new File(name);
+        return f.isAbsolute() ? name : new File(cwd, name).getAbsolutePath();
+    }
+
+    /**
+     * Advertises port and secret in the daemon file.
+     * @param port the port the daemon listens on.
+     * @throws IOException if the file can't be written or access to
+     * it can't be restricted to its owner.
+     */
+    void writeDaemonFile(int port) throws IOException {
+        File dir = daemonFile.getParentFile();
+        dir.mkdirs();
+        Properties p = new Properties();
+        p.setProperty(KEY_PORT, String.valueOf(port));
+        p.setProperty(KEY_SECRET, secret);
+        String env = getEnvironmentFingerprint();
+        if (env != null) {
+            p.setProperty(KEY_ENVIRONMENT, env);
+        }
+        // the secret is only written once nobody else can read the
+        // file, which then replaces any earlier file as a whole
+        File tmp = File.createTempFile("daemon", ".tmp", dir);
+        boolean written = false;
+        try {
+            restrictToOwner(tmp);
+            OutputStream o = new FileOutputStream(tmp);
+            try {
+                p.store(o, "Ant daemon");
+            } finally {
+                o.close();
+            }
+            if (!tmp.renameTo(daemonFile)
+                && !(daemonFile.delete() && tmp.renameTo(daemonFile))) {
+                throw new IOException("Failed to rename " + tmp + " to "
+                                      + daemonFile);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        daemonFile.deleteOnExit();
+    }
+
+    /**
+     * Makes the file only readable by its owner.
+     * @throws IOException if the permissions can't be changed, either
+     * because this VM doesn't support it (before Java6) or the file
+     * system doesn't, as the secret would be readable by others.
+     */
+    private static void restrictToOwner(File f) throws IOException {
+        Method m;
+        try {
+            m = File.class.getMethod("setReadable",
+                                     new Class[] {Boolean.TYPE,
+                                                  Boolean.TYPE});
+        } catch (NoSuchMethodException ex) {
+            throw new IOException("The daemon requires Java6 or later to "
+                                  + "protect the secret in " + f);
+        }
+        Object others;
+        Object owner;
+        try {
+            others = m.invoke(f, new Object[] {Boolean.FALSE, Boolean.FALSE});
+            owner = m.invoke(f, new Object[] {Boolean.TRUE, Boolean.TRUE});
+        } catch (Exception ex) {
+            throw new IOException("Failed to restrict access to " + f
+                                  + ": " + ex);
+        }
+        if (!Boolean.TRUE.equals(others) || !Boolean.TRUE.equals(owner)) {
+            throw new IOException("Failed to restrict access to " + f
+                                  + " to its owner, refusing to store the"
+                                  + " daemon's secret in it");
+        }
+    }
+
+    /**
+     * Variables shells maintain themselves that say nothing about the
+     * environment a build sees.
+     */
+    private static final String[] IGNORED_VARIABLES = {
+        "_", "PWD", "OLDPWD", "SHLVL"
+    };
+
+    /**
+     * A hash of all environment variables and their values, except
+     * for the ones shells change on their own.
+     * @return null if the environment can't be read (before Java5).
+     */
+    static String getEnvironmentFingerprint() {
+        try {
+            Map env = (Map) System.class.getMethod("getenv", new Class[0])
+                .invoke(null, new Object[0]);
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            TreeMap sorted = new TreeMap(env);
+            for (int i = 0; i < IGNORED_VARIABLES.length; i++) {
+                sorted.remove(IGNORED_VARIABLES[i]);
+            }
+            for (Iterator i = sorted.entrySet().iterator();
+                 i.hasNext();) {
+                Map.Entry e = (Map.Entry) i.next();
+                digest.update((e.getKey() + "=" + e.getValue() + "\u0000")
+                              .getBytes("UTF-8"));
+            }
+            byte[] b = digest.digest();
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < b.length; i++) {
+                sb.append(Integer.toHexString((b[i] & BYTE_MASK) | 0x100)
+                          .substring(1));
+            }
+            return sb.toString();
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static void sendExit(DataOutputStream out, int code)
+        throws IOException {
+        synchronized (out) {
+            out.writeByte(FRAME_EXIT);
+            out.writeInt(code);
+            out.flush();
+        }
+    }
+
+    /**
+     * Sends everything written to it as frames of a given type.
+     */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int type;
+        private boolean broken;
+
+        FrameOutputStream(DataOutputStream out, int type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (out) {
+                if (broken) {
+                    // the client has gone, let the build finish
+                    return;
+                }
+                try {
+                    out.writeByte(type);
+                    out.writeInt(len);
+                    out.write(b, off, len);
+                } catch (IOException ex) {
+                    broken = true;
+                }
+            }
+        }
+
+        public void flush() throws IOException {
+            synchronized (out) {
+                if (!broken) {
+                    try {
+                        out.flush();
+                    } catch (IOException ex) {
+                        broken = true;
+                    }
+                }
+            }
+        }
+    }
+}
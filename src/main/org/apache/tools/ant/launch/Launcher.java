@@ -196,6 +196,7 @@ public class Launcher {
         String[] newArgs;
         boolean  noUserLib = false;
         boolean  noClassPath = false;
+        boolean  daemon = false;
 
         for (int i = 0; i < args.length; ++i) {
             if (args[i].equals("-lib")) {
@@ -218,6 +219,8 @@ public class Launcher {
                 noUserLib = true;
             } else if (args[i].equals("--launchdiag")) {
                 launchDiag = true;
+            } else if (args[i].equals("-daemon")) {
+                daemon = true;
             } else if (args[i].equals("--noclasspath") || args[i].equals("-noclasspath")) {
                 noClassPath = true;
             } else if (args[i].equals("-main")) {
@@ -231,6 +234,12 @@ public class Launcher {
             }
         }
 
+        if (daemon && argList.size() > 0) {
+            throw new LaunchException("The -daemon argument can only be "
+                + "combined with launcher arguments, build arguments are "
+                + "passed in by " + AntClient.class.getName());
+        }
+
         logPath("Launcher JAR",sourceJar);
         logPath("Launcher JAR directory", sourceJar.getParentFile());
         logPath("java.home", new File(System.getProperty("java.home")));
@@ -276,8 +285,13 @@ public class Launcher {
         Throwable thrown=null;
         try {
             mainClass = loader.loadClass(mainClassname);
-            AntMain main = (AntMain) mainClass.newInstance();
-            main.startAnt(newArgs, null, null);
+            if (daemon) {
+                exitCode = new AntDaemon(mainClass, AntDaemon.getDaemonFile())
+                    .run();
+            } else {
+                AntMain main = (AntMain) mainClass.newInstance();
+                main.startAnt(newArgs, null, null);
+            }
         } catch (InstantiationException ex) {
             System.err.println(
                 "Incompatible version of " + mainClassname + " detected");
@@ -289,6 +303,8 @@ public class Launcher {
             System.err.println(
                     "Failed to locate" + mainClassname);
             thrown = cnfe;
+        } catch (LaunchException le) {
+            throw le;
         } catch (Throwable t) {
             t.printStackTrace(System.err);
             thrown=t;
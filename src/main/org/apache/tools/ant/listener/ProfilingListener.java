@@ -0,0 +1,470 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.listener;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.tools.ant.AntTypeDefinition;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.ComponentHelper;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.ProjectHelper;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.UnknownElement;
+import org.apache.tools.ant.taskdefs.MacroInstance;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Records how long each target and task of a build takes and writes
+ * the result in formats understood by profiling tools when the build
+ * has finished.
+ *
+ * <p>Two files are written:</p>
+ * <ul>
+ *   <li>a trace in the Chrome trace event format that can be loaded
+ *   into chrome://tracing or similar viewers.  Its name is taken from
+ *   the property <code>ProfilingListener.trace</code>, default is
+ *   <code>ant-profile.json</code>.</li>
+ *   <li>collapsed stacks with the time spent in each target or task
+ *   itself, as used by flame graph generators.  Its name is taken
+ *   from the property <code>ProfilingListener.collapsed</code>,
+ *   default is <code>ant-profile.collapsed</code>.</li>
+ * </ul>
+ *
+ * <p>Times are measured in microseconds.  If the VM supports it, the
+ * bytes allocated by the thread executing a task are recorded as
+ * well, on Linux also the read and write calls of the whole
+ * process.</p>
+ *
+ * @since Ant 1.8.3
+ */
+public class ProfilingListener implements BuildListener {
+
+    /** Property holding the name of the trace file. */
+    public static final String TRACE_FILE = "ProfilingListener.trace";
+
+    /** Property holding the name of the collapsed stacks file. */
+    public static final String COLLAPSED_FILE = "ProfilingListener.collapsed";
+
+    private static final String DEFAULT_TRACE_FILE = "ant-profile.json";
+    private static final String DEFAULT_COLLAPSED_FILE = "ant-profile.collapsed";
+
+    private static final File PROC_IO = new File("/proc/self/io");
+    private static final String[] IO_FIELDS = {
+        "syscr", "syscw", "rchar", "wchar"
+    };
+    private static final String[] IO_NAMES = {
+        "readCalls", "writeCalls", "bytesRead", "bytesWritten"
+    };
+
+    private static final Method NANO_TIME;
+    private static final Object THREAD_BEAN;
+    private static final Method ALLOCATED_BYTES;
+    private static final Method THREAD_ID;
+
+    static {
+        Method nanoTime = null;
+        try {
+            nanoTime = System.class.getMethod("nanoTime", null);
+        } catch (Exception e) {
+            // Java 1.4, use currentTimeMillis
+        }
+        NANO_TIME = nanoTime;
+
+        Object bean = null;
+        Method allocated = null;
+        Method threadId = null;
+        try {
+            bean = Class.forName("java.lang.management.ManagementFactory")
+                .getMethod("getThreadMXBean", null).invoke(null, null);
+            Class beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (beanClass.isInstance(bean)) {
+                allocated = beanClass.getMethod("getThreadAllocatedBytes",
+                                                new Class[] {Long.TYPE});
+                threadId = Thread.class.getMethod("getId", null);
+                Long id = (Long) threadId.invoke(Thread.currentThread(), null);
+                if (((Long) allocated.invoke(bean, new Object[] {id}))
+                    .longValue() < 0) {
+                    // measurement is disabled
+                    allocated = null;
+                }
+            }
+        } catch (Throwable t) {
+            // not available on this VM
+            allocated = null;
+        }
+        THREAD_BEAN = bean;
+        ALLOCATED_BYTES = allocated;
+        THREAD_ID = threadId;
+    }
+
+    /** Open targets and tasks, Thread to List of Frame. */
+    private final Map stacks = new HashMap();
+    /** Numbers used for threads in the trace, Thread to Integer. */
+    private final Map threadNumbers = new HashMap();
+    /** Finished frames in order of completion. */
+    private final List finished = new ArrayList();
+    /** Microseconds spent in the target or task itself by stack. */
+    private final Map selfTimes = new TreeMap();
+
+    private Thread mainThread;
+    private long buildStart = now();
+
+    /**
+     * Remembers the thread running the build.
+     * @param event ignored.
+     */
+    public synchronized void buildStarted(BuildEvent event) {
+        mainThread = Thread.currentThread();
+        buildStart = now();
+    }
+
+    /**
+     * Writes the trace and collapsed stacks files.
+     * @param event used to find the project.
+     */
+    public synchronized void buildFinished(BuildEvent event) {
+        Project project = event.getProject();
+        try {
+            writeTrace(project.resolveFile(getProperty(project, TRACE_FILE,
+                                                       DEFAULT_TRACE_FILE)));
+            writeCollapsed(project.resolveFile(getProperty(project,
+                                                           COLLAPSED_FILE,
+                                                           DEFAULT_COLLAPSED_FILE)));
+        } catch (IOException exc) {
+            throw new BuildException("Unable to write profile", exc);
+        } finally {
+            stacks.clear();
+            threadNumbers.clear();
+            finished.clear();
+            selfTimes.clear();
+        }
+    }
+
+    /**
+     * Starts timing a target.
+     * @param event contains the target.
+     */
+    public synchronized void targetStarted(BuildEvent event) {
+        start(event.getTarget(), event.getTarget().getName(), "target",
+              event.getTarget().getLocation().toString());
+    }
+
+    /**
+     * Stops timing a target.
+     * @param event contains the target.
+     */
+    public synchronized void targetFinished(BuildEvent event) {
+        finish(event.getTarget());
+    }
+
+    /**
+     * Starts timing a task.
+     * @param event contains the task.
+     */
+    public synchronized void taskStarted(BuildEvent event) {
+        Task task = event.getTask();
+        String category = "task";
+        if (task instanceof UnknownElement) {
+            UnknownElement ue = (UnknownElement) task;
+            AntTypeDefinition def = ComponentHelper
+                .getComponentHelper(task.getProject())
+                .getDefinition(ProjectHelper.genComponentName(ue.getNamespace(),
+                                                              ue.getTag()));
+            if (def != null
+                && def.getTypeClass(task.getProject()) == MacroInstance.class) {
+                category = "macro";
+            }
+        }
+        start(task, task.getTaskName(), category, task.getLocation().toString());
+    }
+
+    /**
+     * Stops timing a task.
+     * @param event contains the task.
+     */
+    public synchronized void taskFinished(BuildEvent event) {
+        finish(event.getTask());
+    }
+
+    /**
+     * Empty.
+     * @param event ignored.
+     */
+    public void messageLogged(BuildEvent event) {
+    }
+
+    private void start(Object owner, String name, String category,
+                       String location) {
+        Thread thread = Thread.currentThread();
+        List stack = (List) stacks.get(thread);
+        if (stack == null) {
+            stack = new ArrayList();
+            stacks.put(thread, stack);
+        }
+        String parent = null;
+        if (!stack.isEmpty()) {
+            parent = ((Frame) stack.get(stack.size() - 1)).path;
+        } else if (mainThread != null && thread != mainThread) {
+            // task of <parallel> or a similar container
+            List mainStack = (List) stacks.get(mainThread);
+            if (mainStack != null && !mainStack.isEmpty()) {
+                parent = ((Frame) mainStack.get(mainStack.size() - 1)).path;
+            }
+        }
+        Frame f = new Frame();
+        f.owner = owner;
+        f.name = name;
+        f.category = category;
+        f.location = location;
+        f.thread = getThreadNumber(thread);
+        f.path = (parent == null ? "" : parent + ";")
+            + name.replace(';', '_').replace('\n', '_');
+        f.allocated = getAllocatedBytes(thread);
+        f.io = readIoCounters();
+        f.start = now();
+        stack.add(f);
+    }
+
+    private void finish(Object owner) {
+        long end = now();
+        List stack = (List) stacks.get(Thread.currentThread());
+        if (stack == null) {
+            return;
+        }
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            if (((Frame) stack.get(i)).owner == owner) {
+                while (stack.size() > i) {
+                    complete((Frame) stack.remove(stack.size() - 1), end, stack);
+                }
+                return;
+            }
+        }
+    }
+
+    private void complete(Frame f, long end, List stack) {
+        f.duration = (end - f.start) / 1000;
+        if (f.allocated >= 0) {
+            long now = getAllocatedBytes(Thread.currentThread());
+            f.allocated = now < 0 ? -1 : now - f.allocated;
+        }
+        if (f.io != null) {
+            long[] io = readIoCounters();
+            if (io == null) {
+                f.io = null;
+            } else {
+                for (int j = 0; j < io.length; j++) {
+                    f.io[j] = io[j] - f.io[j];
+                }
+            }
+        }
+        f.owner = null;
+        finished.add(f);
+        long self = Math.max(0, f.duration - f.childTime);
+        Long old = (Long) selfTimes.get(f.path);
+        selfTimes.put(f.path,
+                      new Long(old == null ? self : old.longValue() + self));
+        if (!stack.isEmpty()) {
+            ((Frame) stack.get(stack.size() - 1)).childTime += f.duration;
+        }
+    }
+
+    private int getThreadNumber(Thread thread) {
+        Integer number = (Integer) threadNumbers.get(thread);
+        if (number == null) {
+            number = new Integer(threadNumbers.size() + 1);
+            threadNumbers.put(thread, number);
+        }
+        return number.intValue();
+    }
+
+    private void writeTrace(File file) throws IOException {
+        Writer w = open(file);
+        try {
+            w.write("{\"traceEvents\":[");
+            boolean first = true;
+            for (Iterator i = threadNumbers.entrySet().iterator(); i.hasNext();) {
+                Map.Entry e = (Map.Entry) i.next();
+                first = separate(w, first);
+                w.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":"
+                        + e.getValue() + ",\"args\":{\"name\":\""
+                        + escape(((Thread) e.getKey()).getName()) + "\"}}");
+            }
+            for (Iterator i = finished.iterator(); i.hasNext();) {
+                Frame f = (Frame) i.next();
+                first = separate(w, first);
+                w.write("{\"name\":\"" + escape(f.name)
+                        + "\",\"cat\":\"" + f.category
+                        + "\",\"ph\":\"X\",\"ts\":" + ((f.start - buildStart) / 1000)
+                        + ",\"dur\":" + f.duration
+                        + ",\"pid\":1,\"tid\":" + f.thread
+                        + ",\"args\":{\"location\":\"" + escape(f.location) + "\"");
+                if (f.allocated >= 0) {
+                    w.write(",\"allocatedBytes\":" + f.allocated);
+                }
+                if (f.io != null) {
+                    for (int j = 0; j < IO_NAMES.length; j++) {
+                        w.write(",\"" + IO_NAMES[j] + "\":" + f.io[j]);
+                    }
+                }
+                w.write("}}");
+            }
+            w.write("\n]}\n");
+        } finally {
+            FileUtils.close(w);
+        }
+    }
+
+    private void writeCollapsed(File file) throws IOException {
+        Writer w = open(file);
+        try {
+            for (Iterator i = selfTimes.entrySet().iterator(); i.hasNext();) {
+                Map.Entry e = (Map.Entry) i.next();
+                w.write(e.getKey() + " " + e.getValue() + "\n");
+            }
+        } finally {
+            FileUtils.close(w);
+        }
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                                                         "UTF-8"));
+    }
+
+    private static boolean separate(Writer w, boolean first) throws IOException {
+        w.write(first ? "\n" : ",\n");
+        return false;
+    }
+
+    private static String escape(String s) {
+        StringBuffer sb = new StringBuffer(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                String hex = Integer.toHexString(c);
+                sb.append("\\u0000".substring(0, 6 - hex.length())).append(hex);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String getProperty(Project p, String name, String def) {
+        String value = p.getProperty(name);
+        return value == null ? def : value;
+    }
+
+    private static long now() {
+        if (NANO_TIME != null) {
+            try {
+                return ((Long) NANO_TIME.invoke(null, null)).longValue();
+            } catch (Exception e) {
+                // fall through
+            }
+        }
+        return System.currentTimeMillis() * 1000000;
+    }
+
+    private static long getAllocatedBytes(Thread thread) {
+        if (ALLOCATED_BYTES != null) {
+            try {
+                Object id = THREAD_ID.invoke(thread, null);
+                return ((Long) ALLOCATED_BYTES.invoke(THREAD_BEAN,
+                                                      new Object[] {id}))
+                    .longValue();
+            } catch (Exception e) {
+                // fall through
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the I/O counters of the process on Linux.
+     * @return null if they are not available.
+     */
+    private static long[] readIoCounters() {
+        if (!PROC_IO.canRead()) {
+            return null;
+        }
+        long[] counters = new long[IO_FIELDS.length];
+        BufferedReader r = null;
+        try {
+            r = new BufferedReader(new FileReader(PROC_IO));
+            String line;
+            while ((line = r.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String key = line.substring(0, colon);
+                for (int i = 0; i < IO_FIELDS.length; i++) {
+                    if (IO_FIELDS[i].equals(key)) {
+                        counters[i] = Long.parseLong(line.substring(colon + 1).trim());
+                    }
+                }
+            }
+            return counters;
+        } catch (IOException e) {
+            return null;
+        } catch (NumberFormatException e) {
+            return null;
+        } finally {
+            FileUtils.close(r);
+        }
+    }
+
+    /**
+     * A target or task.
+     */
+    private static class Frame {
+        private Object owner;
+        private String name;
+        private String category;
+        private String location;
+        private String path;
+        private int thread;
+        private long start;
+        /** in microseconds */
+        private long duration;
+        /** time spent in nested targets and tasks, in microseconds */
+        private long childTime;
+        private long allocated;
+        private long[] io;
+    }
+}
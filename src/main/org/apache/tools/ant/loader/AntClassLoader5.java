@@ -30,6 +30,18 @@ import org.apache.tools.ant.types.Path;
  * implements Closeable
  */
 public class AntClassLoader5 extends AntClassLoader implements Closeable {
+
+    static {
+        // see AntClassLoader, every subclass has to register itself
+        try {
+            ClassLoader.class.getDeclaredMethod("registerAsParallelCapable",
+                                                new Class[0])
+                .invoke(null, new Object[0]);
+        } catch (Exception e) {
+            // pre Java7
+        }
+    }
+
     /**
      * Creates a classloader for the given project using the classpath given.
      *
@@ -116,6 +116,12 @@ public class Ant extends Task {
      */
     private boolean useNativeBasedir = false;
 
+    /**
+     * Listener that receives the events of the new project instead
+     * of the listeners of the calling project.
+     */
+    private BuildListener buildListener = null;
+
     /**
      * simple constructor
      */
@@ -182,6 +188,21 @@ public class Ant extends Task {
         init();
     }
 
+    /**
+     * Makes the new project send its events to the given listener
+     * rather than to the build listeners of the current project.
+     *
+     * <p>Used by &lt;subant&gt; to buffer the output of sub-builds
+     * running in parallel.</p>
+     *
+     * @param listener the listener, null to use the listeners of the
+     * current project.
+     * @since Ant 1.8.3
+     */
+    void setBuildListener(BuildListener listener) {
+        buildListener = listener;
+    }
+
     /**
      * Attaches the build listeners of the current project to the new
      * project, configures a possible logfile, transfers task and
@@ -192,9 +213,13 @@ public class Ant extends Task {
     private void initializeProject() {
         newProject.setInputHandler(getProject().getInputHandler());
 
-        Iterator iter = getBuildListeners();
-        while (iter.hasNext()) {
-            newProject.addBuildListener((BuildListener) iter.next());
+        if (buildListener != null) {
+            newProject.addBuildListener(buildListener);
+        } else {
+            Iterator iter = getBuildListeners();
+            while (iter.hasNext()) {
+                newProject.addBuildListener((BuildListener) iter.next());
+            }
         }
 
         if (output != null) {
@@ -17,7 +17,6 @@
  */
 package org.apache.tools.ant.taskdefs;
 
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -155,6 +154,11 @@ public class Checksum extends MatchingTask implements Condition {
      */
     private int readBufferSize = BUFFER_SIZE;
 
+    /**
+     * Number of threads used to calculate the checksums.
+     */
+    private int threads = 1;
+
     /**
      * Formater for the checksum file.
      */
@@ -251,6 +255,16 @@ public class Checksum extends MatchingTask implements Condition {
         this.readBufferSize = size;
     }
 
+    /**
+     * The number of threads used to calculate checksums of several
+     * files concurrently.  Defaults to 1.
+     * @param threads an <code>int</code> value
+     * @since Ant 1.8.3
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     /**
      * Select the in/output pattern via a well know format name.
      * @param e an <code>enumerated</code> value
@@ -368,25 +382,10 @@ public class Checksum extends MatchingTask implements Condition {
             throw new BuildException(
                 "ForceOverwrite cannot be used when conditions are being used.");
         }
-        messageDigest = null;
-        if (provider != null) {
-            try {
-                messageDigest = MessageDigest.getInstance(algorithm, provider);
-            } catch (NoSuchAlgorithmException noalgo) {
-                throw new BuildException(noalgo, getLocation());
-            } catch (NoSuchProviderException noprovider) {
-                throw new BuildException(noprovider, getLocation());
-            }
-        } else {
-            try {
-                messageDigest = MessageDigest.getInstance(algorithm);
-            } catch (NoSuchAlgorithmException noalgo) {
-                throw new BuildException(noalgo, getLocation());
-            }
-        }
-        if (messageDigest == null) {
-            throw new BuildException("Unable to create Message Digest", getLocation());
+        if (threads < 1) {
+            throw new BuildException("Threads must be a positive number.");
         }
+        messageDigest = createMessageDigest();
         if (fileext == null) {
             fileext = "." + algorithm;
         } else if (fileext.trim().length() == 0) {
@@ -471,31 +470,151 @@ public class Checksum extends MatchingTask implements Condition {
         return checksumFile;
     }
 
+    /**
+     * Creates a new message digest for the configured algorithm and
+     * provider.
+     */
+    private MessageDigest createMessageDigest() throws BuildException {
+        MessageDigest md = null;
+        if (provider != null) {
+            try {
+                md = MessageDigest.getInstance(algorithm, provider);
+            } catch (NoSuchAlgorithmException noalgo) {
+                throw new BuildException(noalgo, getLocation());
+            } catch (NoSuchProviderException noprovider) {
+                throw new BuildException(noprovider, getLocation());
+            }
+        } else {
+            try {
+                md = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException noalgo) {
+                throw new BuildException(noalgo, getLocation());
+            }
+        }
+        if (md == null) {
+            throw new BuildException("Unable to create Message Digest", getLocation());
+        }
+        return md;
+    }
+
+    /**
+     * Reads the file and calculates its digest.
+     */
+    private static byte[] digest(File src, MessageDigest md, byte[] buf)
+        throws IOException {
+        md.reset();
+        FileInputStream fis = new FileInputStream(src);
+        try {
+            int n;
+            while ((n = fis.read(buf, 0, buf.length)) != -1) {
+                md.update(buf, 0, n);
+            }
+        } finally {
+            FileUtils.close(fis);
+        }
+        return md.digest();
+    }
+
+    /**
+     * Calculates the digests of all files in includeFileMap.
+     * @return map from source file to digest.
+     */
+    private Map calculateDigests() throws IOException {
+        File[] files = new File[includeFileMap.size()];
+        int idx = 0;
+        for (Enumeration e = includeFileMap.keys(); e.hasMoreElements();) {
+            File src = (File) e.nextElement();
+            if (!isCondition) {
+                log("Calculating " + algorithm + " checksum for " + src, Project.MSG_VERBOSE);
+            }
+            files[idx++] = src;
+        }
+        Map digests = new HashMap();
+        int threadCount = Math.min(threads, files.length);
+        if (threadCount <= 1) {
+            byte[] buf = new byte[readBufferSize];
+            for (int i = 0; i < files.length; i++) {
+                digests.put(files[i], digest(files[i], messageDigest, buf));
+            }
+            return digests;
+        }
+
+        DigestWorker worker = new DigestWorker(files, digests);
+        Thread[] workerThreads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            workerThreads[i] = new Thread(worker, "checksum-" + i);
+            workerThreads[i].setDaemon(true);
+            workerThreads[i].start();
+        }
+        try {
+            for (int i = 0; i < threadCount; i++) {
+                workerThreads[i].join();
+            }
+        } catch (InterruptedException ie) {
+            throw new BuildException("Interrupted while calculating checksums",
+                                     ie, getLocation());
+        }
+        if (worker.failure != null) {
+            if (worker.failure instanceof IOException) {
+                throw (IOException) worker.failure;
+            }
+            throw new BuildException(worker.failure, getLocation());
+        }
+        return digests;
+    }
+
+    /**
+     * Calculates the digests of the files shared by all worker
+     * threads, each thread uses its own message digest and buffer.
+     */
+    private class DigestWorker implements Runnable {
+        private final File[] files;
+        private final Map digests;
+        private int next = 0;
+        private Throwable failure = null;
+
+        DigestWorker(File[] files, Map digests) {
+            this.files = files;
+            this.digests = digests;
+        }
+
+        public void run() {
+            try {
+                MessageDigest md = createMessageDigest();
+                byte[] buf = new byte[readBufferSize];
+                File src;
+                while ((src = nextFile()) != null) {
+                    byte[] fileDigest = digest(src, md, buf);
+                    synchronized (this) {
+                        digests.put(src, fileDigest);
+                    }
+                }
+            } catch (Throwable t) {
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = t;
+                    }
+                }
+            }
+        }
+
+        private synchronized File nextFile() {
+            return failure != null || next >= files.length
+                ? null : files[next++];
+        }
+    }
+
     /**
      * Generate checksum(s) using the message digest created earlier.
      */
     private boolean generateChecksums() throws BuildException {
         boolean checksumMatches = true;
-        FileInputStream fis = null;
         FileOutputStream fos = null;
-        byte[] buf = new byte[readBufferSize];
         try {
+            Map digests = calculateDigests();
             for (Enumeration e = includeFileMap.keys(); e.hasMoreElements();) {
-                messageDigest.reset();
                 File src = (File) e.nextElement();
-                if (!isCondition) {
-                    log("Calculating " + algorithm + " checksum for " + src, Project.MSG_VERBOSE);
-                }
-                fis = new FileInputStream(src);
-                DigestInputStream dis = new DigestInputStream(fis,
-                                                              messageDigest);
-                while (dis.read(buf, 0, readBufferSize) != -1) {
-                    // Empty statement
-                }
-                dis.close();
-                fis.close();
-                fis = null;
-                byte[] fileDigest = messageDigest.digest ();
+                byte[] fileDigest = (byte[]) digests.get(src);
                 if (totalproperty != null) {
                     allDigests.put(src, fileDigest);
                 }
@@ -584,7 +703,6 @@ public class Checksum extends MatchingTask implements Condition {
         } catch (Exception e) {
             throw new BuildException(e, getLocation());
         } finally {
-            FileUtils.close(fis);
             FileUtils.close(fos);
         }
         return checksumMatches;
@@ -847,6 +847,7 @@ public class Copy extends Task {
                 + " file" + (fileCopyMap.size() == 1 ? "" : "s")
                 + " to " + destDir.getAbsolutePath());
 
+            FilterSetCollection executionFilters = createExecutionFilters();
             Enumeration e = fileCopyMap.keys();
             while (e.hasMoreElements()) {
                 String fromFile = (String) e.nextElement();
@@ -862,17 +863,6 @@ public class Copy extends Task {
                     try {
                         log("Copying " + fromFile + " to " + toFile, verbosity);
 
-                        FilterSetCollection executionFilters =
-                            new FilterSetCollection();
-                        if (filtering) {
-                            executionFilters
-                                .addFilterSet(getProject().getGlobalFilterSet());
-                        }
-                        for (Enumeration filterEnum = filterSets.elements();
-                            filterEnum.hasMoreElements();) {
-                            executionFilters
-                                .addFilterSet((FilterSet) filterEnum.nextElement());
-                        }
                         fileUtils.copyFile(new File(fromFile), new File(toFile),
                                            executionFilters,
                                            filterChains, forceOverwrite,
@@ -924,6 +914,28 @@ public class Copy extends Task {
         }
     }
 
+    /**
+     * Collects the global filterset (if filtering is enabled) and the
+     * nested filtersets.
+     *
+     * <p>The collection is shared by all files copied by a single
+     * execution so the work it does upfront is only done once.</p>
+     *
+     * @return the filters to apply when copying.
+     * @since Ant 1.8.3
+     */
+    protected FilterSetCollection createExecutionFilters() {
+        FilterSetCollection executionFilters = new FilterSetCollection();
+        if (filtering) {
+            executionFilters.addFilterSet(getProject().getGlobalFilterSet());
+        }
+        for (Enumeration filterEnum = filterSets.elements();
+             filterEnum.hasMoreElements();) {
+            executionFilters.addFilterSet((FilterSet) filterEnum.nextElement());
+        }
+        return executionFilters;
+    }
+
     /**
      * Actually does the resource copies.
      * This is a good method for subclasses to override.
@@ -936,6 +948,7 @@ public class Copy extends Task {
                 + " resource" + (map.size() == 1 ? "" : "s")
                 + " to " + destDir.getAbsolutePath());
 
+            FilterSetCollection executionFilters = createExecutionFilters();
             Iterator iter = map.keySet().iterator();
             while (iter.hasNext()) {
                 Resource fromResource = (Resource) iter.next();
@@ -948,17 +961,6 @@ public class Copy extends Task {
                         log("Copying " + fromResource + " to " + toFile,
                             verbosity);
 
-                        FilterSetCollection executionFilters =
-                            new FilterSetCollection();
-                        if (filtering) {
-                            executionFilters
-                                .addFilterSet(getProject().getGlobalFilterSet());
-                        }
-                        for (Enumeration filterEnum = filterSets.elements();
-                            filterEnum.hasMoreElements();) {
-                            executionFilters
-                                .addFilterSet((FilterSet) filterEnum.nextElement());
-                        }
                         ResourceUtils.copyResource(fromResource,
                                                    new FileResource(destDir,
                                                                     toFile),
@@ -599,10 +599,6 @@ public class ExecTask extends Task {
         if (redirectorElement != null) {
             redirectorElement.configure(redirector);
         }
-        Execute exe = new Execute(createHandler(), createWatchdog());
-        exe.setAntRun(getProject());
-        exe.setWorkingDirectory(dir);
-        exe.setVMLauncher(vmLauncher);
         String[] environment = env.getVariables();
         if (environment != null) {
             for (int i = 0; i < environment.length; i++) {
@@ -610,8 +606,27 @@ public class ExecTask extends Task {
                     Project.MSG_VERBOSE);
             }
         }
+        return prepareExec(createHandler());
+    }
+
+    /**
+     * Create an Execute instance configured like the one returned by
+     * {@link #prepareExec() prepareExec} that uses the given stream
+     * handler and a watchdog of its own.
+     *
+     * <p>Must only be invoked after prepareExec().</p>
+     *
+     * @param streamHandler the stream handler to use.
+     * @return an instance of the Execute class.
+     * @since Ant 1.8.3
+     */
+    /*package*/ Execute prepareExec(ExecuteStreamHandler streamHandler) {
+        Execute exe = new Execute(streamHandler, createWatchdog());
+        exe.setAntRun(getProject());
+        exe.setWorkingDirectory(dir);
+        exe.setVMLauncher(vmLauncher);
         exe.setNewenvironment(newEnvironment);
-        exe.setEnvironment(environment);
+        exe.setEnvironment(env.getVariables());
         return exe;
     }
 
@@ -625,35 +640,64 @@ public class ExecTask extends Task {
      * streams of the process.
      */
     protected final void runExecute(Execute exe) throws IOException {
-        int returnCode = -1; // assume the worst
-
         if (!spawn) {
-            returnCode = exe.execute();
-
-            //test for and handle a forced process death
-            if (exe.killedProcess()) {
-                String msg = "Timeout: killed the sub-process";
-                if (failOnError) {
-                    throw new BuildException(msg);
-                } else {
-                    log(msg, Project.MSG_WARN);
-                }
-            }
-            maybeSetResultPropertyValue(returnCode);
-            redirector.complete();
-            if (Execute.isFailure(returnCode)) {
-                if (failOnError) {
-                    throw new BuildException(getTaskType() + " returned: "
-                        + returnCode, getLocation());
-                } else {
-                    log("Result: " + returnCode, Project.MSG_ERR);
-                }
-            }
+            int returnCode = exe.execute();
+            processResult(returnCode, exe.killedProcess());
         } else {
             exe.spawn();
         }
     }
 
+    /**
+     * Handles the result of a process that has finished like {@link
+     * #runExecute runExecute} does.
+     *
+     * @param returnCode the exit code of the process.
+     * @param killed whether the process has been killed by the watchdog.
+     * @throws IOException if the output properties cannot be set.
+     * @since Ant 1.8.3
+     */
+    /*package*/ final void processResult(int returnCode, boolean killed)
+        throws IOException {
+        //test for and handle a forced process death
+        if (killed) {
+            String msg = "Timeout: killed the sub-process";
+            if (failOnError) {
+                throw new BuildException(msg);
+            } else {
+                log(msg, Project.MSG_WARN);
+            }
+        }
+        maybeSetResultPropertyValue(returnCode);
+        redirector.complete();
+        if (Execute.isFailure(returnCode)) {
+            if (failOnError) {
+                throw new BuildException(getTaskType() + " returned: "
+                    + returnCode, getLocation());
+            } else {
+                log("Result: " + returnCode, Project.MSG_ERR);
+            }
+        }
+    }
+
+    /**
+     * Whether the process is spawned.
+     * @return the value of the spawn attribute.
+     * @since Ant 1.8.3
+     */
+    /*package*/ boolean isSpawn() {
+        return spawn;
+    }
+
+    /**
+     * Whether the process reads its input from a file or string.
+     * @return true if input or inputstring has been set.
+     * @since Ant 1.8.3
+     */
+    /*package*/ boolean hasInput() {
+        return input != null || inputString != null;
+    }
+
     /**
      * Run the command using the given Execute instance. This may be
      * overridden by subclasses.
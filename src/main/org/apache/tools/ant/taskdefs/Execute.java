@@ -26,6 +26,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -41,6 +44,7 @@ import org.apache.tools.ant.taskdefs.condition.Os;
 import org.apache.tools.ant.types.Commandline;
 import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.ant.util.JavaEnvUtils;
+import org.apache.tools.ant.util.Metrics;
 import org.apache.tools.ant.util.StringUtils;
 
 /**
@@ -60,6 +64,14 @@ public class Execute {
 
     private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
 
+    private static final Metrics.Counter PROCESSES = Metrics.getMetrics()
+        .getCounter("ant_execute_processes_total",
+                    "Processes started by Execute.");
+    private static final Metrics.Histogram PROCESS_TIME = Metrics.getMetrics()
+        .getHistogram("ant_execute_process_nanoseconds",
+                      "Time from starting a process to its end, for processes"
+                      + " Execute waits for.");
+
     private String[] cmdl = null;
     private String[] env = null;
     private int exitValue = INVALID;
@@ -87,9 +99,17 @@ public class Execute {
      * Builds a command launcher for the OS and JVM we are running under.
      */
     static {
-        // Try using a JDK 1.3 launcher
+        // Try using a JDK 1.5 launcher, then a JDK 1.3 launcher
+        if (JavaEnvUtils.isAtLeastJavaVersion(JavaEnvUtils.JAVA_1_5)
+            && !Os.isFamily("os/2") && !Os.isFamily("openvms")) {
+            try {
+                vmLauncher = new ProcessBuilderCommandLauncher();
+            } catch (NoSuchMethodException exc) {
+                // Ignore and keep trying
+            }
+        }
         try {
-            if (!Os.isFamily("os/2")) {
+            if (vmLauncher == null && !Os.isFamily("os/2")) {
                 vmLauncher = new Java13CommandLauncher();
             }
         } catch (NoSuchMethodException exc) {
@@ -478,6 +498,7 @@ public class Execute {
         }
         CommandLauncher launcher
             = ((useVM && vmLauncher != null) ? vmLauncher : shellLauncher);
+        PROCESSES.increment();
         return launcher.exec(project, command, env, dir);
     }
 
@@ -492,9 +513,8 @@ public class Execute {
         if (workingDirectory != null && !workingDirectory.exists()) {
             throw new BuildException(workingDirectory + " doesn't exist.");
         }
-        final Process process = launch(project, getCommandline(),
-                                       getEnvironment(), workingDirectory,
-                                       useVMLauncher);
+        long start = Metrics.start();
+        final Process process = launch();
         try {
             streamHandler.setProcessInputStream(process.getOutputStream());
             streamHandler.setProcessOutputStream(process.getInputStream());
@@ -520,6 +540,7 @@ public class Execute {
             }
             streamHandler.stop();
             closeStreams(process);
+            PROCESS_TIME.recordSince(start);
 
             if (watchdog != null) {
                 watchdog.checkException();
@@ -549,9 +570,7 @@ public class Execute {
         if (workingDirectory != null && !workingDirectory.exists()) {
             throw new BuildException(workingDirectory + " doesn't exist.");
         }
-        final Process process = launch(project, getCommandline(),
-                                       getEnvironment(), workingDirectory,
-                                       useVMLauncher);
+        final Process process = launch();
         if (Os.isFamily("windows")) {
             try {
                 Thread.sleep(ONE_SECOND);
@@ -576,6 +595,25 @@ public class Execute {
                     Project.MSG_VERBOSE);
     }
 
+    /**
+     * Creates the process for this execution.
+     *
+     * <p>If the process is started by ProcessBuilder the variables
+     * set for this execution are merged into the builder's copy of
+     * the environment rather than patching a full copy of the
+     * environment first.</p>
+     */
+    private Process launch() throws IOException {
+        if (useVMLauncher && vmLauncher instanceof ProcessBuilderCommandLauncher) {
+            PROCESSES.increment();
+            return ((ProcessBuilderCommandLauncher) vmLauncher)
+                .exec(project, getCommandline(), env, newEnvironment,
+                      workingDirectory);
+        }
+        return launch(project, getCommandline(), getEnvironment(),
+                      workingDirectory, useVMLauncher);
+    }
+
     /**
      * Wait for a given process.
      *
@@ -869,6 +907,122 @@ public class Execute {
         }
     }
 
+    /**
+     * A command launcher for JDK/JRE 1.5 (and higher).  Uses
+     * java.lang.ProcessBuilder directly, which is looked up via
+     * reflection as Ant still compiles on JDK 1.4.
+     */
+    private static class ProcessBuilderCommandLauncher
+        extends Java13CommandLauncher {
+
+        private final Constructor newBuilder;
+        private final Method directory;
+        private final Method environment;
+        private final Method start;
+
+        public ProcessBuilderCommandLauncher() throws NoSuchMethodException {
+            Class builder;
+            try {
+                builder = Class.forName("java.lang.ProcessBuilder");
+            } catch (ClassNotFoundException e) {
+                throw new NoSuchMethodException(e.getMessage());
+            }
+            newBuilder = builder.getConstructor(new Class[] {String[].class});
+            directory = builder.getMethod("directory",
+                                          new Class[] {File.class});
+            environment = builder.getMethod("environment", new Class[0]);
+            start = builder.getMethod("start", new Class[0]);
+        }
+
+        /**
+         * Launches the given command in a new process.
+         * @param project the Ant project.
+         * @param cmd the command line to execute as an array of strings.
+         * @param env the environment to set as an array of strings.
+         * @return the created Process.
+         * @throws IOException forwarded from ProcessBuilder#start.
+         */
+        public Process exec(Project project, String[] cmd, String[] env)
+            throws IOException {
+            return exec(project, cmd, env, null);
+        }
+
+        /**
+         * Launches the given command in a new process, in the given working
+         * directory.
+         * @param project the Ant project.
+         * @param cmd the command line to execute as an array of strings.
+         * @param env the environment to set as an array of strings.
+         * @param workingDir the working directory where the command
+         * should run.
+         * @return the created Process.
+         * @throws IOException forwarded from ProcessBuilder#start.
+         */
+        public Process exec(Project project, String[] cmd, String[] env,
+                            File workingDir) throws IOException {
+            return exec(project, cmd, env, true, workingDir);
+        }
+
+        /**
+         * Launches the given command in a new process, in the given working
+         * directory.
+         * @param project the Ant project.
+         * @param cmd the command line to execute as an array of strings.
+         * @param env the variables to set as an array of strings, may
+         * be null.
+         * @param replace whether env replaces the environment of the
+         * current process rather than adding to it.
+         * @param workingDir the working directory where the command
+         * should run.
+         * @return the created Process.
+         * @throws IOException forwarded from ProcessBuilder#start.
+         */
+        Process exec(Project project, String[] cmd, String[] env,
+                     boolean replace, File workingDir) throws IOException {
+            if (project != null) {
+                project.log("Execute:ProcessBuilderCommandLauncher: "
+                    + Commandline.describeCommand(cmd), Project.MSG_DEBUG);
+            }
+            try {
+                Object builder = newBuilder.newInstance(new Object[] {cmd});
+                if (workingDir != null) {
+                    directory.invoke(builder, new Object[] {workingDir});
+                }
+                if (env != null) {
+                    Map vars = (Map) environment.invoke(builder, new Object[0]);
+                    if (replace) {
+                        vars.clear();
+                    }
+                    for (int i = 0; i < env.length; i++) {
+                        // like Runtime#exec, allow for names
+                        // starting with = on Windows
+                        int eq = env[i].indexOf('=', 1);
+                        if (eq != -1) {
+                            vars.put(env[i].substring(0, eq),
+                                     env[i].substring(eq + 1));
+                        }
+                    }
+                }
+                return (Process) start.invoke(builder, new Object[0]);
+            } catch (InvocationTargetException e) {
+                Throwable t = e.getTargetException();
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                }
+                if (t instanceof Error) {
+                    throw (Error) t;
+                }
+                throw new BuildException("Unable to execute command", t);
+            } catch (Exception exc) {
+                // IllegalAccess, Instantiation
+                throw new BuildException("Unable to execute command", exc);
+            }
+        }
+    }
+
     /**
      * A command launcher that proxies another command launcher.
      *
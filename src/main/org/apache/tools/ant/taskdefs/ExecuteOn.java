@@ -18,8 +18,10 @@
 
 package org.apache.tools.ant.taskdefs;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Vector;
@@ -51,6 +53,12 @@ import org.apache.tools.ant.util.SourceFileScanner;
  */
 public class ExecuteOn extends ExecTask {
 
+    /**
+     * How many commands per thread may run ahead of the next command
+     * whose result is handled.
+     */
+    private static final int LOOKAHEAD_PER_THREAD = 4;
+
     // CheckStyle:VisibilityModifier OFF - bc
 
     // filesets has been protected so we need to keep that even after
@@ -78,6 +86,10 @@ public class ExecuteOn extends ExecTask {
     private boolean verbose = false;
     private boolean ignoreMissing = true;
     private boolean force = false;
+    private int threads = 1;
+
+    /** command lines waiting to be run concurrently */
+    private Vector pending = null;
 
     /**
      * Has &lt;srcfile&gt; been specified before &lt;targetfile&gt;
@@ -240,6 +252,27 @@ public class ExecuteOn extends ExecTask {
         force = b;
     }
 
+    /**
+     * Set the number of commands that may run at the same time.
+     *
+     * <p>Each source file - or each batch of source files if
+     * parallel is true and maxparallel is set - is passed to a
+     * command of its own.  The output of each command is collected
+     * and passed on once all commands started before it have been
+     * handled, so it shows up in the same order as if the commands
+     * ran one after another.</p>
+     *
+     * <p>Defaults to 1.  Ignored if spawn, input, inputstring or a
+     * nested redirector is used.</p>
+     *
+     * @param threads the maximum number of commands running at the
+     * same time.
+     * @since Ant 1.8.3
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     /**
      * Create a placeholder indicating where on the command line
      * the name of the source file should be inserted.
@@ -318,6 +351,10 @@ public class ExecuteOn extends ExecTask {
         if (mapperElement != null) {
             mapper = mapperElement.getImplementation();
         }
+        if (threads < 1) {
+            throw new BuildException("threads must be a positive number",
+                                     getLocation());
+        }
     }
 
     /**
@@ -349,6 +386,15 @@ public class ExecuteOn extends ExecTask {
         int totalFiles = 0;
         int totalDirs = 0;
         boolean haveExecuted = false;
+        pending = null;
+        if (threads > 1) {
+            if (isSpawn() || hasInput() || redirectorElement != null) {
+                log("Ignoring threads as the commands use spawn, input or"
+                    + " a nested redirector.", Project.MSG_VERBOSE);
+            } else {
+                pending = new Vector();
+            }
+        }
         try {
             Vector fileNames = new Vector();
             Vector baseDirs = new Vector();
@@ -396,6 +442,11 @@ public class ExecuteOn extends ExecTask {
                         String[] command = getCommandline(s[j], base);
                         log(Commandline.describeCommand(command),
                             Project.MSG_VERBOSE);
+                        if (pending != null) {
+                            pending.addElement(command);
+                            haveExecuted = true;
+                            continue;
+                        }
                         exe.setCommandline(command);
 
                         if (redirectorElement != null) {
@@ -457,19 +508,24 @@ public class ExecuteOn extends ExecTask {
                         String[] command = getCommandline(name, base);
                         log(Commandline.describeCommand(command),
                             Project.MSG_VERBOSE);
-                        exe.setCommandline(command);
-
-                        if (redirectorElement != null) {
-                            setupRedirector();
-                            redirectorElement.configure(redirector, name);
-                        }
-                        if (redirectorElement != null || haveExecuted) {
-                            // need to reset the stream handler to restart
-                            // reading of pipes;
-                            // go ahead and do it always w/ nested redirectors
-                            exe.setStreamHandler(redirector.createHandler());
+                        if (pending != null) {
+                            pending.addElement(command);
+                        } else {
+                            exe.setCommandline(command);
+
+                            if (redirectorElement != null) {
+                                setupRedirector();
+                                redirectorElement.configure(redirector, name);
+                            }
+                            if (redirectorElement != null || haveExecuted) {
+                                // need to reset the stream handler to restart
+                                // reading of pipes;
+                                // go ahead and do it always w/ nested
+                                // redirectors
+                                exe.setStreamHandler(redirector.createHandler());
+                            }
+                            runExecute(exe);
                         }
-                        runExecute(exe);
                         haveExecuted = true;
                         fileNames.removeAllElements();
                         baseDirs.removeAllElements();
@@ -480,6 +536,9 @@ public class ExecuteOn extends ExecTask {
                 runParallel(exe, fileNames, baseDirs);
                 haveExecuted = true;
             }
+            if (pending != null) {
+                runConcurrently();
+            }
             if (haveExecuted) {
                 log("Applied " + cmdl.getExecutable() + " to "
                     + totalFiles + " file"
@@ -491,6 +550,7 @@ public class ExecuteOn extends ExecTask {
         } catch (IOException e) {
             throw new BuildException("Execute failed: " + e, e, getLocation());
         } finally {
+            pending = null;
             // close the output file if required
             logFlush();
             redirector.setAppendProperties(false);
@@ -708,6 +768,10 @@ public class ExecuteOn extends ExecTask {
             || s.length == 0 /* this is skipEmpty == false */) {
             String[] command = getCommandline(s, b);
             log(Commandline.describeCommand(command), Project.MSG_VERBOSE);
+            if (pending != null) {
+                pending.addElement(command);
+                return;
+            }
             exe.setCommandline(command);
             if (redirectorElement != null) {
                 setupRedirector();
@@ -726,18 +790,22 @@ public class ExecuteOn extends ExecTask {
                 System.arraycopy(b, currentOffset, cb, 0, currentAmount);
                 String[] command = getCommandline(cs, cb);
                 log(Commandline.describeCommand(command), Project.MSG_VERBOSE);
-                exe.setCommandline(command);
-                if (redirectorElement != null) {
-                    setupRedirector();
-                    redirectorElement.configure(redirector, null);
-                }
-                if (redirectorElement != null || currentOffset > 0) {
-                    // need to reset the stream handler to restart
-                    // reading of pipes;
-                    // go ahead and do it always w/ nested redirectors
-                    exe.setStreamHandler(redirector.createHandler());
+                if (pending != null) {
+                    pending.addElement(command);
+                } else {
+                    exe.setCommandline(command);
+                    if (redirectorElement != null) {
+                        setupRedirector();
+                        redirectorElement.configure(redirector, null);
+                    }
+                    if (redirectorElement != null || currentOffset > 0) {
+                        // need to reset the stream handler to restart
+                        // reading of pipes;
+                        // go ahead and do it always w/ nested redirectors
+                        exe.setStreamHandler(redirector.createHandler());
+                    }
+                    runExecute(exe);
                 }
-                runExecute(exe);
 
                 stillToDo -= currentAmount;
                 currentOffset += currentAmount;
@@ -745,6 +813,195 @@ public class ExecuteOn extends ExecTask {
         }
     }
 
+    /**
+     * Runs the collected command lines using up to threads threads
+     * and handles their results in the order they have been
+     * collected.
+     */
+    private void runConcurrently() throws IOException {
+        Invocation[] invocations = new Invocation[pending.size()];
+        for (int i = 0; i < invocations.length; i++) {
+            invocations[i] = new Invocation((String[]) pending.elementAt(i));
+        }
+        pending = null;
+        Scheduler scheduler =
+            new Scheduler(invocations, threads * LOOKAHEAD_PER_THREAD);
+        int workers = Math.min(threads, invocations.length);
+        for (int i = 0; i < workers; i++) {
+            Thread t = new Thread(scheduler, getTaskName() + "-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        try {
+            for (int i = 0; i < invocations.length; i++) {
+                if (i > 0) {
+                    // the streams of the first command have been
+                    // created by prepareExec
+                    redirector.createStreams();
+                }
+                invocations[i].complete();
+                // release the output of the command early
+                invocations[i] = null;
+                scheduler.completed(i + 1);
+            }
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    /**
+     * Hands out the collected commands to the threads running them.
+     *
+     * <p>Commands are only started if they are no more than lookahead
+     * commands ahead of the next one to be completed, so the output
+     * kept in memory doesn't grow with the number of commands.</p>
+     */
+    private static class Scheduler implements Runnable {
+        private final Invocation[] invocations;
+        private final int lookahead;
+        private int next = 0;
+        private int completed = 0;
+        private int running = 0;
+        private boolean stopped = false;
+
+        Scheduler(Invocation[] invocations, int lookahead) {
+            this.invocations = invocations;
+            this.lookahead = lookahead;
+        }
+
+        public void run() {
+            Invocation i;
+            while ((i = take()) != null) {
+                try {
+                    i.run();
+                } finally {
+                    done();
+                }
+            }
+        }
+
+        private synchronized Invocation take() {
+            while (!stopped && next < invocations.length
+                   && next >= completed + lookahead) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // ignore, check again
+                }
+            }
+            if (stopped || next >= invocations.length) {
+                return null;
+            }
+            running++;
+            return invocations[next++];
+        }
+
+        /**
+         * Records that the results of the given number of commands
+         * have been handled.
+         */
+        synchronized void completed(int count) {
+            completed = count;
+            notifyAll();
+        }
+
+        private synchronized void done() {
+            running--;
+            notifyAll();
+        }
+
+        /**
+         * Doesn't start any further commands and waits for the
+         * running ones.
+         */
+        synchronized void stop() {
+            stopped = true;
+            notifyAll();
+            while (running > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // ignore, check again
+                }
+            }
+        }
+    }
+
+    /**
+     * A single command run by the Scheduler, its output is kept in
+     * memory until it is handled.
+     */
+    private class Invocation implements Runnable {
+        private final String[] command;
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        // guarded by this
+        private boolean finished = false;
+        private int returnCode = -1;
+        private boolean killed = false;
+        private Throwable failure = null;
+
+        Invocation(String[] command) {
+            this.command = command;
+        }
+
+        public void run() {
+            try {
+                Execute exe = prepareExec(new PumpStreamHandler(out, err));
+                exe.setCommandline(command);
+                int rc = exe.execute();
+                synchronized (this) {
+                    returnCode = rc;
+                    killed = exe.killedProcess();
+                }
+            } catch (Throwable t) {
+                synchronized (this) {
+                    failure = t;
+                }
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits for the command, passes its output to the redirector
+         * and handles its result.
+         */
+        synchronized void complete() throws IOException {
+            while (!finished) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // ignore, check again
+                }
+            }
+            copy(out, redirector.getOutputStream());
+            copy(err, redirector.getErrorStream());
+            if (failure instanceof IOException) {
+                redirector.complete();
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                redirector.complete();
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                redirector.complete();
+                throw new BuildException(failure, getLocation());
+            }
+            processResult(returnCode, killed);
+        }
+
+        private void copy(ByteArrayOutputStream from, OutputStream to)
+            throws IOException {
+            if (from.size() > 0) {
+                from.writeTo(to);
+                to.flush();
+            }
+        }
+    }
+
     /**
      * Inserts target file names (which are already absolute paths)
      * into the list of arguments, taking prefix and postfix into
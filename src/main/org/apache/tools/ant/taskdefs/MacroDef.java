@@ -50,6 +50,7 @@ public class MacroDef extends AntlibDefinition  {
     private String     textName   = null;
     private Text       text       = null;
     private boolean    hasImplicitElement = false;
+    private MacroInstance.Template template;
 
     /**
      * Name of the definition
@@ -196,6 +197,18 @@ public class MacroDef extends AntlibDefinition  {
         return ret;
     }
 
+    /**
+     * The parsed body of the macro, created on first use.
+     * @return the template all instances of this macro copy.
+     * @since Ant 1.8.3
+     */
+    synchronized MacroInstance.Template getTemplate() {
+        if (template == null) {
+            template = new MacroInstance.Template(getNestedTask(), elements);
+        }
+        return template;
+    }
+
     /**
      * Gets this macro's attribute (and define?) list.
      *
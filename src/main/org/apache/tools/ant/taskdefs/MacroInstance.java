@@ -55,6 +55,7 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
     private String    text = null;
     private String    implicitTag =     null;
     private List      unknownElements = new ArrayList();
+    private Target    owningTarget;
 
     /**
      * Called from MacroDef.MyAntTypeDefinition#create()
@@ -95,14 +96,12 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
 
     private Map getNsElements() {
         if (nsElements == null) {
-            nsElements = new HashMap();
-            for (Iterator i = macroDef.getElements().entrySet().iterator();
-                 i.hasNext();) {
-                Map.Entry entry = (Map.Entry) i.next();
-                nsElements.put((String) entry.getKey(),
-                               entry.getValue());
-                MacroDef.TemplateElement te = (MacroDef.TemplateElement)
-                    entry.getValue();
+            // the definition's map doesn't change once the macrodef
+            // has been executed, no need to copy it
+            nsElements = macroDef.getElements();
+            for (Iterator i = nsElements.values().iterator(); i.hasNext();) {
+                MacroDef.TemplateElement te =
+                    (MacroDef.TemplateElement) i.next();
                 if (te.isImplicit()) {
                     implicitTag = te.getName();
                 }
@@ -166,9 +165,22 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
     private static final int STATE_EXPECT_NAME    = 2;
 
     private String macroSubs(String s, Map macroMapping) {
-        if (s == null) {
-            return null;
+        return expand(compile(s), macroMapping);
+    }
+
+    /**
+     * Splits a string into literal text and @{attribute} references.
+     *
+     * @param s the string to parse, may be null.
+     * @return null if s is null, a String if s doesn't contain any
+     *         attribute references and an array of Strings and
+     *         AttributeRefs otherwise.
+     */
+    private static Object compile(String s) {
+        if (s == null || s.indexOf('@') < 0) {
+            return s;
         }
+        List parts = null;
         StringBuffer ret = new StringBuffer();
         StringBuffer macroName = null;
 
@@ -199,15 +211,15 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
                 case STATE_EXPECT_NAME:
                     if (ch == '}') {
                         state = STATE_NORMAL;
-                        String name = macroName.toString().toLowerCase(Locale.ENGLISH);
-                        String value = (String) macroMapping.get(name);
-                        if (value == null) {
-                            ret.append("@{");
-                            ret.append(name);
-                            ret.append("}");
-                        } else {
-                            ret.append(value);
+                        if (parts == null) {
+                            parts = new ArrayList();
                         }
+                        if (ret.length() > 0) {
+                            parts.add(ret.toString());
+                            ret.setLength(0);
+                        }
+                        parts.add(new AttributeRef(
+                            macroName.toString().toLowerCase(Locale.ENGLISH)));
                         macroName = null;
                     } else {
                         macroName.append(ch);
@@ -230,10 +242,53 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
             default:
                 break;
         }
+        if (parts == null) {
+            return ret.toString();
+        }
+        if (ret.length() > 0) {
+            parts.add(ret.toString());
+        }
+        return parts.toArray();
+    }
 
+    /**
+     * Substitutes the attribute values into a string created by
+     * {@link #compile compile}.
+     */
+    private static String expand(Object compiled, Map macroMapping) {
+        if (!(compiled instanceof Object[])) {
+            return (String) compiled;
+        }
+        Object[] parts = (Object[]) compiled;
+        StringBuffer ret = new StringBuffer();
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] instanceof AttributeRef) {
+                String name = ((AttributeRef) parts[i]).name;
+                String value = (String) macroMapping.get(name);
+                if (value == null) {
+                    ret.append("@{");
+                    ret.append(name);
+                    ret.append("}");
+                } else {
+                    ret.append(value);
+                }
+            } else {
+                ret.append((String) parts[i]);
+            }
+        }
         return ret.toString();
     }
 
+    /**
+     * A reference to an attribute inside a string.
+     */
+    private static final class AttributeRef {
+        private final String name;
+        private AttributeRef(String name) {
+            this.name = name;
+        }
+    }
+
     /**
      * Set the text contents for the macro.
      * @param text the text to be added to the macro.
@@ -243,7 +298,7 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
         this.text = text;
     }
 
-    private UnknownElement copy(UnknownElement ue, boolean nested) {
+    private UnknownElement newElement(UnknownElement ue) {
         UnknownElement ret = new UnknownElement(ue.getTag());
         ret.setNamespace(ue.getNamespace());
         ret.setProject(getProject());
@@ -252,38 +307,27 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
         ret.setTaskName(ue.getTaskName());
         ret.setLocation(
             macroDef.getBackTrace() ? ue.getLocation() : getLocation());
-        if (getOwningTarget() == null) {
-            Target t = new Target();
-            t.setProject(getProject());
-            ret.setOwningTarget(t);
-        } else {
-            ret.setOwningTarget(getOwningTarget());
-        }
+        ret.setOwningTarget(owningTarget);
+        return ret;
+    }
+
+    /**
+     * Copies an element of the macro body.
+     */
+    private UnknownElement copy(Template t) {
+        UnknownElement ret = newElement(t.ue);
         RuntimeConfigurable rc = new RuntimeConfigurable(
-            ret, ue.getTaskName());
-        rc.setPolyType(ue.getWrapper().getPolyType());
-        Map m = ue.getWrapper().getAttributeMap();
-        for (Iterator i = m.entrySet().iterator(); i.hasNext();) {
-            Map.Entry entry = (Map.Entry) i.next();
-            rc.setAttribute(
-                (String) entry.getKey(),
-                macroSubs((String) entry.getValue(), localAttributes));
+            ret, t.ue.getTaskName());
+        rc.setPolyType(t.polyType);
+        for (int i = 0; i < t.names.length; i++) {
+            rc.setAttribute(t.names[i], expand(t.values[i], localAttributes));
         }
-        rc.addText(macroSubs(ue.getWrapper().getText().toString(),
-                             localAttributes));
+        rc.addText(expand(t.text, localAttributes));
 
-        Enumeration e = ue.getWrapper().getChildren();
-        while (e.hasMoreElements()) {
-            RuntimeConfigurable r = (RuntimeConfigurable) e.nextElement();
-            UnknownElement unknownElement = (UnknownElement) r.getProxy();
-            String tag = unknownElement.getTaskType();
-            if (tag != null) {
-                tag = tag.toLowerCase(Locale.ENGLISH);
-            }
-            MacroDef.TemplateElement templateElement =
-                (MacroDef.TemplateElement) getNsElements().get(tag);
-            if (templateElement == null || nested) {
-                UnknownElement child = copy(unknownElement, nested);
+        for (int j = 0; j < t.children.length; j++) {
+            MacroDef.TemplateElement templateElement = t.slots[j];
+            if (templateElement == null) {
+                UnknownElement child = copy(t.children[j]);
                 rc.addChild(child.getWrapper());
                 ret.addChild(child);
             } else if (templateElement.isImplicit()) {
@@ -294,14 +338,14 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
                 }
                 for (Iterator i = unknownElements.iterator();
                      i.hasNext();) {
-                    UnknownElement child
-                        = copy((UnknownElement) i.next(), true);
+                    UnknownElement child = copy((UnknownElement) i.next());
                     rc.addChild(child.getWrapper());
                     ret.addChild(child);
                 }
             } else {
                 UnknownElement presentElement =
-                    (UnknownElement) presentElements.get(tag);
+                    (UnknownElement) presentElements.get(
+                        templateElement.getName());
                 if (presentElement == null) {
                     if (!templateElement.isOptional()) {
                         throw new BuildException(
@@ -320,7 +364,7 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
                     for (Iterator i = list.iterator();
                          i.hasNext();) {
                         UnknownElement child
-                            = copy((UnknownElement) i.next(), true);
+                            = copy((UnknownElement) i.next());
                         rc.addChild(child.getWrapper());
                         ret.addChild(child);
                     }
@@ -330,6 +374,93 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
         return ret;
     }
 
+    /**
+     * Copies an element passed in by the caller of the macro.
+     */
+    private UnknownElement copy(UnknownElement ue) {
+        UnknownElement ret = newElement(ue);
+        RuntimeConfigurable rc = new RuntimeConfigurable(
+            ret, ue.getTaskName());
+        rc.setPolyType(ue.getWrapper().getPolyType());
+        Map m = ue.getWrapper().getAttributeMap();
+        for (Iterator i = m.entrySet().iterator(); i.hasNext();) {
+            Map.Entry entry = (Map.Entry) i.next();
+            rc.setAttribute(
+                (String) entry.getKey(),
+                macroSubs((String) entry.getValue(), localAttributes));
+        }
+        rc.addText(macroSubs(ue.getWrapper().getText().toString(),
+                             localAttributes));
+
+        Enumeration e = ue.getWrapper().getChildren();
+        while (e.hasMoreElements()) {
+            RuntimeConfigurable r = (RuntimeConfigurable) e.nextElement();
+            UnknownElement child = copy((UnknownElement) r.getProxy());
+            rc.addChild(child.getWrapper());
+            ret.addChild(child);
+        }
+        return ret;
+    }
+
+    /**
+     * The parsed body of a macro definition.
+     *
+     * <p>Attribute values and text are split into literal text and
+     * attribute references and the nested elements standing for
+     * elements of the macro are looked up once per definition rather
+     * than once per invocation.</p>
+     *
+     * @since Ant 1.8.3
+     */
+    static final class Template {
+        private final UnknownElement ue;
+        private final String polyType;
+        private final String[] names;
+        private final Object[] values;
+        private final Object text;
+        private final Template[] children;
+        private final MacroDef.TemplateElement[] slots;
+
+        /**
+         * @param ue the element to parse.
+         * @param elements the elements of the macro definition.
+         */
+        Template(UnknownElement ue, Map elements) {
+            this.ue = ue;
+            RuntimeConfigurable wrapper = ue.getWrapper();
+            polyType = wrapper.getPolyType();
+            Map m = wrapper.getAttributeMap();
+            names = new String[m.size()];
+            values = new Object[m.size()];
+            int n = 0;
+            for (Iterator i = m.entrySet().iterator(); i.hasNext(); n++) {
+                Map.Entry entry = (Map.Entry) i.next();
+                names[n] = (String) entry.getKey();
+                values[n] = compile((String) entry.getValue());
+            }
+            text = compile(wrapper.getText().toString());
+
+            List c = new ArrayList();
+            for (Enumeration e = wrapper.getChildren(); e.hasMoreElements();) {
+                c.add(e.nextElement());
+            }
+            children = new Template[c.size()];
+            slots = new MacroDef.TemplateElement[c.size()];
+            for (int i = 0; i < children.length; i++) {
+                UnknownElement child = (UnknownElement)
+                    ((RuntimeConfigurable) c.get(i)).getProxy();
+                String tag = child.getTaskType();
+                if (tag != null) {
+                    tag = tag.toLowerCase(Locale.ENGLISH);
+                }
+                slots[i] = (MacroDef.TemplateElement) elements.get(tag);
+                if (slots[i] == null) {
+                    children[i] = new Template(child, elements);
+                }
+            }
+        }
+    }
+
     /**
      * Execute the templates instance.
      * Copies the unknown element, substitutes the attributes,
@@ -388,8 +519,13 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
                 + copyKeys);
         }
 
+        owningTarget = getOwningTarget();
+        if (owningTarget == null) {
+            owningTarget = new Target();
+            owningTarget.setProject(getProject());
+        }
         // need to set the project on unknown element
-        UnknownElement c = copy(macroDef.getNestedTask(), false);
+        UnknownElement c = copy(macroDef.getTemplate());
         c.init();
         LocalProperties localProperties
             = LocalProperties.get(getProject());
@@ -407,6 +543,7 @@ public class MacroInstance extends Task implements DynamicAttribute, TaskContain
         } finally {
             presentElements = null;
             localAttributes = null;
+            owningTarget = null;
             localProperties.exitScope();
         }
     }
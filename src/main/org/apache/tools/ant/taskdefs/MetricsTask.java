@@ -0,0 +1,124 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.taskdefs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.EnumeratedAttribute;
+import org.apache.tools.ant.util.FileUtils;
+import org.apache.tools.ant.util.Metrics;
+
+/**
+ * Writes the metrics collected by Ant's core classes to a file or
+ * the log.
+ *
+ * @since Ant 1.8.3
+ * @ant.task category="utility" name="metrics"
+ */
+public class MetricsTask extends Task {
+
+    private File file;
+    private Format format = new Format();
+    private boolean reset = false;
+
+    /**
+     * The file to write to, the metrics are logged if not set.
+     * @param file the file.
+     */
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * The output format, "prometheus" (the default) or "json".
+     * @param format the format.
+     */
+    public void setFormat(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * Whether to set all metrics back to zero after writing them.
+     * @param reset default false.
+     */
+    public void setReset(boolean reset) {
+        this.reset = reset;
+    }
+
+    /**
+     * Writes the metrics.
+     * @throws BuildException on error.
+     */
+    public void execute() throws BuildException {
+        if (!Metrics.isEnabled()) {
+            log("Metrics are not collected, set the property ant.metrics to"
+                + " true to collect them.", Project.MSG_WARN);
+        }
+        Metrics metrics = getProject().getMetrics();
+        Writer w = null;
+        try {
+            w = file == null ? (Writer) new StringWriter()
+                : new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            if (Format.JSON.equals(format.getValue())) {
+                metrics.writeJson(w);
+            } else {
+                metrics.writePrometheus(w);
+            }
+            if (file == null) {
+                log(w.toString());
+            }
+        } catch (IOException e) {
+            throw new BuildException("Failed to write metrics: "
+                                     + e.getMessage(), e, getLocation());
+        } finally {
+            FileUtils.close(w);
+        }
+        if (reset) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Output format of the metrics.
+     */
+    public static class Format extends EnumeratedAttribute {
+        private static final String PROMETHEUS = "prometheus";
+        private static final String JSON = "json";
+
+        /** Uses the Prometheus text format. */
+        public Format() {
+            setValue(PROMETHEUS);
+        }
+
+        /**
+         * @see EnumeratedAttribute#getValues
+         * @return the supported formats.
+         */
+        public String[] getValues() {
+            return new String[] {PROMETHEUS, JSON};
+        }
+    }
+}
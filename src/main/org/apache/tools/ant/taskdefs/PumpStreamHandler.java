@@ -131,10 +131,23 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
      * Start the <code>Thread</code>s.
      */
     public void start() {
-        outputThread.start();
-        errorThread.start();
+        start(outputThread);
+        start(errorThread);
         if (inputThread != null) {
-            inputThread.start();
+            start(inputThread);
+        }
+    }
+
+    /**
+     * Starts a pump, pumps created by this class run on a shared
+     * daemon thread rather than a thread of their own.
+     */
+    private static void start(Thread t) {
+        if (t.getClass() == ThreadWithPumper.class) {
+            ((ThreadWithPumper) t).pooled = true;
+            PumpWorkerPool.execute((ThreadWithPumper) t);
+        } else {
+            t.start();
         }
     }
 
@@ -166,6 +179,10 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
      * ThreadWithPumper ThreadWithPumper} instance) or interrupting
      * the thread.
      *
+     * <p>A pumper is first told to stop as soon as it has copied the
+     * input that is available so it doesn't need to be waited for
+     * once the process has ended.</p>
+     *
      * @since Ant 1.8.0
      */
     protected final void finish(Thread t) {
@@ -181,23 +198,42 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
             if (s != null && s.isFinished()) {
                 return;
             }
-            if (!t.isAlive()) {
+            if (!isAlive(t)) {
                 return;
             }
 
-            t.join(JOIN_TIMEOUT);
+            if (s != null) {
+                s.stopWhenDrained();
+            }
+            join(t, JOIN_TIMEOUT);
             if (s != null && !s.isFinished()) {
                 s.stop();
             }
-            while ((s == null || !s.isFinished()) && t.isAlive()) {
+            while ((s == null || !s.isFinished()) && isAlive(t)) {
                 t.interrupt();
-                t.join(JOIN_TIMEOUT);
+                join(t, JOIN_TIMEOUT);
             }
         } catch (InterruptedException e) {
             // ignore
         }
     }
 
+    private static boolean isAlive(Thread t) {
+        if (t instanceof ThreadWithPumper && ((ThreadWithPumper) t).pooled) {
+            return !((ThreadWithPumper) t).getPumper().isFinished();
+        }
+        return t.isAlive();
+    }
+
+    private static void join(Thread t, long timeout)
+        throws InterruptedException {
+        if (t instanceof ThreadWithPumper && ((ThreadWithPumper) t).pooled) {
+            ((ThreadWithPumper) t).getPumper().waitFor(timeout);
+        } else {
+            t.join(timeout);
+        }
+    }
+
     /**
      * Get the error stream.
      * @return <code>OutputStream</code>.
@@ -283,10 +319,20 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
     /**
      * Specialized subclass that allows access to the running StreamPumper.
      *
+     * <p>Instances of this exact class are not started by {@link
+     * PumpStreamHandler#start start}, their pumper is run by a thread
+     * of a shared pool instead.</p>
+     *
      * @since Ant 1.8.0
      */
     protected static class ThreadWithPumper extends Thread {
         private final StreamPumper pumper;
+        /** whether the pumper has been handed to the shared pool */
+        private volatile boolean pooled = false;
+        /** the pooled thread currently running the pumper */
+        private Thread runner;
+        private final Object runnerLock = new Object();
+
         public ThreadWithPumper(StreamPumper p) {
             super(p);
             pumper = p;
@@ -294,5 +340,39 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
         protected StreamPumper getPumper() {
             return pumper;
         }
+
+        /**
+         * Interrupts the pooled thread running the pumper if the
+         * pumper has been handed to the pool.
+         */
+        public void interrupt() {
+            if (!pooled) {
+                super.interrupt();
+                return;
+            }
+            synchronized (runnerLock) {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+
+        /**
+         * Runs the pumper on the given pooled thread.
+         */
+        void runPooled(Thread worker) {
+            synchronized (runnerLock) {
+                runner = worker;
+            }
+            try {
+                pumper.run();
+            } finally {
+                synchronized (runnerLock) {
+                    runner = null;
+                    // don't let a late interrupt reach the next pumper
+                    Thread.interrupted();
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,123 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.taskdefs;
+
+import java.util.LinkedList;
+
+/**
+ * Daemon threads that run the stream pumpers of {@link
+ * PumpStreamHandler PumpStreamHandler} so that a new thread doesn't
+ * have to be created for each stream of each process.
+ *
+ * <p>Each pumper still gets a thread of its own while it runs since
+ * it blocks while reading.  A thread that has finished a pumper waits
+ * for the next one and dies if none arrives within {@link
+ * #KEEP_ALIVE KEEP_ALIVE} milliseconds.</p>
+ *
+ * @since Ant 1.8.3
+ */
+final class PumpWorkerPool {
+
+    /** Time an idle worker waits for a new pumper. */
+    private static final long KEEP_ALIVE = 30 * 1000;
+
+    private static final Object LOCK = new Object();
+
+    /** Idle workers, most recently used first. */
+    private static final LinkedList IDLE = new LinkedList();
+
+    private static int created = 0;
+
+    private PumpWorkerPool() {
+    }
+
+    /**
+     * Runs the pumper of the given thread object on an idle worker or
+     * a new one.
+     * @param t the not yet started thread holding the pumper.
+     */
+    static void execute(PumpStreamHandler.ThreadWithPumper t) {
+        synchronized (LOCK) {
+            if (!IDLE.isEmpty()) {
+                Worker w = (Worker) IDLE.removeFirst();
+                w.task = t;
+                LOCK.notifyAll();
+                return;
+            }
+        }
+        Worker w = new Worker(t);
+        w.start();
+    }
+
+    /**
+     * Whether the given thread is a worker waiting for a pumper,
+     * used by tests.
+     */
+    static boolean isIdle(Thread t) {
+        synchronized (LOCK) {
+            return IDLE.contains(t);
+        }
+    }
+
+    private static final class Worker extends Thread {
+        private PumpStreamHandler.ThreadWithPumper task;
+
+        private Worker(PumpStreamHandler.ThreadWithPumper first) {
+            super(nextName());
+            task = first;
+            setDaemon(true);
+        }
+
+        public void run() {
+            PumpStreamHandler.ThreadWithPumper t = task;
+            while (t != null) {
+                t.runPooled(this);
+                t = awaitNext();
+            }
+        }
+
+        private PumpStreamHandler.ThreadWithPumper awaitNext() {
+            synchronized (LOCK) {
+                task = null;
+                IDLE.addFirst(this);
+                long deadline = System.currentTimeMillis() + KEEP_ALIVE;
+                try {
+                    while (task == null) {
+                        long left = deadline - System.currentTimeMillis();
+                        if (left <= 0) {
+                            break;
+                        }
+                        LOCK.wait(left);
+                    }
+                } catch (InterruptedException e) {
+                    // nobody but the pool should interrupt us, die
+                }
+                if (task == null) {
+                    IDLE.remove(this);
+                }
+                return task;
+            }
+        }
+    }
+
+    private static String nextName() {
+        synchronized (LOCK) {
+            return "StreamPumper-" + (++created);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.tools.ant.taskdefs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.LinkedList;
 import org.apache.tools.ant.util.FileUtils;
 
 /**
@@ -29,16 +30,23 @@ import org.apache.tools.ant.util.FileUtils;
  */
 public class StreamPumper implements Runnable {
 
-    private static final int SMALL_BUFFER_SIZE = 128;
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+
+    /** Number of unused buffers of the default size kept for reuse. */
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    /** Unused buffers of the default size. */
+    private static final LinkedList BUFFERS = new LinkedList();
 
     private final InputStream is;
     private final OutputStream os;
     private volatile boolean finish;
+    private volatile boolean drain;
     private volatile boolean finished;
     private final boolean closeWhenExhausted;
     private boolean autoflush = false;
     private Exception exception = null;
-    private int bufferSize = SMALL_BUFFER_SIZE;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
     private boolean started = false;
     private final boolean useAvailable;
 
@@ -118,7 +126,7 @@ public class StreamPumper implements Runnable {
         finished = false;
         finish = false;
 
-        final byte[] buf = new byte[bufferSize];
+        final byte[] buf = getBuffer(bufferSize);
 
         int length;
         try {
@@ -146,6 +154,7 @@ public class StreamPumper implements Runnable {
                 exception = e;
             }
         } finally {
+            releaseBuffer(buf);
             if (closeWhenExhausted) {
                 FileUtils.close(os);
             }
@@ -175,6 +184,20 @@ public class StreamPumper implements Runnable {
         }
     }
 
+    /**
+     * Blocks until the StreamPumper finishes or the timeout has
+     * passed.
+     * @param timeout maximum time to wait in milliseconds.
+     * @throws InterruptedException if interrupted.
+     * @since Ant 1.8.3
+     */
+    /*package*/ synchronized void waitFor(long timeout)
+        throws InterruptedException {
+        if (!isFinished()) {
+            wait(timeout);
+        }
+    }
+
     /**
      * Set the size in bytes of the read buffer.
      * @param bufferSize the buffer size to use.
@@ -215,18 +238,62 @@ public class StreamPumper implements Runnable {
         notifyAll();
     }
 
+    /**
+     * Stop the pumper once no more input is available without
+     * blocking.
+     *
+     * <p>Only has an effect if the pumper uses {@link
+     * java.io.InputStream#available available}.  Used once the
+     * process writing to the input stream has ended.</p>
+     * @since Ant 1.8.3
+     */
+    /*package*/ synchronized void stopWhenDrained() {
+        drain = true;
+        notifyAll();
+    }
+
+    /** Maximum time to wait before checking for input again. */
     private static final long POLL_INTERVAL = 100;
 
     private void waitForInput(InputStream is)
         throws IOException, InterruptedException {
         if (useAvailable) {
+            // check often while input may still be on its way,
+            // less often while the source stays silent
+            long interval = 1;
             while (!finish && is.available() == 0) {
                 if (Thread.interrupted()) {
                     throw new InterruptedException();
                 }
 
                 synchronized (this) {
-                    this.wait(POLL_INTERVAL);
+                    if (drain) {
+                        finish = true;
+                        break;
+                    }
+                    this.wait(interval);
+                }
+                interval = Math.min(2 * interval, POLL_INTERVAL);
+            }
+        }
+    }
+
+    private static byte[] getBuffer(int size) {
+        if (size == DEFAULT_BUFFER_SIZE) {
+            synchronized (BUFFERS) {
+                if (!BUFFERS.isEmpty()) {
+                    return (byte[]) BUFFERS.removeFirst();
+                }
+            }
+        }
+        return new byte[size];
+    }
+
+    private static void releaseBuffer(byte[] buf) {
+        if (buf.length == DEFAULT_BUFFER_SIZE) {
+            synchronized (BUFFERS) {
+                if (BUFFERS.size() < MAX_POOLED_BUFFERS) {
+                    BUFFERS.addFirst(buf);
                 }
             }
         }
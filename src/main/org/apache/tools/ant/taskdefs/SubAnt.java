@@ -18,12 +18,28 @@
 package org.apache.tools.ant.taskdefs;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Stack;
+import java.util.StringTokenizer;
 import java.util.Vector;
 import java.util.Enumeration;
 
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Main;
+import org.apache.tools.ant.SubBuildListener;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.BuildException;
@@ -37,6 +53,7 @@ import org.apache.tools.ant.types.Reference;
 import org.apache.tools.ant.types.ResourceCollection;
 
 import org.apache.tools.ant.taskdefs.Ant.TargetElement;
+import org.apache.tools.ant.util.FileUtils;
 
 
 /**
@@ -74,6 +91,9 @@ public class SubAnt extends Task {
     private boolean inheritRefs = false;
     private boolean failOnError = true;
     private String output  = null;
+    private int threads = 1;
+    private boolean failFast = true;
+    private File dependencyFile = null;
 
     private Vector properties = new Vector();
     private Vector references = new Vector();
@@ -198,6 +218,14 @@ public class SubAnt extends Task {
             subTarget = getOwningTarget().getName();
         }
 */
+        if (threads < 1) {
+            throw new BuildException("threads must be a positive number");
+        }
+        if (threads > 1 || dependencyFile != null) {
+            new Scheduler(filenames).execute();
+            return;
+        }
+
         BuildException buildException = null;
         for (int i = 0; i < count; ++i) {
             File file = null;
@@ -281,6 +309,18 @@ public class SubAnt extends Task {
      */
     private void execute(File file, File directory)
                 throws BuildException {
+        execute(file, directory, null);
+    }
+
+    /**
+     * Runs a sub-build.
+     * @param file the build file.
+     * @param directory the base directory, may be null.
+     * @param listener if not null the sub-build runs in parallel to
+     * others and sends its events to this listener only.
+     */
+    private void execute(File file, File directory, BuildListener listener)
+                throws BuildException {
         if (!file.exists() || file.isDirectory() || !file.canRead()) {
             String msg = "Invalid file: " + file;
             if (failOnError) {
@@ -290,17 +330,25 @@ public class SubAnt extends Task {
             return;
         }
 
-        ant = createAntTask(directory);
+        Ant antTask = createAntTask(directory, listener == null);
         String antfilename = file.getAbsolutePath();
-        ant.setAntfile(antfilename);
+        antTask.setAntfile(antfilename);
         final int size = targets.size();
         for (int i = 0; i < size; i++) {
             TargetElement targetElement = (TargetElement) targets.get(i);
-            ant.addConfiguredTarget(targetElement);
+            antTask.addConfiguredTarget(targetElement);
+        }
+        if (listener == null) {
+            ant = antTask;
+        } else {
+            // can't use the ant field as several sub-builds are
+            // running, route output of this thread directly instead
+            antTask.setBuildListener(listener);
+            getProject().registerThreadTask(Thread.currentThread(), antTask);
         }
 
         try {
-            ant.execute();
+            antTask.execute();
         } catch (BuildException e) {
             if (failOnError || isHardError(e)) {
                 throw e;
@@ -317,7 +365,11 @@ public class SubAnt extends Task {
                 + e.toString(),
                 Project.MSG_WARN);
         } finally {
-            ant = null;
+            if (listener == null) {
+                ant = null;
+            } else {
+                getProject().registerThreadTask(Thread.currentThread(), null);
+            }
         }
     }
     /** whether we should even try to continue after this error */
@@ -401,6 +453,55 @@ public class SubAnt extends Task {
         this.verbose = on;
     }
 
+    /**
+     * The number of sub-builds to run in parallel.  The default of 1
+     * runs them one after another.
+     *
+     * <p>The output of sub-builds running in parallel is collected
+     * and logged once the sub-build has finished so the output of
+     * different sub-builds doesn't get mixed up, neither in the log
+     * nor in the output file.  A fixed set of threads runs the
+     * sub-builds.</p>
+     *
+     * @param threads the maximum number of sub-builds running at the
+     * same time.
+     * @since Ant 1.8.3
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Whether to stop starting new sub-builds once one of them has
+     * failed.  Defaults to true, ignored if Ant runs in keep-going
+     * mode.
+     *
+     * <p>Only used if threads is bigger than 1 or a dependency file
+     * has been specified.</p>
+     *
+     * @param b the new value for this boolean flag.
+     * @since Ant 1.8.3
+     */
+    public void setFailfast(boolean b) {
+        failFast = b;
+    }
+
+    /**
+     * A properties file with the order in which sub-builds must run.
+     *
+     * <p>Each key is the name of a sub-build, i.e. the name of the
+     * directory of the buildpath element or of the directory holding
+     * the build file if the element is a file.  The value is a comma
+     * or space separated list of names of sub-builds that must have
+     * finished successfully before this one can start.</p>
+     *
+     * @param f the file.
+     * @since Ant 1.8.3
+     */
+    public void setDependencyfile(File f) {
+        dependencyFile = f;
+    }
+
     /**
      * Corresponds to <code>&lt;ant&gt;</code>'s
      * <code>output</code> attribute.
@@ -561,11 +662,14 @@ public class SubAnt extends Task {
      * Creates the &lt;ant&gt; task configured to run a specific target.
      *
      * @param directory : if not null the directory where the build should run
+     * @param useOutput whether the task should write the output
+     *        file itself, false if the events of the sub-build are
+     *        buffered and replayed to the output file later.
      *
      * @return the ant task, configured with the explicit properties and
      *         references necessary to run the sub-build.
      */
-    private Ant createAntTask(File directory) {
+    private Ant createAntTask(File directory, boolean useOutput) {
         Ant antTask = new Ant(this);
         antTask.init();
         if (subTarget != null && subTarget.length() > 0) {
@@ -573,7 +677,7 @@ public class SubAnt extends Task {
         }
 
 
-        if (output != null) {
+        if (output != null && useOutput) {
             antTask.setOutput(output);
         }
 
@@ -632,4 +736,468 @@ public class SubAnt extends Task {
         }
     }
 
-} // END class SubAnt
+
+    /**
+     * Runs the sub-builds in the order given by the dependency file
+     * using up to threads threads.
+     */
+    private class Scheduler {
+        private final List pending = new ArrayList();
+        private final boolean stopOnFailure;
+        private final Object outputLock = new Object();
+        private int running = 0;
+        private boolean stop = false;
+        private BuildException failure = null;
+
+        Scheduler(String[] filenames) {
+            for (int i = 0; i < filenames.length; i++) {
+                pending.add(createSubBuild(filenames[i]));
+            }
+            if (dependencyFile != null) {
+                readDependencies();
+            }
+            stopOnFailure = failFast && !getProject().isKeepGoingMode();
+        }
+
+        void execute() {
+            if (threads == 1) {
+                runSubBuilds();
+            } else {
+                Thread[] workers =
+                    new Thread[Math.min(threads, pending.size())];
+                for (int i = 0; i < workers.length; i++) {
+                    workers[i] = new Thread("subant-" + (i + 1)) {
+                            public void run() {
+                                runSubBuilds();
+                            }
+                        };
+                    workers[i].start();
+                }
+                boolean interrupted = false;
+                for (int i = 0; i < workers.length; i++) {
+                    while (workers[i].isAlive()) {
+                        try {
+                            workers[i].join();
+                        } catch (InterruptedException e) {
+                            // don't start any more sub-builds but
+                            // wait for the running ones
+                            interrupted = true;
+                            synchronized (this) {
+                                stop = true;
+                                notifyAll();
+                            }
+                        }
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new BuildException("Interrupted while running "
+                                             + "sub-builds", getLocation());
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        /**
+         * Runs sub-builds until there are no more, each of the
+         * threads workers executes this loop.
+         */
+        private void runSubBuilds() {
+            SubBuild next;
+            while ((next = nextSubBuild()) != null) {
+                next.run();
+            }
+        }
+
+        private SubBuild createSubBuild(String filename) {
+            File file = new File(filename);
+            File directory = null;
+            String subdirPath = null;
+            String name;
+            if (file.isDirectory()) {
+                subdirPath = file.getPath();
+                name = file.getName();
+                if (genericantfile != null) {
+                    directory = file;
+                    file = genericantfile;
+                } else {
+                    file = new File(file, antfile);
+                }
+            } else {
+                File parent = file.getParentFile();
+                name = parent != null ? parent.getName() : file.getName();
+            }
+            return new SubBuild(this, name, file, directory, subdirPath);
+        }
+
+        private void readDependencies() {
+            Properties deps = new Properties();
+            InputStream in = null;
+            try {
+                in = new FileInputStream(dependencyFile);
+                deps.load(in);
+            } catch (IOException e) {
+                throw new BuildException("Failed to read " + dependencyFile,
+                                         e, getLocation());
+            } finally {
+                FileUtils.close(in);
+            }
+            Map byName = new HashMap();
+            for (Iterator i = pending.iterator(); i.hasNext();) {
+                SubBuild b = (SubBuild) i.next();
+                List l = (List) byName.get(b.name);
+                if (l == null) {
+                    l = new ArrayList();
+                    byName.put(b.name, l);
+                }
+                l.add(b);
+            }
+            for (Iterator i = pending.iterator(); i.hasNext();) {
+                SubBuild b = (SubBuild) i.next();
+                String value = deps.getProperty(b.name);
+                if (value == null) {
+                    continue;
+                }
+                StringTokenizer st = new StringTokenizer(value, ", \t");
+                while (st.hasMoreTokens()) {
+                    String dep = st.nextToken();
+                    List l = (List) byName.get(dep);
+                    if (l == null) {
+                        log("Ignoring dependency of " + b.name + " on " + dep
+                            + " which is not part of the buildpath",
+                            Project.MSG_VERBOSE);
+                        continue;
+                    }
+                    for (Iterator j = l.iterator(); j.hasNext();) {
+                        SubBuild d = (SubBuild) j.next();
+                        if (d != b) {
+                            b.dependencies.add(d);
+                        }
+                    }
+                }
+            }
+            Stack path = new Stack();
+            for (Iterator i = pending.iterator(); i.hasNext();) {
+                checkCycles((SubBuild) i.next(), path);
+            }
+        }
+
+        private void checkCycles(SubBuild b, Stack path) {
+            if (b.visited) {
+                return;
+            }
+            int index = path.indexOf(b);
+            if (index >= 0) {
+                StringBuffer sb =
+                    new StringBuffer("Circular dependency between sub-builds: ");
+                for (int i = index; i < path.size(); i++) {
+                    sb.append(((SubBuild) path.get(i)).name).append(" -> ");
+                }
+                sb.append(b.name);
+                throw new BuildException(sb.toString(), getLocation());
+            }
+            path.push(b);
+            for (Iterator i = b.dependencies.iterator(); i.hasNext();) {
+                checkCycles((SubBuild) i.next(), path);
+            }
+            path.pop();
+            b.visited = true;
+        }
+
+        /**
+         * Waits for a sub-build that can be started.
+         * @return the sub-build or null if all are done.
+         */
+        private synchronized SubBuild nextSubBuild() {
+            while (true) {
+                if (!stop) {
+                    skipBlocked();
+                }
+                if (stop || pending.isEmpty()) {
+                    if (running == 0) {
+                        return null;
+                    }
+                } else if (running < threads) {
+                    for (Iterator i = pending.iterator(); i.hasNext();) {
+                        SubBuild b = (SubBuild) i.next();
+                        if (b.isReady()) {
+                            i.remove();
+                            running++;
+                            return b;
+                        }
+                    }
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // ignore, check again
+                }
+            }
+        }
+
+        /**
+         * Removes sub-builds that depend on failed ones.
+         */
+        private void skipBlocked() {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Iterator i = pending.iterator(); i.hasNext();) {
+                    SubBuild b = (SubBuild) i.next();
+                    SubBuild failed = b.getFailedDependency();
+                    if (failed != null) {
+                        i.remove();
+                        b.finished = true;
+                        b.failed = true;
+                        log("Skipping '" + b.file + "' because "
+                            + failed.name + " failed.", Project.MSG_ERR);
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        private synchronized void finished(SubBuild b, Throwable t) {
+            running--;
+            b.finished = true;
+            if (t != null) {
+                b.failed = true;
+                if (failure == null) {
+                    failure = t instanceof BuildException
+                        ? (BuildException) t : new BuildException(t);
+                }
+                if (failure != t || !stopOnFailure) {
+                    log("File '" + b.file + "' failed with message '"
+                        + t.getMessage() + "'.", Project.MSG_ERR);
+                }
+                if (stopOnFailure || isHardError(t)) {
+                    stop = true;
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * A single sub-build run by the Scheduler.
+     */
+    private class SubBuild implements Runnable {
+        private final Scheduler scheduler;
+        private final String name;
+        private final File file;
+        private final File directory;
+        private final String subdirPath;
+        private final List dependencies = new ArrayList();
+        // guarded by scheduler
+        private boolean finished = false;
+        private boolean failed = false;
+        // only used while checking for cycles
+        private boolean visited = false;
+
+        SubBuild(Scheduler scheduler, String name, File file,
+                 File directory, String subdirPath) {
+            this.scheduler = scheduler;
+            this.name = name;
+            this.file = file;
+            this.directory = directory;
+            this.subdirPath = subdirPath;
+        }
+
+        boolean isReady() {
+            for (Iterator i = dependencies.iterator(); i.hasNext();) {
+                if (!((SubBuild) i.next()).finished) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        SubBuild getFailedDependency() {
+            for (Iterator i = dependencies.iterator(); i.hasNext();) {
+                SubBuild d = (SubBuild) i.next();
+                if (d.failed) {
+                    return d;
+                }
+            }
+            return null;
+        }
+
+        public void run() {
+            BufferedEvents events = threads > 1 ? new BufferedEvents() : null;
+            Throwable thrown = null;
+            if (events == null) {
+                logEntering();
+            }
+            try {
+                execute(file, directory, events);
+            } catch (Throwable t) {
+                thrown = t;
+            }
+            if (events == null) {
+                logLeaving();
+            } else {
+                synchronized (scheduler.outputLock) {
+                    logEntering();
+                    Vector listeners =
+                        new Vector(getProject().getBuildListeners());
+                    PrintStream out = openOutput(listeners);
+                    try {
+                        events.replay(listeners);
+                    } finally {
+                        FileUtils.close(out);
+                    }
+                    logLeaving();
+                }
+            }
+            scheduler.finished(this, thrown);
+        }
+
+        /**
+         * Adds a logger writing to the output file to the listeners
+         * the way &lt;ant&gt; would do for sub-builds not running in
+         * parallel.
+         * @return the stream to close once the events have been
+         * replayed, null if there is no output file.
+         */
+        private PrintStream openOutput(Vector listeners) {
+            if (output == null) {
+                return null;
+            }
+            File outfile = directory != null
+                ? FileUtils.getFileUtils().resolveFile(directory, output)
+                : getProject().resolveFile(output);
+            try {
+                PrintStream out =
+                    new PrintStream(new FileOutputStream(outfile));
+                DefaultLogger logger = new DefaultLogger();
+                logger.setMessageOutputLevel(Project.MSG_INFO);
+                logger.setOutputPrintStream(out);
+                logger.setErrorPrintStream(out);
+                listeners.add(logger);
+                return out;
+            } catch (IOException ex) {
+                log("Ant: Can't set output to " + output);
+                return null;
+            }
+        }
+
+        private void logEntering() {
+            if (verbose && subdirPath != null) {
+                log("Entering directory: " + subdirPath + "\n",
+                    Project.MSG_INFO);
+            }
+        }
+
+        private void logLeaving() {
+            if (verbose && subdirPath != null) {
+                log("Leaving directory: " + subdirPath + "\n",
+                    Project.MSG_INFO);
+            }
+        }
+    }
+
+    /**
+     * Collects the events of a sub-build so they can be passed on to
+     * the listeners of this project once it has finished.
+     */
+    private static class BufferedEvents implements SubBuildListener {
+        private static final int BUILD_STARTED = 0;
+        private static final int BUILD_FINISHED = 1;
+        private static final int TARGET_STARTED = 2;
+        private static final int TARGET_FINISHED = 3;
+        private static final int TASK_STARTED = 4;
+        private static final int TASK_FINISHED = 5;
+        private static final int MESSAGE_LOGGED = 6;
+        private static final int SUB_BUILD_STARTED = 7;
+        private static final int SUB_BUILD_FINISHED = 8;
+
+        private final List types = new ArrayList();
+        private final List events = new ArrayList();
+
+        public void buildStarted(BuildEvent event) {
+            add(BUILD_STARTED, event);
+        }
+        public void buildFinished(BuildEvent event) {
+            add(BUILD_FINISHED, event);
+        }
+        public void targetStarted(BuildEvent event) {
+            add(TARGET_STARTED, event);
+        }
+        public void targetFinished(BuildEvent event) {
+            add(TARGET_FINISHED, event);
+        }
+        public void taskStarted(BuildEvent event) {
+            add(TASK_STARTED, event);
+        }
+        public void taskFinished(BuildEvent event) {
+            add(TASK_FINISHED, event);
+        }
+        public void messageLogged(BuildEvent event) {
+            add(MESSAGE_LOGGED, event);
+        }
+        public void subBuildStarted(BuildEvent event) {
+            add(SUB_BUILD_STARTED, event);
+        }
+        public void subBuildFinished(BuildEvent event) {
+            add(SUB_BUILD_FINISHED, event);
+        }
+
+        private synchronized void add(int type, BuildEvent event) {
+            types.add(new Integer(type));
+            events.add(event);
+        }
+
+        synchronized void replay(Vector listeners) {
+            final int count = events.size();
+            for (int i = 0; i < count; i++) {
+                int type = ((Integer) types.get(i)).intValue();
+                BuildEvent event = (BuildEvent) events.get(i);
+                for (Iterator l = listeners.iterator(); l.hasNext();) {
+                    fire((BuildListener) l.next(), type, event);
+                }
+            }
+            types.clear();
+            events.clear();
+        }
+
+        private static void fire(BuildListener l, int type, BuildEvent event) {
+            switch (type) {
+            case BUILD_STARTED:
+                l.buildStarted(event);
+                break;
+            case BUILD_FINISHED:
+                l.buildFinished(event);
+                break;
+            case TARGET_STARTED:
+                l.targetStarted(event);
+                break;
+            case TARGET_FINISHED:
+                l.targetFinished(event);
+                break;
+            case TASK_STARTED:
+                l.taskStarted(event);
+                break;
+            case TASK_FINISHED:
+                l.taskFinished(event);
+                break;
+            case MESSAGE_LOGGED:
+                l.messageLogged(event);
+                break;
+            case SUB_BUILD_STARTED:
+                if (l instanceof SubBuildListener) {
+                    ((SubBuildListener) l).subBuildStarted(event);
+                }
+                break;
+            case SUB_BUILD_FINISHED:
+                if (l instanceof SubBuildListener) {
+                    ((SubBuildListener) l).subBuildFinished(event);
+                }
+                break;
+            default:
+                break;
+            }
+        }
+    }
+}
@@ -61,6 +61,7 @@ import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.ant.util.GlobPatternMapper;
 import org.apache.tools.ant.util.IdentityMapper;
 import org.apache.tools.ant.util.MergingMapper;
+import org.apache.tools.ant.util.Metrics;
 import org.apache.tools.ant.util.ResourceUtils;
 import org.apache.tools.zip.UnixStat;
 import org.apache.tools.zip.ZipEntry;
@@ -77,6 +78,13 @@ import org.apache.tools.zip.ZipOutputStream;
  */
 public class Zip extends MatchingTask {
     private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final Metrics.Counter ZIP_ENTRIES = Metrics.getMetrics()
+        .getCounter("ant_zip_entries_total",
+                    "File entries written by the zip family of tasks.");
+    private static final Metrics.Counter ZIP_BYTES = Metrics.getMetrics()
+        .getCounter("ant_zip_bytes_total",
+                    "Uncompressed bytes written by the zip family of tasks.");
     private static final int ROUNDUP_MILLIS = 1999; // 2 seconds - 1
     // CheckStyle:VisibilityModifier OFF - bc
 
@@ -1822,13 +1830,17 @@ public class Zip extends MatchingTask {
             zOut.putNextEntry(ze);
 
             byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
             int count = 0;
             do {
                 if (count != 0) {
                     zOut.write(buffer, 0, count);
+                    written += count;
                 }
                 count = in.read(buffer, 0, buffer.length);
             } while (count != -1);
+            ZIP_ENTRIES.increment();
+            ZIP_BYTES.add(written);
         }
         addedFiles.addElement(vPath);
     }
@@ -20,6 +20,7 @@
 import java.io.File;
 import java.io.IOException;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.util.FastHash;
 import org.apache.tools.ant.util.FileUtils;
 
 /**
@@ -43,6 +44,8 @@ public class FilesMatch implements Condition {
 
     private boolean textfile = false;
 
+    private String algorithm = null;
+
 
     /**
      * Sets the File1 attribute
@@ -71,6 +74,17 @@ public class FilesMatch implements Condition {
         this.textfile = textfile;
     }
 
+    /**
+     * Compare the files by their hashes computed with the given
+     * algorithm rather than byte by byte.
+     * @param algorithm the name of an algorithm supported by {@link
+     * FastHash FastHash}.
+     * @since Ant 1.8.3
+     */
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
     /**
      * comparison method of the interface
      *
@@ -85,11 +99,22 @@ public class FilesMatch implements Condition {
             throw new BuildException("both file1 and file2 are required in "
                                      + "filesmatch");
         }
+        if (algorithm != null) {
+            if (!FastHash.isSupported(algorithm)) {
+                throw new BuildException("Unknown algorithm " + algorithm);
+            }
+            if (textfile) {
+                throw new BuildException("textfile cannot be combined with "
+                                         + "algorithm");
+            }
+        }
 
         //#now match the files
         boolean matches = false;
         try {
-            matches = FILE_UTILS.contentEquals(file1, file2, textfile);
+            matches = algorithm == null
+                ? FILE_UTILS.contentEquals(file1, file2, textfile)
+                : FastHash.contentEquals(file1, file2, algorithm);
         } catch (IOException ioe) {
             throw new BuildException("when comparing files: "
                 + ioe.getMessage(), ioe);
@@ -40,6 +40,12 @@ public class FilterSetCollection {
 
     private Vector filterSets = new Vector();
 
+    /**
+     * First characters of the begin tokens of all filtersets, lazily
+     * computed on the first call to replaceTokens.
+     */
+    private char[] tokenStarts = null;
+
     /**
      * Constructor for a FilterSetCollection.
      */
@@ -62,6 +68,7 @@ public class FilterSetCollection {
      */
     public void addFilterSet(FilterSet filterSet) {
         filterSets.addElement(filterSet);
+        tokenStarts = null;
     }
 
     /**
@@ -72,6 +79,9 @@ public class FilterSetCollection {
      * @return      The string with the tokens replaced.
      */
     public String replaceTokens(String line) {
+        if (!mayContainToken(line)) {
+            return line;
+        }
         String replacedLine = line;
         for (Enumeration e = filterSets.elements(); e.hasMoreElements();) {
             FilterSet filterSet = (FilterSet) e.nextElement();
@@ -80,6 +90,57 @@ public class FilterSetCollection {
         return replacedLine;
     }
 
+    /**
+     * Whether the line contains the first character of any filterset's
+     * begin token.
+     *
+     * <p>A single scan over the line is enough to reject the lines that
+     * don't contain any token, which is the vast majority of the
+     * lines of a typical file, without running every filterset over
+     * it.</p>
+     *
+     * @param line the line to check.
+     * @return false if none of the filtersets can match in the line.
+     */
+    private boolean mayContainToken(String line) {
+        char[] starts = getTokenStarts();
+        if (starts.length == 0) {
+            return false;
+        }
+        if (starts.length == 1) {
+            return line.indexOf(starts[0]) > -1;
+        }
+        final int len = line.length();
+        for (int i = 0; i < len; i++) {
+            char c = line.charAt(i);
+            for (int j = 0; j < starts.length; j++) {
+                if (c == starts[j]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the distinct first characters of the begin tokens.
+     * @return the characters, never null.
+     */
+    private synchronized char[] getTokenStarts() {
+        if (tokenStarts == null) {
+            StringBuffer sb = new StringBuffer();
+            for (Enumeration e = filterSets.elements(); e.hasMoreElements();) {
+                FilterSet filterSet = (FilterSet) e.nextElement();
+                char c = filterSet.getBeginToken().charAt(0);
+                if (sb.toString().indexOf(c) == -1) {
+                    sb.append(c);
+                }
+            }
+            tokenStarts = sb.toString().toCharArray();
+        }
+        return tokenStarts;
+    }
+
     /**
     * Test to see if this filter set it empty.
     *
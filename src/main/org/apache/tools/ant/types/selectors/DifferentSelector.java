@@ -18,6 +18,7 @@
 
 package org.apache.tools.ant.types.selectors;
 
+import org.apache.tools.ant.util.FastHash;
 import org.apache.tools.ant.util.FileUtils;
 import org.apache.tools.ant.BuildException;
 
@@ -34,6 +35,8 @@ import java.io.IOException;
  * Contents are compared if the lengths are the same
  * and the timestamps are ignored or the same,
  * except if you decide to ignore contents to gain speed.
+ * Contents are compared byte by byte unless a hash algorithm has been
+ * specified.
  * <p>
  * This is a useful selector to work with programs and tasks that don't handle
  * dependency checking properly; Even if a predecessor task always creates its
@@ -53,6 +56,7 @@ public class DifferentSelector extends MappingSelector {
 
     private boolean ignoreFileTimes = true;
     private boolean ignoreContents = false;
+    private String algorithm = null;
 
 
     /**
@@ -70,6 +74,27 @@ public class DifferentSelector extends MappingSelector {
     public void setIgnoreContents(boolean ignoreContents) {
         this.ignoreContents = ignoreContents;
     }
+    /**
+     * Compare contents by their hashes computed with the given
+     * algorithm rather than byte by byte.
+     * @param algorithm the name of an algorithm supported by {@link
+     * FastHash FastHash}.
+     * @since Ant 1.8.3
+     */
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Checks that the algorithm is supported.
+     */
+    public void verifySettings() {
+        super.verifySettings();
+        if (algorithm != null && !FastHash.isSupported(algorithm)) {
+            setError("Unknown algorithm " + algorithm);
+        }
+    }
+
     /**
      * this test is our selection test that compared the file with the destfile
      * @param srcfile the source file
@@ -102,7 +127,9 @@ public class DifferentSelector extends MappingSelector {
         if (!ignoreContents) {
             //here do a bulk comparison
             try {
-                return !FILE_UTILS.contentEquals(srcfile, destfile);
+                return algorithm == null
+                    ? !FILE_UTILS.contentEquals(srcfile, destfile)
+                    : !FastHash.contentEquals(srcfile, destfile, algorithm);
             } catch (IOException e) {
                 throw new BuildException("while comparing " + srcfile + " and "
                         + destfile, e);
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.types.selectors.modifiedselector;
+
+import java.io.File;
+import java.util.Locale;
+
+import org.apache.tools.ant.util.FastHash;
+
+
+/**
+ * Computes a non-cryptographic hash of the content of a file which is
+ * a lot faster to compute than the digests of the DigestAlgorithm.
+ * Use of this algorithm doesn't require any additional nested <param>s.
+ * Supported <param>s are:
+ * <table>
+ * <tr>
+ *   <th>name</th><th>values</th><th>description</th><th>required</th>
+ * </tr>
+ * <tr>
+ *   <td> algorithm.algorithm </td>
+ *   <td> XXH64 ( default ) | MURMUR3_128 </td>
+ *   <td> name of the hash function to use </td>
+ *   <td> no, defaults to XXH64 </td>
+ * </tr>
+ * </table>
+ *
+ * @see org.apache.tools.ant.util.FastHash
+ * @since Ant 1.8.3
+ */
+public class FastHashAlgorithm implements Algorithm {
+
+
+    // -----  member variables  -----
+
+
+    /**
+     * Hash function to be used.
+     */
+    private String algorithm = FastHash.XXH64;
+
+
+    // -----  Algorithm-Configuration  -----
+
+
+    /**
+     * Specifies the hash function to be used.
+     * Defaults to "XXH64", "MURMUR3_128" may be used as well.
+     * @param algorithm the hash function to use
+     */
+    public void setAlgorithm(String algorithm) {
+        this.algorithm =
+            algorithm != null ? algorithm.toUpperCase(Locale.ENGLISH) : null;
+    }
+
+
+    // -----  Logic  -----
+
+
+    /**
+     * This algorithm supports only XXH64 and MURMUR3_128.
+     * @return <i>true</i> if all is ok, otherwise <i>false</i>.
+     */
+    public boolean isValid() {
+        return FastHash.isSupported(algorithm);
+    }
+
+
+    /**
+     * Computes a value for a file content with the specified hash function.
+     * @param file    File object for which the value should be evaluated.
+     * @return        The value for that file
+     */
+    public String getValue(File file) {
+        try {
+            return file.canRead() ? FastHash.hash(file, algorithm) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Override Object.toString().
+     * @return some information about this algorithm.
+     */
+    public String toString() {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<FastHashAlgorithm:");
+        buf.append("algorithm=").append(algorithm);
+        buf.append(">");
+        return buf.toString();
+    }
+}
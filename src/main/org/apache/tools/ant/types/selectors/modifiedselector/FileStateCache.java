@@ -0,0 +1,52 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.types.selectors.modifiedselector;
+
+
+import java.io.File;
+
+
+/**
+ * A Cache that also records size and modification time of the files
+ * whose values it stores.
+ * The ModifiedSelector uses this to skip computing the value of files
+ * that have not been touched since their value has been stored.
+ * Keys are the absolute paths of the files.
+ *
+ * @since Ant 1.8.3
+ */
+public interface FileStateCache extends Cache {
+
+    /**
+     * Returns the value stored for a file if the file still has the
+     * size and modification time recorded with the value.
+     * @param file the file
+     * @return the stored value or <i>null</i> if the file may have
+     *         changed or no value is stored
+     */
+    Object getIfUnchanged(File file);
+
+    /**
+     * Saves the value of a file together with the file's current size
+     * and modification time.
+     * @param file the file
+     * @param value the value
+     */
+    void put(File file, Object value);
+}
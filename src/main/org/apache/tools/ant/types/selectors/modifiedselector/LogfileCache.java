@@ -0,0 +1,475 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.types.selectors.modifiedselector;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.tools.ant.util.FileUtils;
+
+
+/**
+ * Stores the values in a binary log file.
+ * Saving only appends the entries that have changed since the last
+ * save to the file, the file is rewritten only once it contains a lot
+ * more records than entries.  Saving locks the file, so several
+ * selectors - even in different VMs - may share the same cache file
+ * and don't lose each other's entries.
+ *
+ * Together with a value the size and modification time of the file
+ * are recorded, so the ModifiedSelector doesn't need to compute the
+ * value again for files that have not been touched since.
+ *
+ * The ModifiedSelector sets the <i>cachefile</i> to the default value
+ * <i>cache.log</i>.
+ *
+ * Supported <param>s are:
+ * <table>
+ * <tr>
+ *   <th>name</th><th>values</th><th>description</th><th>required</th>
+ * </tr>
+ * <tr>
+ *   <td> cache.cachefile </td>
+ *   <td> <i>path to file</i> </td>
+ *   <td> the name of the log file </td>
+ *   <td> yes </td>
+ * </tr>
+ * <tr>
+ *   <td> cache.checkstat </td>
+ *   <td> <i>true | false</i> </td>
+ *   <td> whether files with unchanged size and modification time are
+ *        treated as unchanged without computing their value </td>
+ *   <td> no, defaults to true </td>
+ * </tr>
+ * </table>
+ *
+ * @since Ant 1.8.3
+ */
+public class LogfileCache implements FileStateCache {
+
+
+    // -----  constants  -----
+
+
+    /** Marks the start of a cache file, "ANTC". */
+    private static final int MAGIC = 0x414E5443;
+
+    /** Version of the file format. */
+    private static final int VERSION = 1;
+
+    /** Type of a record storing an entry. */
+    private static final byte PUT = 1;
+
+    /** Never rewrite files with less records than this. */
+    private static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+    /** Locks for the cache files used in this VM, keyed by path. */
+    private static final Map LOCKS = new HashMap();
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+
+    // -----  member variables - configuration  -----
+
+
+    /** Where to store the log? */
+    private File cachefile = null;
+
+    /** Trust size and modification time of files? */
+    private boolean checkstat = true;
+
+
+    // -----  member variables - internal use  -----
+
+
+    /** The entries, keyed by String. */
+    private Map entries = new HashMap();
+
+    /** Entries not saved yet, keyed by String. */
+    private Map dirty = new LinkedHashMap();
+
+    /** Number of records in the file as far as we know. */
+    private int records = 0;
+
+    /** Must the file be rewritten on the next save? */
+    private boolean compact = false;
+
+    /** Is the cache already loaded? Prevents from multiple load operations. */
+    private boolean cacheLoaded = false;
+
+
+    // -----  Constructors  -----
+
+
+    /** Bean-Constructor. */
+    public LogfileCache() {
+    }
+
+    /**
+     * Constructor.
+     * @param cachefile set the cachefile
+     */
+    public LogfileCache(File cachefile) {
+        this.cachefile = cachefile;
+    }
+
+
+    // -----  Cache-Configuration  -----
+
+
+    /**
+     * Setter.
+     * @param file new value
+     */
+    public synchronized void setCachefile(File file) {
+        cachefile = file;
+    }
+
+    /**
+     * Getter.
+     * @return the cachefile
+     */
+    public synchronized File getCachefile() {
+        return cachefile;
+    }
+
+    /**
+     * Setter.
+     * @param b whether files with unchanged size and modification
+     * time are known to be unchanged.
+     */
+    public synchronized void setCheckstat(boolean b) {
+        checkstat = b;
+    }
+
+    /**
+     * This cache is valid if the cachefile is set.
+     * @return true if all is ok false otherwise
+     */
+    public synchronized boolean isValid() {
+        return (cachefile != null);
+    }
+
+
+    // -----  Data Access
+
+
+    /**
+     * Load the cache from the underlying log file.
+     */
+    public synchronized void load() {
+        entries = new HashMap();
+        records = 0;
+        if ((cachefile != null) && cachefile.isFile() && cachefile.canRead()) {
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(new FileInputStream(cachefile));
+                records = read(in, entries);
+                if (records < 0) {
+                    // unreadable or truncated, start over with the next save
+                    records = -records;
+                    compact = true;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                FileUtils.close(in);
+            }
+        }
+        entries.putAll(dirty);
+        cacheLoaded = true;
+    }
+
+    /**
+     * Saves modification of the cache.
+     * Appends the entries that have been changed since the last save
+     * to the file, rewrites the file if it has grown too big.
+     */
+    public void save() {
+        File file;
+        synchronized (this) {
+            if (dirty.isEmpty() || cachefile == null) {
+                return;
+            }
+            file = cachefile;
+        }
+        synchronized (getLock(file)) {
+            synchronized (this) {
+                try {
+                    write(file);
+                    dirty.clear();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /** Deletes the cache and its underlying file. */
+    public synchronized void delete() {
+        entries = new HashMap();
+        dirty = new LinkedHashMap();
+        records = 0;
+        compact = false;
+        if (cachefile != null) {
+            cachefile.delete();
+        }
+        cacheLoaded = true;
+    }
+
+    /**
+     * Returns a value for a given key from the cache.
+     * @param key the key
+     * @return the stored value
+     */
+    public synchronized Object get(Object key) {
+        Entry e = getEntry(String.valueOf(key));
+        return e == null ? null : e.value;
+    }
+
+    /**
+     * Returns the value stored for a file if the file still has the
+     * size and modification time recorded with the value.
+     * @param file the file
+     * @return the stored value or <i>null</i>
+     */
+    public synchronized Object getIfUnchanged(File file) {
+        if (!checkstat) {
+            return null;
+        }
+        Entry e = getEntry(file.getAbsolutePath());
+        if (e == null || e.size < 0) {
+            return null;
+        }
+        return e.size == file.length() && e.lastModified == file.lastModified()
+            ? e.value : null;
+    }
+
+    /**
+     * Saves a key-value-pair in the cache.
+     * @param key the key
+     * @param value the value
+     */
+    public synchronized void put(Object key, Object value) {
+        put(new Entry(String.valueOf(key), String.valueOf(value), -1, 0));
+    }
+
+    /**
+     * Saves the value of a file together with the file's current size
+     * and modification time.
+     * @param file the file
+     * @param value the value
+     */
+    public synchronized void put(File file, Object value) {
+        long lastModified = file.lastModified();
+        long size = file.length();
+        // a file modified within the timestamp granularity may be
+        // modified again without changing its modification time
+        if (lastModified == 0 || System.currentTimeMillis() - lastModified
+            <= FILE_UTILS.getFileTimestampGranularity()) {
+            size = -1;
+        }
+        put(new Entry(file.getAbsolutePath(), String.valueOf(value),
+                      size, lastModified));
+    }
+
+    /**
+     * Returns an iterator over the keys in the cache.
+     * @return An iterator over the keys.
+     */
+    public synchronized Iterator iterator() {
+        if (!cacheLoaded) {
+            load();
+        }
+        return new ArrayList(entries.keySet()).iterator();
+    }
+
+
+    // -----  additional  -----
+
+
+    /**
+     * Override Object.toString().
+     * @return information about this cache
+     */
+    public synchronized String toString() {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<LogfileCache:");
+        buf.append("cachefile=").append(cachefile);
+        buf.append(";noOfEntries=").append(entries.size());
+        buf.append(">");
+        return buf.toString();
+    }
+
+
+    // -----  internal  -----
+
+
+    private Entry getEntry(String key) {
+        if (!cacheLoaded) {
+            load();
+        }
+        return (Entry) entries.get(key);
+    }
+
+    private void put(Entry e) {
+        if (!cacheLoaded) {
+            load();
+        }
+        entries.put(e.key, e);
+        dirty.put(e.key, e);
+    }
+
+    /**
+     * Appends the dirty entries to the file or rewrites it, must hold
+     * the lock for the file.
+     */
+    private void write(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileLock lock = raf.getChannel().lock();
+            try {
+                int newRecords = records + dirty.size();
+                if (compact || raf.length() == 0
+                    || (newRecords >= MIN_RECORDS_TO_COMPACT
+                        && newRecords > 2 * entries.size())) {
+                    // pick up what others have written since we loaded
+                    Map current = new HashMap();
+                    raf.seek(0);
+                    read(new BufferedInputStream(Channels.newInputStream(
+                                                     raf.getChannel())),
+                         current);
+                    Map merged = new HashMap(entries);
+                    merged.putAll(current);
+                    merged.putAll(dirty);
+                    entries = merged;
+                    raf.seek(0);
+                    raf.write(toBytes(merged, true));
+                    raf.setLength(raf.getFilePointer());
+                    records = merged.size();
+                    compact = false;
+                } else {
+                    raf.seek(raf.length());
+                    raf.write(toBytes(dirty, false));
+                    records = newRecords;
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads all records.
+     * @return the number of records read, negative if the file is
+     * not a complete cache file
+     */
+    private static int read(InputStream is, Map into) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        int count = 0;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return -1;
+            }
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    return count;
+                }
+                if (type != PUT) {
+                    return -count - 1;
+                }
+                String key = in.readUTF();
+                String value = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                into.put(key, new Entry(key, value, size, lastModified));
+                count++;
+            }
+        } catch (EOFException e) {
+            return -count - 1;
+        }
+    }
+
+    private static byte[] toBytes(Map entries, boolean withHeader)
+        throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        if (withHeader) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        for (Iterator i = entries.values().iterator(); i.hasNext();) {
+            Entry e = (Entry) i.next();
+            out.write(PUT);
+            out.writeUTF(e.key);
+            out.writeUTF(e.value);
+            out.writeLong(e.size);
+            out.writeLong(e.lastModified);
+        }
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    private static Object getLock(File file) {
+        String path = file.getAbsolutePath();
+        synchronized (LOCKS) {
+            Object lock = LOCKS.get(path);
+            if (lock == null) {
+                lock = new Object();
+                LOCKS.put(path, lock);
+            }
+            return lock;
+        }
+    }
+
+    /** A value and the state of the file it has been computed for. */
+    private static class Entry {
+        private final String key;
+        private final String value;
+        /** size of the file, negative if the state is unknown */
+        private final long size;
+        private final long lastModified;
+
+        Entry(String key, String value, long size, long lastModified) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -283,16 +283,20 @@ public class ModifiedSelector extends BaseExtendSelector
         //
         Project p = getProject();
         String filename = "cache.properties";
+        String logfilename = "cache.log";
         File cachefile = null;
+        File logfile = null;
         if (p != null) {
             // normal use inside Ant
             cachefile = new File(p.getBaseDir(), filename);
+            logfile = new File(p.getBaseDir(), logfilename);
 
             // set self as a BuildListener to delay cachefile saves
             getProject().addBuildListener(this);
         } else {
             // no reference to project - e.g. during normal JUnit tests
             cachefile = new File(filename);
+            logfile = new File(logfilename);
             setDelayUpdate(false);
         }
         Cache      defaultCache      = new PropertiesfileCache(cachefile);
@@ -322,6 +326,8 @@ public class ModifiedSelector extends BaseExtendSelector
                 algorithm = new DigestAlgorithm();
             } else if ("checksum".equals(algoName.getValue())) {
                 algorithm = new ChecksumAlgorithm();
+            } else if ("fasthash".equals(algoName.getValue())) {
+                algorithm = new FastHashAlgorithm();
             }
         } else {
             if (algorithmClass != null) {
@@ -341,6 +347,8 @@ public class ModifiedSelector extends BaseExtendSelector
             // use Cache defined via name
             if ("propertyfile".equals(cacheName.getValue())) {
                 cache = new PropertiesfileCache();
+            } else if ("logfile".equals(cacheName.getValue())) {
+                cache = new LogfileCache(logfile);
             }
         } else {
             if (cacheClass != null) {
@@ -501,15 +509,27 @@ public class ModifiedSelector extends BaseExtendSelector
             return selectDirectories;
         }
 
+        // Files that haven't been touched don't need to be read
+        FileStateCache stateCache = (cache instanceof FileStateCache)
+            ? (FileStateCache) cache : null;
+        if (stateCache != null && stateCache.getIfUnchanged(f) != null) {
+            return false;
+        }
+
         // Get the values and do the comparison
         String cachedValue = String.valueOf(cache.get(f.getAbsolutePath()));
         String newValue = algorithm.getValue(f);
 
         boolean rv = (comparator.compare(cachedValue, newValue) != 0);
 
-        // Maybe update the cache
-        if (update && rv) {
-            cache.put(f.getAbsolutePath(), newValue);
+        // Maybe update the cache, record the new state of touched
+        // but unchanged files as well
+        if (update && (rv || stateCache != null)) {
+            if (stateCache != null) {
+                stateCache.put(f, newValue);
+            } else {
+                cache.put(f.getAbsolutePath(), newValue);
+            }
             setModified(getModified() + 1);
             if (!getDelayUpdate()) {
                 saveCache();
@@ -898,7 +918,7 @@ public class ModifiedSelector extends BaseExtendSelector
 
     /**
      * The enumerated type for cache.
-     * The values are "propertyfile".
+     * The values are "propertyfile" and "logfile".
      */
     public static class CacheName extends EnumeratedAttribute {
         /**
@@ -906,7 +926,7 @@ public class ModifiedSelector extends BaseExtendSelector
          * @see EnumeratedAttribute#getValues()
          */
         public String[] getValues() {
-            return new String[] {"propertyfile" };
+            return new String[] {"propertyfile", "logfile" };
         }
     }
 
@@ -928,7 +948,7 @@ public class ModifiedSelector extends BaseExtendSelector
 
     /**
      * The enumerated type for algorithm.
-     * The values are "hashValue", "digest" and "checksum".
+     * The values are "hashValue", "digest", "checksum" and "fasthash".
      */
     public static class AlgorithmName extends EnumeratedAttribute {
         /**
@@ -936,7 +956,7 @@ public class ModifiedSelector extends BaseExtendSelector
          * @see EnumeratedAttribute#getValues()
          */
         public String[] getValues() {
-            return new String[] {"hashvalue", "digest", "checksum" };
+            return new String[] {"hashvalue", "digest", "checksum", "fasthash" };
         }
     }
 
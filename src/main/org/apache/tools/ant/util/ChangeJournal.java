@@ -0,0 +1,381 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+
+/**
+ * Remembers the size and modification time of the source files a
+ * task has found to be up to date together with the names of their
+ * target files, so the next run of the same task can tell unchanged
+ * sources from changed, added and removed ones without looking at
+ * the targets.
+ *
+ * <p>A source is considered unchanged if its size and modification
+ * time are the same as recorded, it is still mapped to the same
+ * target files and the modification times of the directories holding
+ * these target files are the same as recorded.  The latter catches
+ * deleted or replaced targets while only requiring one stat per
+ * target directory instead of one per target file.  Target files that
+ * have been modified in place are not noticed.</p>
+ *
+ * <p>Each task invocation - identified by the task's location, the
+ * source and destination directories and the mapper - gets its own
+ * journal file in the directory given by the {@link
+ * MagicNames#CHANGE_JOURNAL_DIR ant.change.journal.dir} property.
+ * If the property is not set there is no journal at all.</p>
+ *
+ * @see SourceFileScanner
+ * @since Ant 1.8.3
+ */
+public final class ChangeJournal {
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    private static final int MAGIC = 0x416e744a;
+    private static final int VERSION = 1;
+
+    /** Recorded for directories that may still change in the same tick. */
+    private static final long RACY = Long.MIN_VALUE;
+
+    private static final Metrics.Counter UNCHANGED = Metrics.getMetrics()
+        .getCounter("ant_change_journal_unchanged_total",
+                    "Source files found unchanged in a change journal.");
+
+    private final Task task;
+    private final File file;
+    private final File destDir;
+    private final long granularity;
+
+    /** Entries of the last run by source name. */
+    private final Map previous = new HashMap();
+    /** Modification times of target directories seen in this run. */
+    private final Map currentDirs = new HashMap();
+    /** Entries recorded in this run. */
+    private final List current = new ArrayList();
+
+    private int unchanged;
+    private int changed;
+    private int added;
+
+    private ChangeJournal(Task task, File file, File destDir,
+                          long granularity) {
+        this.task = task;
+        this.file = file;
+        this.destDir = destDir;
+        this.granularity = granularity;
+    }
+
+    /**
+     * Creates the journal of a task invocation and reads the entries
+     * of the last run.
+     * @param task the task using the journal.
+     * @param srcDir the directory holding the source files.
+     * @param destDir the directory holding the target files, may be null.
+     * @param mapper maps source to target file names.
+     * @param granularity the file system's timestamp granularity.
+     * @return null unless the {@link MagicNames#CHANGE_JOURNAL_DIR
+     * ant.change.journal.dir} property is set.
+     */
+    public static ChangeJournal getJournal(Task task, File srcDir,
+                                           File destDir, FileNameMapper mapper,
+                                           long granularity) {
+        if (task == null || task.getProject() == null) {
+            return null;
+        }
+        Project project = task.getProject();
+        String dir = project.getProperty(MagicNames.CHANGE_JOURNAL_DIR);
+        if (dir == null) {
+            return null;
+        }
+        String key = task.getTaskName() + "\u0000" + task.getLocation()
+            + "\u0000" + (task.getOwningTarget() == null
+                          ? "" : task.getOwningTarget().getName())
+            + "\u0000" + srcDir + "\u0000" + destDir
+            + "\u0000" + mapper.getClass().getName();
+        FastHash hash = FastHash.getInstance(FastHash.XXH64);
+        try {
+            byte[] b = key.getBytes("UTF-8");
+            hash.update(b, 0, b.length);
+        } catch (UnsupportedEncodingException e) {
+            // cannot happen, UTF-8 is always supported
+            throw new IllegalStateException(e.toString());
+        }
+        ChangeJournal journal =
+            new ChangeJournal(task, new File(project.resolveFile(dir),
+                                             FastHash.toHex(hash.digest())
+                                             + ".journal"),
+                              destDir, granularity);
+        journal.load();
+        return journal;
+    }
+
+    /**
+     * Whether a source file is the same as in the last run and its
+     * targets have been up to date then.  Records the file for the
+     * next run if it is.
+     * @param name the name of the source file.
+     * @param size the current size of the source file.
+     * @param lastModified the current modification time of the source file.
+     * @param targets the names of the target files.
+     * @return true if the source file doesn't need to be compared
+     * to its targets.
+     */
+    public boolean isUnchanged(String name, long size, long lastModified,
+                               String[] targets) {
+        Entry e = (Entry) previous.get(name);
+        if (e == null) {
+            added++;
+            return false;
+        }
+        if (e.size != size || e.lastModified != lastModified
+            || e.targets.length != targets.length) {
+            changed++;
+            return false;
+        }
+        for (int i = 0; i < targets.length; i++) {
+            if (!e.targets[i].equals(targets[i])
+                || e.dirs[i] != getDirLastModified(targets[i])) {
+                changed++;
+                return false;
+            }
+        }
+        unchanged++;
+        UNCHANGED.increment();
+        current.add(e);
+        return true;
+    }
+
+    /**
+     * Records a source file whose targets are up to date.  Files
+     * that have been modified too recently to be sure any further
+     * modification would change their timestamp are not recorded.
+     * @param name the name of the source file.
+     * @param size the size of the source file.
+     * @param lastModified the modification time of the source file.
+     * @param targets the names of the target files.
+     */
+    public void record(String name, long size, long lastModified,
+                       String[] targets) {
+        if (isRacy(lastModified)) {
+            return;
+        }
+        Entry e = new Entry(name, size, lastModified, targets);
+        for (int i = 0; i < targets.length; i++) {
+            e.dirs[i] = getDirLastModified(targets[i]);
+            if (e.dirs[i] == RACY) {
+                return;
+            }
+        }
+        current.add(e);
+    }
+
+    /**
+     * Replaces the journal file with the entries of this run.
+     * Problems writing the file are logged, the next run will then
+     * look at all targets again.
+     */
+    public void store() {
+        task.log("Change journal: " + unchanged + " unchanged, "
+                 + changed + " changed, " + added + " added, "
+                 + (previous.size() - unchanged - changed)
+                 + " removed source files.", Project.MSG_VERBOSE);
+        File dir = file.getParentFile();
+        File tmp = null;
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Failed to create directory " + dir);
+            }
+            tmp = FILE_UTILS.createTempFile("journal", ".tmp", dir,
+                                            false, true);
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                write(out);
+            } finally {
+                FileUtils.close(out);
+            }
+            FILE_UTILS.rename(tmp, file);
+        } catch (IOException e) {
+            task.log("Failed to write change journal " + file + ": "
+                     + e.getMessage(), Project.MSG_WARN);
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Format: magic, version, the table of target directories with
+     * their modification times and the source entries which refer to
+     * the directories of their targets by index.
+     */
+    private void write(DataOutputStream out) throws IOException {
+        Map dirIndex = new HashMap();
+        List dirs = new ArrayList();
+        for (Iterator i = current.iterator(); i.hasNext();) {
+            Entry e = (Entry) i.next();
+            for (int j = 0; j < e.targets.length; j++) {
+                String dir = getDir(e.targets[j]);
+                if (!dirIndex.containsKey(dir)) {
+                    dirIndex.put(dir, new Integer(dirs.size()));
+                    dirs.add(dir);
+                }
+            }
+        }
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(dirs.size());
+        for (Iterator i = dirs.iterator(); i.hasNext();) {
+            String dir = (String) i.next();
+            out.writeUTF(dir);
+            out.writeLong(((Long) currentDirs.get(dir)).longValue());
+        }
+        out.writeInt(current.size());
+        for (Iterator i = current.iterator(); i.hasNext();) {
+            Entry e = (Entry) i.next();
+            out.writeUTF(e.name);
+            out.writeLong(e.size);
+            out.writeLong(e.lastModified);
+            out.writeInt(e.targets.length);
+            for (int j = 0; j < e.targets.length; j++) {
+                out.writeUTF(e.targets[j]);
+                out.writeInt(((Integer) dirIndex.get(getDir(e.targets[j])))
+                             .intValue());
+            }
+        }
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        long max = file.length();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                task.log("Ignoring change journal " + file
+                         + " written by a different version of Ant.",
+                         Project.MSG_VERBOSE);
+                return;
+            }
+            long[] dirs = new long[readCount(in, max)];
+            for (int i = 0; i < dirs.length; i++) {
+                in.readUTF();
+                dirs[i] = in.readLong();
+            }
+            for (int i = readCount(in, max); i > 0; i--) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                Entry e = new Entry(name, size, lastModified,
+                                    new String[readCount(in, max)]);
+                for (int j = 0; j < e.targets.length; j++) {
+                    e.targets[j] = in.readUTF();
+                    e.dirs[j] = dirs[in.readInt()];
+                }
+                previous.put(name, e);
+            }
+        } catch (IOException e) {
+            previous.clear();
+            task.log("Ignoring unreadable change journal " + file + ": "
+                     + e.getMessage(), Project.MSG_VERBOSE);
+        } catch (IndexOutOfBoundsException e) {
+            previous.clear();
+            task.log("Ignoring corrupt change journal " + file,
+                     Project.MSG_VERBOSE);
+        } finally {
+            FileUtils.close(in);
+        }
+    }
+
+    /**
+     * Reads the number of elements of an array, each element takes
+     * at least one byte of the file.
+     */
+    private static int readCount(DataInputStream in, long max)
+        throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > max) {
+            throw new IOException("corrupt count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Modification time of the directory holding a target, each
+     * directory is only looked at once per run.
+     */
+    private long getDirLastModified(String target) {
+        String dir = getDir(target);
+        Long l = (Long) currentDirs.get(dir);
+        if (l == null) {
+            long t = new File(dir).lastModified();
+            l = new Long(t == 0 || isRacy(t) ? RACY : t);
+            currentDirs.put(dir, l);
+        }
+        return l.longValue();
+    }
+
+    private String getDir(String target) {
+        File parent = FILE_UTILS.resolveFile(destDir, target).getParentFile();
+        return parent == null ? "" : parent.getPath();
+    }
+
+    private boolean isRacy(long lastModified) {
+        return System.currentTimeMillis() - lastModified
+            <= Math.max(granularity, 1);
+    }
+
+    private static final class Entry {
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final String[] targets;
+        private final long[] dirs;
+
+        private Entry(String name, long size, long lastModified,
+                      String[] targets) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.targets = targets;
+            dirs = new long[targets.length];
+        }
+    }
+}
@@ -17,11 +17,20 @@
  */
 package org.apache.tools.ant.util;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.apache.tools.ant.AntClassLoader;
+import org.apache.tools.ant.BuildEvent;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.ProjectComponent;
 import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.SubBuildListener;
 import org.apache.tools.ant.types.Path;
 import org.apache.tools.ant.types.Reference;
 
@@ -180,7 +189,11 @@ public class ClasspathUtils {
             cl = (ClassLoader) reusedLoader;
         }
         if (cl == null) {
-            cl = getUniqueClassLoaderForPath(p, path, reverseLoader);
+            if (Project.toBoolean(p.getProperty(MagicNames.CLASSLOADER_CACHE))) {
+                cl = getSharedClassLoaderForPath(p, path, reverseLoader);
+            } else {
+                cl = getUniqueClassLoaderForPath(p, path, reverseLoader);
+            }
             if (loaderId != null && reuseLoader) {
                 p.addReference(loaderId, cl);
             }
@@ -211,6 +224,205 @@ public class ClasspathUtils {
         return acl;
     }
 
+    /**
+     * Gets a classloader for the path that is shared with all other
+     * projects inside the VM asking for a loader of the same jars
+     * with the same parent.
+     *
+     * <p>The loader is kept while any project using it is running
+     * and a few more unused loaders are kept around for later
+     * builds.  Paths containing directories always get a new loader
+     * as the classes inside them may change.</p>
+     *
+     * @param p             Ant Project where the handled components are living in.
+     * @param path          the classpath for this loader
+     * @param reverseLoader if set to true this new loader will take
+     *                      precedence over its parent (which is contra the regular
+     *                      classloader behaviour)
+     * @return a class loader for the path.
+     * @since Ant 1.8.3
+     */
+    public static ClassLoader getSharedClassLoaderForPath(Project p, Path path,
+                                                          boolean reverseLoader) {
+        String key = getSharedLoaderKey(p, path, reverseLoader);
+        if (key == null) {
+            return getUniqueClassLoaderForPath(p, path, reverseLoader);
+        }
+        SharedLoader shared;
+        synchronized (SHARED_LOADERS) {
+            shared = (SharedLoader) SHARED_LOADERS.get(key);
+            if (shared == null) {
+                shared = new SharedLoader(
+                    createSharedLoader(p, path, reverseLoader));
+                SHARED_LOADERS.put(key, shared);
+            } else {
+                p.log("Sharing class loader for " + path, Project.MSG_VERBOSE);
+            }
+        }
+        LoaderReleaser.get(p).acquire(shared);
+        return shared.loader;
+    }
+
+    /**
+     * Creates a loader that isn't bound to the project asking for
+     * it, it would otherwise close its jars when that project's build
+     * finishes while other projects may still use it.
+     */
+    private static AntClassLoader createSharedLoader(Project p, Path path,
+                                                     boolean reverseLoader) {
+        Path resolved = new Path(null);
+        String[] elements = path.concatSystemClasspath("ignore").list();
+        for (int i = 0; i < elements.length; i++) {
+            resolved.setLocation(p.resolveFile(elements[i]));
+        }
+        AntClassLoader acl =
+            AntClassLoader.newAntClassLoader(Project.class.getClassLoader(),
+                                             null, resolved, true);
+        if (reverseLoader) {
+            acl.setParentFirst(false);
+            acl.addJavaLibraries();
+        }
+        return acl;
+    }
+
+    /**
+     * Identifies a shared loader by its parent, lookup order and the
+     * names, sizes and timestamps of the jars on its path.
+     * @return null if the path contains a directory.
+     */
+    private static String getSharedLoaderKey(Project p, Path path,
+                                             boolean reverseLoader) {
+        StringBuffer key = new StringBuffer();
+        key.append(System.identityHashCode(Project.class.getClassLoader()))
+            .append(reverseLoader ? 'r' : 'n');
+        String[] elements = path.concatSystemClasspath("ignore").list();
+        for (int i = 0; i < elements.length; i++) {
+            File f = p.resolveFile(elements[i]);
+            if (f.isDirectory()) {
+                return null;
+            }
+            key.append(File.pathSeparatorChar).append(f.getAbsolutePath())
+                .append('@').append(f.lastModified())
+                .append('-').append(f.length());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Number of shared loaders no longer used by any project that are
+     * kept for later builds.
+     */
+    private static final int MAX_UNUSED_LOADERS = 16;
+
+    /**
+     * Shared loaders, unused ones in least recently used order.
+     */
+    private static final Map SHARED_LOADERS = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     * A class loader and the number of projects using it.
+     */
+    private static final class SharedLoader {
+        private final ClassLoader loader;
+        private int users;
+
+        private SharedLoader(ClassLoader loader) {
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * Releases the shared loaders a project has been using once its
+     * build has finished.
+     */
+    private static final class LoaderReleaser implements SubBuildListener {
+        private static final String REFID = "ant.ClasspathUtils.sharedLoaders";
+
+        private final Project project;
+        private final List acquired = new ArrayList();
+
+        private LoaderReleaser(Project project) {
+            this.project = project;
+        }
+
+        private static synchronized LoaderReleaser get(Project p) {
+            LoaderReleaser r = (LoaderReleaser) p.getReference(REFID);
+            if (r == null) {
+                r = new LoaderReleaser(p);
+                p.addReference(REFID, r);
+                p.addBuildListener(r);
+            }
+            return r;
+        }
+
+        private void acquire(SharedLoader shared) {
+            synchronized (SHARED_LOADERS) {
+                if (!acquired.contains(shared)) {
+                    acquired.add(shared);
+                    shared.users++;
+                }
+            }
+        }
+
+        private void release() {
+            project.removeBuildListener(this);
+            synchronized (SHARED_LOADERS) {
+                for (Iterator i = acquired.iterator(); i.hasNext();) {
+                    SharedLoader shared = (SharedLoader) i.next();
+                    if (--shared.users == 0 && shared.loader instanceof AntClassLoader) {
+                        // closes the jars, they are reopened on demand
+                        ((AntClassLoader) shared.loader).cleanup();
+                    }
+                }
+                acquired.clear();
+                int unused = 0;
+                for (Iterator i = SHARED_LOADERS.values().iterator(); i.hasNext();) {
+                    if (((SharedLoader) i.next()).users == 0) {
+                        unused++;
+                    }
+                }
+                for (Iterator i = SHARED_LOADERS.values().iterator();
+                     unused > MAX_UNUSED_LOADERS && i.hasNext();) {
+                    if (((SharedLoader) i.next()).users == 0) {
+                        i.remove();
+                        unused--;
+                    }
+                }
+            }
+        }
+
+        public void buildFinished(BuildEvent event) {
+            release();
+        }
+
+        public void subBuildFinished(BuildEvent event) {
+            if (event.getProject() == project) {
+                release();
+            }
+        }
+
+        public void buildStarted(BuildEvent event) {
+        }
+
+        public void subBuildStarted(BuildEvent event) {
+        }
+
+        public void targetStarted(BuildEvent event) {
+        }
+
+        public void targetFinished(BuildEvent event) {
+        }
+
+        public void taskStarted(BuildEvent event) {
+        }
+
+        public void taskFinished(BuildEvent event) {
+        }
+
+        public void messageLogged(BuildEvent event) {
+        }
+    }
+
     /**
      * Creates a fresh object instance of the specified classname.
      *
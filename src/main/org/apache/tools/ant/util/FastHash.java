@@ -0,0 +1,483 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Non-cryptographic hash functions that are a lot faster than
+ * MessageDigest's MD5 or SHA and good enough to tell whether the
+ * content of a file has changed.
+ *
+ * <p>Supported algorithms are</p>
+ * <ul>
+ *   <li>XXH64 - the 64 bit xxHash, the digest is the big endian
+ *   (canonical) representation of the hash.</li>
+ *   <li>MURMUR3_128 - the 128 bit x64 variant of MurmurHash3, the
+ *   digest contains both halves of the hash in little endian
+ *   order.</li>
+ * </ul>
+ *
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @since Ant 1.8.3
+ */
+public abstract class FastHash {
+
+    /** Name of the 64 bit xxHash algorithm. */
+    public static final String XXH64 = "XXH64";
+
+    /** Name of the 128 bit MurmurHash3 algorithm. */
+    public static final String MURMUR3_128 = "MURMUR3_128";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Number of file hashes remembered by contentEquals. */
+    private static final int MAX_REMEMBERED_HASHES = 1000;
+
+    /** Hashes of files that have been compared, keyed by algorithm and path. */
+    private static final Map HASHES = new LinkedHashMap() {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > MAX_REMEMBERED_HASHES;
+            }
+        };
+
+    private static final FileUtils FILE_UTILS = FileUtils.getFileUtils();
+
+    /** input not processed yet as it doesn't fill a block */
+    private final byte[] block;
+    private int blockLength = 0;
+    private long total = 0;
+
+    /**
+     * @param blockSize number of bytes processed by one step of
+     * the algorithm.
+     */
+    private FastHash(int blockSize) {
+        block = new byte[blockSize];
+    }
+
+    /**
+     * Whether the algorithm is known.
+     * @param algorithm the name of the algorithm, case doesn't matter.
+     * @return true if {@link #getInstance getInstance} supports the
+     * algorithm.
+     */
+    public static boolean isSupported(String algorithm) {
+        String name = normalize(algorithm);
+        return XXH64.equals(name) || MURMUR3_128.equals(name);
+    }
+
+    /**
+     * Creates a hash for the given algorithm.
+     * @param algorithm the name of the algorithm, case doesn't matter.
+     * @return a new hash.
+     * @throws IllegalArgumentException if the algorithm is not supported.
+     */
+    public static FastHash getInstance(String algorithm) {
+        String name = normalize(algorithm);
+        if (XXH64.equals(name)) {
+            return new XXHash64();
+        }
+        if (MURMUR3_128.equals(name)) {
+            return new Murmur3Hash128();
+        }
+        throw new IllegalArgumentException("Unknown hash algorithm "
+                                           + algorithm);
+    }
+
+    /**
+     * Adds bytes to the hash.
+     * @param b the bytes.
+     * @param off offset of the first byte to add.
+     * @param len number of bytes to add.
+     */
+    public void update(byte[] b, int off, int len) {
+        int end = off + len;
+        total += len;
+        if (blockLength > 0) {
+            int n = Math.min(block.length - blockLength, len);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            if (blockLength < block.length) {
+                return;
+            }
+            processBlock(block, 0);
+            blockLength = 0;
+        }
+        for (; off + block.length <= end; off += block.length) {
+            processBlock(b, off);
+        }
+        if (off < end) {
+            System.arraycopy(b, off, block, 0, end - off);
+            blockLength = end - off;
+        }
+    }
+
+    /**
+     * Adds all bytes of a stream to the hash, doesn't close the
+     * stream.
+     * @param in the stream.
+     * @throws IOException on error.
+     */
+    public void update(InputStream in) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            update(buf, 0, n);
+        }
+    }
+
+    /**
+     * Completes the computation of the hash and resets it.
+     * @return the hash.
+     */
+    public byte[] digest() {
+        byte[] result = finish(block, blockLength, total);
+        reset();
+        return result;
+    }
+
+    /** Resets the hash to its initial state. */
+    public void reset() {
+        blockLength = 0;
+        total = 0;
+        init();
+    }
+
+    /**
+     * Computes the hash of a file.
+     * @param file the file.
+     * @param algorithm the name of the algorithm.
+     * @return the hash as hex string.
+     * @throws IOException on error.
+     */
+    public static String hash(File file, String algorithm)
+        throws IOException {
+        FastHash hash = getInstance(algorithm);
+        InputStream in = new FileInputStream(file);
+        try {
+            hash.update(in);
+        } finally {
+            FileUtils.close(in);
+        }
+        return toHex(hash.digest());
+    }
+
+    /**
+     * Compares the contents of two files by their hashes.
+     *
+     * <p>Files of different length are different without reading
+     * them.  The hashes of files that have not been modified recently
+     * are remembered, so a file that is compared several times - to
+     * different files or in different tasks - is only read once.</p>
+     *
+     * @param f1 the file whose content is to be compared.
+     * @param f2 the other file whose content is to be compared.
+     * @param algorithm the name of the algorithm.
+     * @return true if the hashes of the content of the files are
+     * equal.
+     * @throws IOException if the files cannot be read.
+     */
+    public static boolean contentEquals(File f1, File f2, String algorithm)
+        throws IOException {
+        if (f1.exists() != f2.exists()) {
+            return false;
+        }
+        if (!f1.exists()) {
+            // two not existing files are equal
+            return true;
+        }
+        if (f1.isDirectory() || f2.isDirectory()) {
+            // don't want to compare directory contents for now
+            return f1.isDirectory() && f2.isDirectory();
+        }
+        if (f1.length() != f2.length()) {
+            return false;
+        }
+        if (FILE_UTILS.fileNameEquals(f1, f2)) {
+            // same filename => true
+            return true;
+        }
+        String name = normalize(algorithm);
+        return rememberedHash(f1, name).equals(rememberedHash(f2, name));
+    }
+
+    /**
+     * Hex representation of a hash.
+     * @param hash the hash.
+     * @return the bytes of the hash as two lower case hex digits each.
+     */
+    public static String toHex(byte[] hash) {
+        StringBuffer sb = new StringBuffer(2 * hash.length);
+        for (int i = 0; i < hash.length; i++) {
+            String hexStr = Integer.toHexString(BYTE_MASK & hash[i]);
+            if (hexStr.length() < 2) {
+                sb.append("0");
+            }
+            sb.append(hexStr);
+        }
+        return sb.toString();
+    }
+
+    private static String rememberedHash(File f, String algorithm)
+        throws IOException {
+        String key = algorithm + ":" + f.getAbsolutePath();
+        long length = f.length();
+        long lastModified = f.lastModified();
+        synchronized (HASHES) {
+            Remembered r = (Remembered) HASHES.get(key);
+            if (r != null && r.length == length
+                && r.lastModified == lastModified) {
+                return r.hash;
+            }
+        }
+        String hash = hash(f, algorithm);
+        // a file modified within the timestamp granularity may be
+        // modified again without changing its modification time
+        if (lastModified != 0 && System.currentTimeMillis() - lastModified
+            > FILE_UTILS.getFileTimestampGranularity()) {
+            synchronized (HASHES) {
+                HASHES.put(key, new Remembered(length, lastModified, hash));
+            }
+        }
+        return hash;
+    }
+
+    private static String normalize(String algorithm) {
+        return algorithm == null ? null
+            : algorithm.toUpperCase(Locale.ENGLISH);
+    }
+
+    /** Sets the initial state. */
+    protected abstract void init();
+
+    /**
+     * Processes a complete block.
+     * @param b array holding the block.
+     * @param off offset of the block.
+     */
+    protected abstract void processBlock(byte[] b, int off);
+
+    /**
+     * Processes the remaining bytes and computes the hash.
+     * @param b array holding the remaining bytes.
+     * @param len number of remaining bytes.
+     * @param totalLength number of bytes that have been added in total.
+     * @return the hash
+     */
+    protected abstract byte[] finish(byte[] b, int len, long totalLength);
+
+    private static long getLong(byte[] b, int off) {
+        return (b[off] & 0xFFL)
+            | (b[off + 1] & 0xFFL) << 8
+            | (b[off + 2] & 0xFFL) << 16
+            | (b[off + 3] & 0xFFL) << 24
+            | (b[off + 4] & 0xFFL) << 32
+            | (b[off + 5] & 0xFFL) << 40
+            | (b[off + 6] & 0xFFL) << 48
+            | (b[off + 7] & 0xFFL) << 56;
+    }
+
+    private static long getInt(byte[] b, int off) {
+        return (b[off] & 0xFFL)
+            | (b[off + 1] & 0xFFL) << 8
+            | (b[off + 2] & 0xFFL) << 16
+            | (b[off + 3] & 0xFFL) << 24;
+    }
+
+    private static long rotl(long l, int bits) {
+        return (l << bits) | (l >>> (64 - bits));
+    }
+
+    private static void putLong(byte[] b, int off, long l, boolean bigEndian) {
+        for (int i = 0; i < 8; i++) {
+            b[off + (bigEndian ? 7 - i : i)] = (byte) (l >>> (8 * i));
+        }
+    }
+
+    /** The hash of a file and the state it has been computed for. */
+    private static final class Remembered {
+        private final long length;
+        private final long lastModified;
+        private final String hash;
+
+        Remembered(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    /** xxHash, 64 bit variant with seed 0. */
+    private static final class XXHash64 extends FastHash {
+        private static final long P1 = 0x9E3779B185EBCA87L;
+        private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+        private static final long P3 = 0x165667B19E3779F9L;
+        private static final long P4 = 0x85EBCA77C2B2AE63L;
+        private static final long P5 = 0x27D4EB2F165667C5L;
+
+        private long v1, v2, v3, v4;
+
+        XXHash64() {
+            super(32);
+            init();
+        }
+
+        protected void init() {
+            v1 = P1 + P2;
+            v2 = P2;
+            v3 = 0;
+            v4 = -P1;
+        }
+
+        protected void processBlock(byte[] b, int off) {
+            v1 = round(v1, getLong(b, off));
+            v2 = round(v2, getLong(b, off + 8));
+            v3 = round(v3, getLong(b, off + 16));
+            v4 = round(v4, getLong(b, off + 24));
+        }
+
+        protected byte[] finish(byte[] b, int len, long totalLength) {
+            long h;
+            if (totalLength >= 32) {
+                h = rotl(v1, 1) + rotl(v2, 7) + rotl(v3, 12) + rotl(v4, 18);
+                h = merge(h, v1);
+                h = merge(h, v2);
+                h = merge(h, v3);
+                h = merge(h, v4);
+            } else {
+                h = P5;
+            }
+            h += totalLength;
+            int off = 0;
+            for (; off + 8 <= len; off += 8) {
+                h ^= round(0, getLong(b, off));
+                h = rotl(h, 27) * P1 + P4;
+            }
+            if (off + 4 <= len) {
+                h ^= getInt(b, off) * P1;
+                h = rotl(h, 23) * P2 + P3;
+                off += 4;
+            }
+            for (; off < len; off++) {
+                h ^= (b[off] & 0xFFL) * P5;
+                h = rotl(h, 11) * P1;
+            }
+            h ^= h >>> 33;
+            h *= P2;
+            h ^= h >>> 29;
+            h *= P3;
+            h ^= h >>> 32;
+
+            byte[] result = new byte[8];
+            putLong(result, 0, h, true);
+            return result;
+        }
+
+        private static long round(long acc, long input) {
+            return rotl(acc + input * P2, 31) * P1;
+        }
+
+        private static long merge(long acc, long val) {
+            return (acc ^ round(0, val)) * P1 + P4;
+        }
+    }
+
+    /** MurmurHash3, 128 bit x64 variant with seed 0. */
+    private static final class Murmur3Hash128 extends FastHash {
+        private static final long C1 = 0x87C37B91114253D5L;
+        private static final long C2 = 0x4CF5AD432745937FL;
+
+        private long h1, h2;
+
+        Murmur3Hash128() {
+            super(16);
+            init();
+        }
+
+        protected void init() {
+            h1 = 0;
+            h2 = 0;
+        }
+
+        protected void processBlock(byte[] b, int off) {
+            h1 ^= mixK1(getLong(b, off));
+            h1 = rotl(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52DCE729;
+            h2 ^= mixK2(getLong(b, off + 8));
+            h2 = rotl(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495AB5;
+        }
+
+        protected byte[] finish(byte[] b, int len, long totalLength) {
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = len - 1; i >= 8; i--) {
+                k2 = k2 << 8 | (b[i] & 0xFFL);
+            }
+            for (int i = Math.min(len, 8) - 1; i >= 0; i--) {
+                k1 = k1 << 8 | (b[i] & 0xFFL);
+            }
+            if (len > 8) {
+                h2 ^= mixK2(k2);
+            }
+            if (len > 0) {
+                h1 ^= mixK1(k1);
+            }
+            h1 ^= totalLength;
+            h2 ^= totalLength;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix(h1);
+            h2 = fmix(h2);
+            h1 += h2;
+            h2 += h1;
+
+            byte[] result = new byte[16];
+            putLong(result, 0, h1, false);
+            putLong(result, 8, h2, false);
+            return result;
+        }
+
+        private static long mixK1(long k1) {
+            return rotl(k1 * C1, 31) * C2;
+        }
+
+        private static long mixK2(long k2) {
+            return rotl(k2 * C2, 33) * C1;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xFF51AFD7ED558CCDL;
+            k ^= k >>> 33;
+            k *= 0xC4CEB9FE1A85EC53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
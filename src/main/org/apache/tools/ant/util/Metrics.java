@@ -0,0 +1,424 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counters and histograms Ant's core classes update while a build is
+ * running, shared by all projects of the VM.
+ *
+ * <p>Collection is off by default, updating a metric then only costs
+ * a check of a volatile flag.  It is only switched on by the
+ * <code>ant.metrics</code> property, the <code>&lt;metrics&gt;</code>
+ * task merely writes and optionally resets the collected metrics and
+ * warns if collection is off.</p>
+ *
+ * <p>Metrics follow the naming conventions of Prometheus, durations
+ * are recorded in nanoseconds.</p>
+ *
+ * @since Ant 1.8.3
+ */
+public final class Metrics {
+
+    private static final Metrics METRICS = new Metrics();
+
+    private static volatile boolean enabled = false;
+
+    private static final Method NANO_TIME;
+
+    static {
+        Method nanoTime = null;
+        try {
+            nanoTime = System.class.getMethod("nanoTime", null);
+        } catch (Exception e) {
+            // Java 1.4, use currentTimeMillis
+        }
+        NANO_TIME = nanoTime;
+    }
+
+    /** name to Counter or Histogram, sorted for output */
+    private final Map metrics = new TreeMap();
+
+    private Metrics() {
+    }
+
+    /**
+     * The metrics of this VM.
+     * @return the metrics registry.
+     */
+    public static Metrics getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * Whether metrics are collected.
+     * @return true if metrics are updated.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches collection of metrics on or off.
+     * @param b whether to collect metrics.
+     */
+    public static void setEnabled(boolean b) {
+        enabled = b;
+    }
+
+    /**
+     * Start time for {@link Histogram#recordSince recordSince}.
+     * @return the current time in nanoseconds or 0 if metrics are
+     * disabled.
+     */
+    public static long start() {
+        return enabled ? nanoTime() : 0;
+    }
+
+    private static long nanoTime() {
+        if (NANO_TIME != null) {
+            try {
+                return ((Long) NANO_TIME.invoke(null, null)).longValue();
+            } catch (Exception e) {
+                // fall through
+            }
+        }
+        return System.currentTimeMillis() * 1000000;
+    }
+
+    /**
+     * Gets or creates a counter.
+     * @param name name of the counter, should end with _total.
+     * @param help description of the counter.
+     * @return the counter.
+     */
+    public synchronized Counter getCounter(String name, String help) {
+        Metric m = (Metric) metrics.get(name);
+        if (m == null) {
+            m = new Counter(name, help);
+            metrics.put(name, m);
+        }
+        return (Counter) m;
+    }
+
+    /**
+     * Gets or creates a histogram.
+     * @param name name of the histogram.
+     * @param help description of the histogram.
+     * @return the histogram.
+     */
+    public synchronized Histogram getHistogram(String name, String help) {
+        Metric m = (Metric) metrics.get(name);
+        if (m == null) {
+            m = new Histogram(name, help);
+            metrics.put(name, m);
+        }
+        return (Histogram) m;
+    }
+
+    /**
+     * Sets all metrics back to zero.
+     */
+    public synchronized void reset() {
+        for (Iterator i = metrics.values().iterator(); i.hasNext();) {
+            ((Metric) i.next()).reset();
+        }
+    }
+
+    /**
+     * Writes all metrics as a JSON object.
+     * @param w the writer to write to.
+     * @throws IOException on error.
+     */
+    public synchronized void writeJson(Writer w) throws IOException {
+        w.write("{");
+        boolean first = true;
+        for (Iterator i = metrics.values().iterator(); i.hasNext();) {
+            Metric m = (Metric) i.next();
+            w.write(first ? "\n  \"" : ",\n  \"");
+            first = false;
+            w.write(m.name);
+            w.write("\": ");
+            m.writeJson(w);
+        }
+        w.write("\n}\n");
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text format.
+     * @param w the writer to write to.
+     * @throws IOException on error.
+     */
+    public synchronized void writePrometheus(Writer w) throws IOException {
+        for (Iterator i = metrics.values().iterator(); i.hasNext();) {
+            Metric m = (Metric) i.next();
+            w.write("# HELP " + m.name + " " + m.help + "\n");
+            m.writePrometheus(w);
+        }
+    }
+
+    private abstract static class Metric {
+        private final String name;
+        private final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract void reset();
+
+        abstract void writeJson(Writer w) throws IOException;
+
+        abstract void writePrometheus(Writer w) throws IOException;
+    }
+
+    /**
+     * A value that only ever grows.
+     */
+    public static final class Counter extends Metric {
+        private long value;
+
+        private Counter(String name, String help) {
+            super(name, help);
+        }
+
+        /**
+         * Adds one.
+         */
+        public void increment() {
+            add(1);
+        }
+
+        /**
+         * Adds to the counter if metrics are enabled.
+         * @param n the amount to add.
+         */
+        public void add(long n) {
+            if (enabled) {
+                synchronized (this) {
+                    value += n;
+                }
+            }
+        }
+
+        /**
+         * The current value.
+         * @return the value of the counter.
+         */
+        public synchronized long getValue() {
+            return value;
+        }
+
+        synchronized void reset() {
+            value = 0;
+        }
+
+        void writeJson(Writer w) throws IOException {
+            w.write(String.valueOf(getValue()));
+        }
+
+        void writePrometheus(Writer w) throws IOException {
+            w.write("# TYPE " + super.name + " counter\n");
+            w.write(super.name + " " + getValue() + "\n");
+        }
+    }
+
+    /**
+     * Distribution of recorded values.
+     *
+     * <p>Values are counted in buckets whose width grows with the
+     * value, so percentiles are accurate to about 12.5% while
+     * recording a value costs a few bit operations.</p>
+     */
+    public static final class Histogram extends Metric {
+        /** buckets per power of two */
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+        private final long[] buckets = new long[64 * SUB_BUCKETS];
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max;
+
+        private Histogram(String name, String help) {
+            super(name, help);
+        }
+
+        /**
+         * Records a value if metrics are enabled.
+         * @param value the value, negative values are recorded as 0.
+         */
+        public void record(long value) {
+            if (!enabled) {
+                return;
+            }
+            if (value < 0) {
+                value = 0;
+            }
+            int bucket = bucketOf(value);
+            synchronized (this) {
+                buckets[bucket]++;
+                count++;
+                sum += value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+        }
+
+        /**
+         * Records the nanoseconds passed since a time obtained by
+         * {@link Metrics#start Metrics.start()}.
+         * @param start the start time, 0 if metrics have been
+         * disabled at that time.
+         */
+        public void recordSince(long start) {
+            if (start != 0) {
+                record(nanoTime() - start);
+            }
+        }
+
+        /**
+         * Number of recorded values.
+         * @return the count.
+         */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * Sum of recorded values.
+         * @return the sum.
+         */
+        public synchronized long getSum() {
+            return sum;
+        }
+
+        /**
+         * The smallest value recorded.
+         * @return the minimum, 0 if nothing has been recorded.
+         */
+        public synchronized long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        /**
+         * The biggest value recorded.
+         * @return the maximum.
+         */
+        public synchronized long getMax() {
+            return max;
+        }
+
+        /**
+         * An estimate of the value below which the given fraction of
+         * recorded values lie.
+         * @param quantile between 0 and 1.
+         * @return the estimated value, 0 if nothing has been recorded.
+         */
+        public synchronized long getQuantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= Math.max(rank, 1)) {
+                    return Math.max(min, Math.min(max, upperBound(i)));
+                }
+            }
+            return max;
+        }
+
+        synchronized void reset() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = 0;
+            }
+            count = 0;
+            sum = 0;
+            min = Long.MAX_VALUE;
+            max = 0;
+        }
+
+        synchronized void writeJson(Writer w) throws IOException {
+            w.write("{\"count\": " + count + ", \"sum\": " + sum
+                    + ", \"min\": " + getMin() + ", \"max\": " + max);
+            for (int i = 0; i < QUANTILES.length; i++) {
+                w.write(", \"p" + (int) (QUANTILES[i] * 100) + "\": "
+                        + getQuantile(QUANTILES[i]));
+            }
+            w.write("}");
+        }
+
+        synchronized void writePrometheus(Writer w) throws IOException {
+            String name = super.name;
+            w.write("# TYPE " + name + " summary\n");
+            for (int i = 0; i < QUANTILES.length; i++) {
+                w.write(name + "{quantile=\"" + QUANTILES[i] + "\"} "
+                        + getQuantile(QUANTILES[i]) + "\n");
+            }
+            w.write(name + "_sum " + sum + "\n");
+            w.write(name + "_count " + count + "\n");
+        }
+
+        /**
+         * Values below SUB_BUCKETS get a bucket each, above that
+         * there are SUB_BUCKETS buckets for each power of two.
+         */
+        private static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int magnitude = highestBit(value);
+            int sub = (int) (value >>> (magnitude - SUB_BUCKET_BITS))
+                & (SUB_BUCKETS - 1);
+            return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            long lower = (1L << magnitude)
+                + (sub << (magnitude - SUB_BUCKET_BITS));
+            return lower + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+        }
+
+        private static int highestBit(long value) {
+            int bit = 0;
+            for (int shift = 32; shift > 0; shift >>= 1) {
+                if ((value >>> shift) != 0) {
+                    value >>>= shift;
+                    bit += shift;
+                }
+            }
+            return bit;
+        }
+    }
+}
@@ -17,7 +17,6 @@
  */
 package org.apache.tools.ant.util;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -26,9 +25,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -74,6 +75,22 @@ public class ResourceUtils {
 
     private static final long MAX_IO_CHUNK_SIZE = 16*1024*1024; // 16 MB
 
+    /** Size of the buffers used when comparing contents. */
+    private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+    /** Files at least this big are compared by several threads. */
+    private static final long PARALLEL_COMPARE_THRESHOLD = 64 * 1024 * 1024;
+
+    /** Maximum number of threads comparing the same files. */
+    private static final int MAX_COMPARE_THREADS = 4;
+
+    private static final Metrics.Counter COPIED_RESOURCES = Metrics.getMetrics()
+        .getCounter("ant_copy_resources_total",
+                    "Resources copied by ResourceUtils.copyResource.");
+    private static final Metrics.Counter COPIED_BYTES = Metrics.getMetrics()
+        .getCounter("ant_copy_bytes_total",
+                    "Size of the resources copied by ResourceUtils.copyResource.");
+
     /**
      * Tells which source files should be reprocessed based on the
      * last modification date of target files.
@@ -390,6 +407,13 @@ public class ResourceUtils {
                 .getFileTimestampGranularity()))) {
             return;
         }
+        if (Metrics.isEnabled()) {
+            COPIED_RESOURCES.increment();
+            long size = source.getSize();
+            if (size > 0) {
+                COPIED_BYTES.add(size);
+            }
+        }
         final boolean filterSetsAvailable = (filters != null
                                              && filters.hasFilters());
         final boolean filterChainsAvailable = (filterChains != null
@@ -676,9 +700,9 @@ public class ResourceUtils {
     /**
      * Binary compares the contents of two Resources.
      * <p>
-     * simple but sub-optimal comparision algorithm. written for working
-     * rather than fast. Better would be a block read into buffers followed
-     * by long comparisions apart from the final 1-7 bytes.
+     * Reads blocks of both Resources into buffers and compares the
+     * buffers.  Files are read through FileChannels, big files are
+     * split into chunks that are compared in parallel.
      * </p>
      *
      * @param r1 the Resource whose content is to be compared.
@@ -689,25 +713,228 @@ public class ResourceUtils {
      * @since Ant 1.7
      */
     private static int binaryCompare(Resource r1, Resource r2) throws IOException {
+        FileProvider p1 = (FileProvider) r1.as(FileProvider.class);
+        FileProvider p2 = (FileProvider) r2.as(FileProvider.class);
+        if (p1 != null && p2 != null) {
+            return binaryCompare(p1.getFile(), p2.getFile(), 0);
+        }
         InputStream in1 = null;
         InputStream in2 = null;
         try {
-            in1 = new BufferedInputStream(r1.getInputStream());
-            in2 = new BufferedInputStream(r2.getInputStream());
-
-            for (int b1 = in1.read(); b1 != -1; b1 = in1.read()) {
-                int b2 = in2.read();
-                if (b1 != b2) {
-                    return b1 > b2 ? 1 : -1;
+            in1 = r1.getInputStream();
+            in2 = r2.getInputStream();
+            byte[] buf1 = new byte[COMPARE_BUFFER_SIZE];
+            byte[] buf2 = new byte[COMPARE_BUFFER_SIZE];
+            while (true) {
+                int n1 = readFully(in1, buf1);
+                int n2 = readFully(in2, buf2);
+                int result = compare(buf1, buf2, Math.min(n1, n2));
+                if (result != 0) {
+                    return result;
+                }
+                if (n1 != n2) {
+                    return n1 < n2 ? -1 : 1;
+                }
+                if (n1 < COMPARE_BUFFER_SIZE) {
+                    return 0;
                 }
             }
-            return in2.read() == -1 ? 0 : -1;
         } finally {
             FileUtils.close(in1);
             FileUtils.close(in2);
         }
     }
 
+    /**
+     * Binary compares the contents of two files.
+     * @param f1 the file whose content is to be compared.
+     * @param f2 the other file whose content is to be compared.
+     * @param chunks number of chunks to split the files into, 0 to
+     *        choose depending on the size of the files.
+     * @return a negative integer, zero, or a positive integer as the first
+     *         argument is less than, equal to, or greater than the second.
+     * @throws IOException if the files cannot be read.
+     * @since Ant 1.8.3
+     */
+    /*package*/ static int binaryCompare(File f1, File f2, int chunks)
+        throws IOException {
+        FileInputStream in1 = null;
+        FileInputStream in2 = null;
+        try {
+            in1 = new FileInputStream(f1);
+            in2 = new FileInputStream(f2);
+            FileChannel c1 = in1.getChannel();
+            FileChannel c2 = in2.getChannel();
+            long l1 = c1.size();
+            long l2 = c2.size();
+            long common = Math.min(l1, l2);
+            if (chunks <= 0) {
+                chunks = common < PARALLEL_COMPARE_THRESHOLD ? 1
+                    : Math.min(MAX_COMPARE_THREADS,
+                               Runtime.getRuntime().availableProcessors());
+            }
+            int result = new ChunkedComparison(c1, c2, common, chunks).run();
+            if (result != 0 || l1 == l2) {
+                return result;
+            }
+            return l1 < l2 ? -1 : 1;
+        } finally {
+            FileUtils.close(in1);
+            FileUtils.close(in2);
+        }
+    }
+
+    /**
+     * Reads until the buffer is full or the stream is exhausted.
+     * @return the number of bytes read.
+     */
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int count = 0;
+        while (count < buf.length) {
+            int n = in.read(buf, count, buf.length - count);
+            if (n == -1) {
+                break;
+            }
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Compares the first len bytes of two buffers as unsigned bytes.
+     */
+    private static int compare(byte[] buf1, byte[] buf2, int len) {
+        if (len == buf1.length && len == buf2.length
+            && Arrays.equals(buf1, buf2)) {
+            return 0;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buf1[i] != buf2[i]) {
+                return (buf1[i] & 0xFF) > (buf2[i] & 0xFF) ? 1 : -1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares the common length of two files in chunks, all but the
+     * first chunk are compared by threads of their own.
+     */
+    private static class ChunkedComparison {
+        private final FileChannel c1;
+        private final FileChannel c2;
+        private final long[] starts;
+        private final int[] results;
+        private final IOException[] errors;
+        /** first chunk known to differ */
+        private volatile int firstDifferent = Integer.MAX_VALUE;
+
+        ChunkedComparison(FileChannel c1, FileChannel c2, long length,
+                          int chunks) {
+            this.c1 = c1;
+            this.c2 = c2;
+            starts = new long[chunks + 1];
+            for (int i = 0; i <= chunks; i++) {
+                starts[i] = length / chunks * i;
+            }
+            starts[chunks] = length;
+            results = new int[chunks];
+            errors = new IOException[chunks];
+        }
+
+        int run() throws IOException {
+            Thread[] threads = new Thread[results.length];
+            for (int i = 1; i < threads.length; i++) {
+                final int chunk = i;
+                threads[i] = new Thread(new Runnable() {
+                        public void run() {
+                            compareChunk(chunk);
+                        }
+                    }, "Ant content comparison " + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+            compareChunk(0);
+            boolean interrupted = false;
+            for (int i = 1; i < threads.length; i++) {
+                while (threads[i].isAlive()) {
+                    try {
+                        threads[i].join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        firstDifferent = -1;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("content comparison has "
+                                                 + "been interrupted");
+            }
+            for (int i = 0; i < results.length; i++) {
+                if (errors[i] != null) {
+                    throw errors[i];
+                }
+                if (results[i] != 0) {
+                    return results[i];
+                }
+            }
+            return 0;
+        }
+
+        private void compareChunk(int chunk) {
+            try {
+                results[chunk] = compareRange(starts[chunk], starts[chunk + 1],
+                                              chunk);
+            } catch (IOException e) {
+                errors[chunk] = e;
+            }
+            if (results[chunk] != 0 || errors[chunk] != null) {
+                synchronized (this) {
+                    firstDifferent = Math.min(firstDifferent, chunk);
+                }
+            }
+        }
+
+        private int compareRange(long start, long end, int chunk)
+            throws IOException {
+            byte[] buf1 = new byte[COMPARE_BUFFER_SIZE];
+            byte[] buf2 = new byte[COMPARE_BUFFER_SIZE];
+            ByteBuffer bb1 = ByteBuffer.wrap(buf1);
+            ByteBuffer bb2 = ByteBuffer.wrap(buf2);
+            for (long pos = start; pos < end && firstDifferent > chunk;) {
+                int len = (int) Math.min(COMPARE_BUFFER_SIZE, end - pos);
+                int n1 = read(c1, bb1, pos, len);
+                int n2 = read(c2, bb2, pos, len);
+                int result = compare(buf1, buf2, Math.min(n1, n2));
+                if (result != 0) {
+                    return result;
+                }
+                if (n1 != n2) {
+                    // one of the files has been truncated meanwhile
+                    return n1 < n2 ? -1 : 1;
+                }
+                if (n1 < len) {
+                    return 0;
+                }
+                pos += len;
+            }
+            return 0;
+        }
+
+        private static int read(FileChannel c, ByteBuffer bb, long pos,
+                                int len) throws IOException {
+            bb.clear();
+            bb.limit(len);
+            while (bb.hasRemaining()) {
+                if (c.read(bb, pos + bb.position()) == -1) {
+                    break;
+                }
+            }
+            return bb.position();
+        }
+    }
+
     /**
      * Text compares the contents of two Resources.
      * Ignores different kinds of line endings.
@@ -719,30 +946,98 @@ public class ResourceUtils {
      * @since Ant 1.7
      */
     private static int textCompare(Resource r1, Resource r2) throws IOException {
-        BufferedReader in1 = null;
-        BufferedReader in2 = null;
+        Reader in1 = null;
+        Reader in2 = null;
         try {
-            in1 = new BufferedReader(new InputStreamReader(r1.getInputStream()));
-            in2 = new BufferedReader(new InputStreamReader(r2.getInputStream()));
-
-            String expected = in1.readLine();
-            while (expected != null) {
-                String actual = in2.readLine();
-                if (!expected.equals(actual)) {
-                    if (actual == null) {
-                        return 1;
-                    }
-                    return expected.compareTo(actual);
+            in1 = new InputStreamReader(r1.getInputStream());
+            in2 = new InputStreamReader(r2.getInputStream());
+            LineEndingNormalizer n1 = new LineEndingNormalizer(in1);
+            LineEndingNormalizer n2 = new LineEndingNormalizer(in2);
+            while (true) {
+                int c1 = n1.next();
+                int c2 = n2.next();
+                if (c1 != c2) {
+                    // any character is greater than the end of a line,
+                    // which is greater than the end of the text
+                    return c1 > c2 ? 1 : -1;
+                }
+                if (c1 == LineEndingNormalizer.EOF) {
+                    return 0;
                 }
-                expected = in1.readLine();
             }
-            return in2.readLine() == null ? 0 : -1;
         } finally {
             FileUtils.close(in1);
             FileUtils.close(in2);
         }
     }
 
+    /**
+     * Reads the characters of a text into a buffer and turns all
+     * kinds of line breaks into a single EOL marker.  The last line
+     * is terminated by an EOL marker even if the text doesn't end
+     * with a line break - the same way BufferedReader#readLine
+     * splits texts into lines.
+     */
+    private static class LineEndingNormalizer {
+        static final int EOL = -1;
+        static final int EOF = -2;
+
+        private final Reader in;
+        private final char[] buf = new char[COMPARE_BUFFER_SIZE / 2];
+        private int pos = 0;
+        private int len = 0;
+        private boolean skipLF = false;
+        private boolean atLineStart = true;
+        private boolean eof = false;
+
+        LineEndingNormalizer(Reader in) {
+            this.in = in;
+        }
+
+        int next() throws IOException {
+            while (true) {
+                if (pos == len && !fill()) {
+                    if (atLineStart) {
+                        return EOF;
+                    }
+                    atLineStart = true;
+                    return EOL;
+                }
+                char c = buf[pos++];
+                if (skipLF) {
+                    skipLF = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\r' || c == '\n') {
+                    skipLF = c == '\r';
+                    atLineStart = true;
+                    return EOL;
+                }
+                atLineStart = false;
+                return c;
+            }
+        }
+
+        private boolean fill() throws IOException {
+            if (eof) {
+                return false;
+            }
+            int n;
+            do {
+                n = in.read(buf);
+            } while (n == 0);
+            if (n == -1) {
+                eof = true;
+                return false;
+            }
+            pos = 0;
+            len = n;
+            return true;
+        }
+    }
+
     /**
      * Log which Resources (if any) have been modified in the future.
      * @param logTo the ProjectComponent to do the logging.
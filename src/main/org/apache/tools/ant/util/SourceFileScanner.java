@@ -19,6 +19,8 @@
 package org.apache.tools.ant.util;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Vector;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.Resource;
@@ -33,6 +35,12 @@ import org.apache.tools.ant.types.resources.FileResource;
  * subset of the files given as a parameter and holds only those that
  * are newer than their corresponding target files.</p>
  *
+ * <p>If the <code>ant.change.journal.dir</code> property is set,
+ * sources that have not changed since they have been found to be up
+ * to date by the last run of the same task are taken from the task's
+ * {@link ChangeJournal change journal} without looking at their
+ * target files.</p>
+ *
  */
 public class SourceFileScanner implements ResourceFactory {
 
@@ -89,14 +97,27 @@ public class SourceFileScanner implements ResourceFactory {
                              FileNameMapper mapper, long granularity) {
         // record destdir for later use in getResource
         this.destDir = destDir;
+        ChangeJournal journal =
+            ChangeJournal.getJournal(task, srcDir, destDir, mapper,
+                                     granularity);
         Vector v = new Vector();
         for (int i = 0; i < files.length; i++) {
             final String name = files[i];
-            v.addElement(new FileResource(srcDir, name) {
+            FileResource r = new FileResource(srcDir, name) {
                 public String getName() {
                     return name;
                 }
-            });
+            };
+            if (journal != null) {
+                String[] targets = map(mapper, name);
+                File f = r.getFile();
+                if (targets != null
+                    && journal.isUnchanged(name, f.length(), f.lastModified(),
+                                           targets)) {
+                    continue;
+                }
+            }
+            v.addElement(r);
         }
         Resource[] sourceresources = new Resource[v.size()];
         v.copyInto(sourceresources);
@@ -110,9 +131,58 @@ public class SourceFileScanner implements ResourceFactory {
         for (int counter = 0; counter < outofdate.length; counter++) {
             result[counter] = outofdate[counter].getName();
         }
+        if (journal != null) {
+            recordUpToDate(journal, sourceresources, outofdate, mapper);
+            journal.store();
+        }
         return result;
     }
 
+    /**
+     * Records all sources that have been compared to their targets
+     * and found to be up to date in the change journal.
+     */
+    private static void recordUpToDate(ChangeJournal journal,
+                                       Resource[] sources,
+                                       Resource[] outofdate,
+                                       FileNameMapper mapper) {
+        HashSet stale = new HashSet(Arrays.asList(outofdate));
+        for (int i = 0; i < sources.length; i++) {
+            if (stale.contains(sources[i])) {
+                continue;
+            }
+            String[] targets = map(mapper, sources[i].getName());
+            if (targets != null) {
+                File f = ((FileResource) sources[i]).getFile();
+                journal.record(sources[i].getName(), f.length(),
+                               f.lastModified(), targets);
+            }
+        }
+    }
+
+    /**
+     * The target names of a source or null if the journal cannot
+     * be used for it.
+     */
+    private static String[] map(FileNameMapper mapper, String name) {
+        String[] targets;
+        try {
+            targets = mapper.mapFileName(name.replace('/',
+                                                      File.separatorChar));
+        } catch (Exception e) {
+            return null;
+        }
+        if (targets == null || targets.length == 0) {
+            return null;
+        }
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] == null) {
+                return null;
+            }
+        }
+        return targets;
+    }
+
     /**
      * Convenience layer on top of restrict that returns the source
      * files as File objects (containing absolute paths if srcDir is
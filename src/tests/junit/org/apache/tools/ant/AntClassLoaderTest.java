@@ -20,6 +20,8 @@ package org.apache.tools.ant;
 
 import java.io.File;
 import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
 import org.apache.tools.ant.types.Path;
 
 /**
@@ -180,6 +182,28 @@ public class AntClassLoaderTest extends BuildFileTest {
         }
     }
 
+    public void testResourcesFromSeveralJars() throws Exception {
+        executeTarget("prepareResourceTest");
+        String tmp = getProject().getProperty("tmp.dir");
+        Path myPath = new Path(getProject());
+        myPath.createPathElement().setLocation(new File(tmp, "a.jar"));
+        myPath.createPathElement().setLocation(new File(tmp, "b.jar"));
+        getProject().setUserProperty("build.sysclasspath","ignore");
+        loader = getProject().createClassLoader(myPath);
+        assertTrue(loader.getResource("a/x.txt").toString().endsWith("a.jar!/a/x.txt"));
+        assertTrue(loader.getResource("a/y.txt").toString().endsWith("b.jar!/a/y.txt"));
+        assertTrue(loader.getResource("b/x.txt").toString().endsWith("b.jar!/b/x.txt"));
+        assertNotNull(loader.getResource("b"));
+        assertNull(loader.getResource("c/x.txt"));
+        assertEquals(1, Collections.list(loader.getNamedResources("a/x.txt")).size());
+
+        // components added later must be searched as well
+        loader.addPathComponent(new File(tmp, "c.jar"));
+        List urls = Collections.list(loader.getNamedResources("a/x.txt"));
+        assertEquals(2, urls.size());
+        assertTrue(urls.get(1).toString().endsWith("c.jar!/a/x.txt"));
+    }
+
     private static class GetPackageWrapper extends ClassLoader {
         GetPackageWrapper(ClassLoader parent) {
             super(parent);
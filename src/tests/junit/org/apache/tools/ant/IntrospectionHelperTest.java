@@ -416,6 +416,56 @@ public class IntrospectionHelperTest extends TestCase {
         }
     }
 
+    public void testRepeatedConversions() {
+        IntrospectionHelper cih =
+            IntrospectionHelper.getHelper(p, ConversionBean.class);
+        ConversionBean b = new ConversionBean();
+        String[] values = {"1", "2", "1", "17", "1"};
+        for (int i = 0; i < values.length; i++) {
+            cih.setAttribute(p, b, "int", values[i]);
+            assertEquals(Integer.parseInt(values[i]), b.i);
+            cih.setAttribute(p, b, "long", values[i] + "K");
+            assertEquals(Long.parseLong(values[i]) * 1024, b.l);
+            StringBuffer previous = b.sb;
+            cih.setAttribute(p, b, "buffer", values[i]);
+            assertEquals(values[i], b.sb.toString());
+            // mutable values must never be reused
+            assertNotSame(previous, b.sb);
+            cih.setAttribute(p, b, "aware", values[i]);
+            assertSame(p, b.aware.project);
+        }
+        cih.setAttribute(p, b, "INT", "3");
+        assertEquals(3, b.i);
+    }
+
+    public static class ConversionBean {
+        private int i;
+        private long l;
+        private StringBuffer sb;
+        private ProjectAware aware;
+        public void setInt(int i) {
+            this.i = i;
+        }
+        public void setLong(long l) {
+            this.l = l;
+        }
+        public void setBuffer(StringBuffer sb) {
+            this.sb = sb;
+        }
+        public void setAware(ProjectAware aware) {
+            this.aware = aware;
+        }
+    }
+
+    public static class ProjectAware {
+        private Project project;
+        public ProjectAware(String s) {
+        }
+        public void setProject(Project p) {
+            project = p;
+        }
+    }
+
     private Map getExpectedAttributes() {
         Map attrMap = new Hashtable();
         attrMap.put("seven", String.class);
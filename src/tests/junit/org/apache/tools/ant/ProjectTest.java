@@ -25,6 +25,9 @@ import org.apache.tools.ant.taskdefs.condition.Os;
 import org.apache.tools.ant.types.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
 import junit.framework.TestCase;
 
 
@@ -226,6 +229,42 @@ public class ProjectTest extends TestCase {
         assertTrue(p.getTaskDefinitions().contains(org.apache.tools.ant.taskdefs.Echo.class));
     }
 
+    public void testSubProjectSharesDefinitions() {
+        p.addTaskDefinition("Ok", DummyTaskOk.class);
+        Project sub1 = p.createSubProject();
+        Project sub2 = p.createSubProject();
+        assertEquals(DummyTaskOk.class,
+                     ComponentHelper.getComponentHelper(sub1)
+                     .getComponentClass("Ok"));
+
+        // definitions of a subproject are neither seen by the parent
+        // nor by its siblings
+        sub1.addTaskDefinition("OkNonTask", DummyTaskOkNonTask.class);
+        assertEquals(DummyTaskOkNonTask.class,
+                     sub1.getTaskDefinitions().get("OkNonTask"));
+        assertNull(p.getTaskDefinitions().get("OkNonTask"));
+        assertNull(sub2.getTaskDefinitions().get("OkNonTask"));
+        assertEquals(DummyTaskOk.class, sub2.getTaskDefinitions().get("Ok"));
+
+        // definitions the parent adds later aren't inherited by
+        // existing subprojects, but by new ones
+        p.addTaskDefinition("NonVoidExecute",
+                            DummyTaskWithNonVoidExecute.class);
+        assertNull(ComponentHelper.getComponentHelper(sub2)
+                   .getDefinition("NonVoidExecute"));
+        assertEquals(DummyTaskWithNonVoidExecute.class,
+                     p.createSubProject().getTaskDefinitions()
+                     .get("NonVoidExecute"));
+
+        // grand children see the definitions of all their ancestors
+        Project subsub = sub1.createSubProject();
+        assertEquals(DummyTaskOk.class,
+                     subsub.getTaskDefinitions().get("Ok"));
+        assertEquals(DummyTaskOkNonTask.class,
+                     subsub.getTaskDefinitions().get("OkNonTask"));
+        assertTrue(subsub.getTaskDefinitions().containsKey("echo"));
+    }
+
     public void testDuplicateTargets() {
         // fail, because buildfile contains two targets with the same name
         try {
@@ -276,6 +315,82 @@ public class ProjectTest extends TestCase {
         assertTrue("Expected logging thread to finish successfully", done[0]);
     }
 
+    public void testAsyncMessageDispatch() {
+        final List events = new ArrayList();
+        final Thread main = Thread.currentThread();
+        final boolean[] otherThread = new boolean[] {false};
+        p.addBuildListener(new BuildListener() {
+                public void buildStarted(BuildEvent event) {}
+                public void buildFinished(BuildEvent event) {}
+                public void targetStarted(BuildEvent event) {}
+                public void targetFinished(BuildEvent event) {}
+                public void taskStarted(BuildEvent event) {
+                    events.add("started");
+                }
+                public void taskFinished(BuildEvent event) {
+                    events.add("finished");
+                }
+                public void messageLogged(BuildEvent event) {
+                    if (event.getTask() != null) {
+                        otherThread[0] |= Thread.currentThread() != main;
+                        events.add(event.getMessage());
+                    }
+                }
+            });
+        Target t = new Target();
+        t.setName("t");
+        t.setProject(p);
+        Task task = new LoggingTask();
+        task.setProject(p);
+        task.setOwningTarget(t);
+        t.addTask(task);
+        p.addTarget(t);
+        p.setProperty(MagicNames.ASYNC_LOGGING, "true");
+        Vector targets = new Vector();
+        targets.add("t");
+        p.executeTargets(targets);
+
+        assertTrue("messages dispatched by another thread", otherThread[0]);
+        assertEquals(5002, events.size());
+        assertEquals("started", events.get(0));
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(String.valueOf(i), events.get(i + 1));
+        }
+        assertEquals("finished", events.get(5001));
+    }
+
+    public void testMessagesAboveLoggerLevelAreNotSent() {
+        DefaultLogger info = new DefaultLogger();
+        info.setMessageOutputLevel(Project.MSG_INFO);
+        NoBannerLogger verbose = new NoBannerLogger();
+        verbose.setMessageOutputLevel(Project.MSG_VERBOSE);
+        assertEquals(Project.MSG_INFO,
+                     Project.getMessageThreshold(new BuildListener[] {info}));
+        assertEquals(Project.MSG_VERBOSE,
+                     Project.getMessageThreshold(new BuildListener[] {
+                             info, verbose
+                         }));
+        assertEquals(Project.MSG_DEBUG,
+                     Project.getMessageThreshold(new BuildListener[] {
+                             info, mbl
+                         }));
+    }
+
+    public void testSubclassesOfDefaultLoggerSeeAllMessages() {
+        final List priorities = new ArrayList();
+        DefaultLogger logger = new DefaultLogger() {
+                public void messageLogged(BuildEvent event) {
+                    priorities.add(new Integer(event.getPriority()));
+                }
+            };
+        logger.setMessageOutputLevel(Project.MSG_INFO);
+        p.addBuildListener(logger);
+        p.log("debug", Project.MSG_DEBUG);
+        p.log("info", Project.MSG_INFO);
+        assertEquals(2, priorities.size());
+        assertEquals(new Integer(Project.MSG_DEBUG), priorities.get(0));
+    }
+
     /**
      * @see https://issues.apache.org/bugzilla/show_bug.cgi?id=47623
      */
@@ -284,6 +399,14 @@ public class ProjectTest extends TestCase {
         // be content if no exception has been thrown
     }
 
+    public static class LoggingTask extends Task {
+        public void execute() {
+            for (int i = 0; i < 5000; i++) {
+                log(String.valueOf(i));
+            }
+        }
+    }
+
     private class DummyTaskPrivate extends Task {
         public DummyTaskPrivate() {}
         public void execute() {}
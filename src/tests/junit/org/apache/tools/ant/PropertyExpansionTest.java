@@ -19,6 +19,10 @@
 
 package org.apache.tools.ant;
 
+import java.util.Random;
+
+import org.apache.tools.ant.property.ParseProperties;
+
 /**
  * class to look at how we expand properties
  */
@@ -68,6 +72,68 @@ public class PropertyExpansionTest extends BuildFileTest {
     }
 
 
+    /**
+     * the cached parse of a string must give the same result as
+     * consulting the expanders character by character
+     */
+    public void testSameResultAsParseProperties() {
+        project.setProperty("a", "A");
+        project.setProperty("", "EMPTY");
+        PropertyHelper ph = PropertyHelper.getPropertyHelper(project);
+        ParseProperties reference =
+            new ParseProperties(project, ph.getExpanders(), ph);
+        char[] alphabet = {'$', '{', '}', 'a', 'b'};
+        Random r = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            char[] c = new char[r.nextInt(10)];
+            for (int j = 0; j < c.length; j++) {
+                c[j] = alphabet[r.nextInt(alphabet.length)];
+            }
+            String source = new String(c);
+            String expected;
+            try {
+                expected = String.valueOf(reference.parseProperties(source));
+            } catch (BuildException e) {
+                expected = e.getMessage();
+            }
+            // twice to get the cached result as well
+            for (int k = 0; k < 2; k++) {
+                String actual;
+                try {
+                    actual = String.valueOf(ph.parseProperties(source));
+                } catch (BuildException e) {
+                    actual = e.getMessage();
+                }
+                assertEquals(source, expected, actual);
+            }
+            assertEquals(source, contains(reference, null, source),
+                         contains(null, ph, source));
+        }
+    }
+
+    private static String contains(ParseProperties reference,
+                                   PropertyHelper ph, String source) {
+        try {
+            return String.valueOf(reference != null
+                                  ? reference.containsProperties(source)
+                                  : ph.containsProperties(source));
+        } catch (BuildException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * a string that consists of a single property reference returns
+     * the property's value itself
+     */
+    public void testSinglePropertyKeepsType() {
+        Object o = new Object();
+        project.addReference("o", o);
+        PropertyHelper ph = PropertyHelper.getPropertyHelper(project);
+        assertSame(o, ph.parseProperties("${ant.refid:o}"));
+        assertEquals("x" + o, ph.parseProperties("x${ant.refid:o}"));
+    }
+
     /**
      * old things we dont want; not a test no more
      */
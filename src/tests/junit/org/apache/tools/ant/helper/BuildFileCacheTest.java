@@ -0,0 +1,138 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.helper;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+import org.apache.tools.ant.util.FileUtils;
+
+/**
+ * Tests reading the parser cache from disk.
+ */
+public class BuildFileCacheTest extends TestCase {
+
+    private static final int MAGIC = 0x416e7450;
+    private static final int VERSION = 1;
+
+    private File dir;
+    private File buildFile;
+    private File cacheFile;
+    private Project project;
+
+    public void setUp() throws IOException {
+        dir = FileUtils.getFileUtils()
+            .createTempFile("parsercache", "", null, false, false);
+        dir.mkdirs();
+        buildFile = new File(dir, "build.xml");
+        buildFile.createNewFile();
+        String path = buildFile.getAbsolutePath();
+        cacheFile = new File(dir, "build.xml-"
+                             + Long.toString(path.hashCode() & 0xffffffffL,
+                                             16)
+                             + ".antparse");
+        project = new Project();
+        project.setProperty(MagicNames.PARSER_CACHE_DIR,
+                            dir.getAbsolutePath());
+        BuildFileCache.clear();
+    }
+
+    public void tearDown() {
+        BuildFileCache.clear();
+        Delete d = new Delete();
+        d.setProject(new Project());
+        d.setDir(dir);
+        d.execute();
+    }
+
+    public void testNegativeStringLength() throws IOException {
+        DataOutputStream out = open();
+        try {
+            out.writeInt(-1);
+        } finally {
+            out.close();
+        }
+        assertNull(BuildFileCache.lookup(project, buildFile));
+    }
+
+    public void testStringLongerThanFile() throws IOException {
+        DataOutputStream out = open();
+        try {
+            out.writeInt(Integer.MAX_VALUE);
+        } finally {
+            out.close();
+        }
+        assertNull(BuildFileCache.lookup(project, buildFile));
+    }
+
+    public void testNegativeStringCount() throws IOException {
+        DataOutputStream out = openWithHeader();
+        try {
+            out.writeInt(-1);
+        } finally {
+            out.close();
+        }
+        assertNull(BuildFileCache.lookup(project, buildFile));
+    }
+
+    public void testEventsLongerThanFile() throws IOException {
+        DataOutputStream out = openWithHeader();
+        try {
+            out.writeInt(0);
+            out.writeInt(Integer.MAX_VALUE);
+        } finally {
+            out.close();
+        }
+        assertNull(BuildFileCache.lookup(project, buildFile));
+    }
+
+    private DataOutputStream open() throws IOException {
+        DataOutputStream out =
+            new DataOutputStream(new FileOutputStream(cacheFile));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        return out;
+    }
+
+    /**
+     * Writes everything up to the number of strings.
+     */
+    private DataOutputStream openWithHeader() throws IOException {
+        DataOutputStream out = open();
+        writeString(out, buildFile.getAbsolutePath());
+        out.writeLong(buildFile.lastModified());
+        out.writeLong(buildFile.length());
+        writeString(out, buildFile.toURI().toString());
+        return out;
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] b = s.getBytes("UTF-8");
+        out.writeInt(b.length);
+        out.write(b);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package org.apache.tools.ant.launch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.Main;
+
+public class AntDaemonTest extends TestCase {
+
+    private static final String CWD =
+        new File(System.getProperty("java.io.tmpdir")).getAbsolutePath();
+
+    public AntDaemonTest(String name) {
+        super(name);
+    }
+
+    public void testDefaultBuildFileIsRelativeToClient() {
+        String[] args = AntDaemon.resolveArgs(CWD, new String[] {"compile"});
+        assertEquals(4, args.length);
+        assertEquals("-Dant.parser.cache=true", args[0]);
+        assertEquals("compile", args[1]);
+        assertEquals("-buildfile", args[2]);
+        assertEquals(new File(CWD, "build.xml").getAbsolutePath(), args[3]);
+    }
+
+    public void testRelativeFileArguments() {
+        String[] args = AntDaemon.resolveArgs(CWD, new String[] {
+                "-f", "sub/build.xml", "-l", "log.txt",
+                "-propertyfile", "p.properties", "-Dx=y"
+            });
+        assertEquals(8, args.length);
+        assertEquals(new File(CWD, "sub/build.xml").getAbsolutePath(),
+                     args[2]);
+        assertEquals(new File(CWD, "log.txt").getAbsolutePath(), args[4]);
+        assertEquals(new File(CWD, "p.properties").getAbsolutePath(),
+                     args[6]);
+        assertEquals("-Dx=y", args[7]);
+    }
+
+    public void testFindDoesntAddBuildFile() {
+        String[] args = AntDaemon.resolveArgs(CWD, new String[] {"-find"});
+        assertEquals(2, args.length);
+        assertEquals("-find", args[1]);
+    }
+
+    public void testEnvironmentFingerprintIsStable() {
+        String env = AntDaemon.getEnvironmentFingerprint();
+        assertNotNull(env);
+        assertEquals(40, env.length());
+        assertEquals(env, AntDaemon.getEnvironmentFingerprint());
+    }
+
+    public void testMainMustBeReusable() {
+        try {
+            new AntDaemon(String.class, new File(CWD, "daemon.properties"));
+            fail("String isn't a ReusableAntMain");
+        } catch (LaunchException ex) {
+            assertTrue(ex.getMessage(),
+                       ex.getMessage().indexOf("daemon mode") > -1);
+        }
+    }
+
+    public void testDaemonFileReplacesStaleFile() throws Exception {
+        File dir = new File(CWD, "antdaemontest" + System.currentTimeMillis());
+        dir.mkdirs();
+        File f = new File(dir, "daemon.properties");
+        try {
+            FileWriter w = new FileWriter(f);
+            try {
+                w.write("port=1\n");
+            } finally {
+                w.close();
+            }
+            new AntDaemon(Main.class, f).writeDaemonFile(1234);
+            Properties p = new Properties();
+            InputStream in = new FileInputStream(f);
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+            assertEquals("1234", p.getProperty(AntDaemon.KEY_PORT));
+            assertEquals(32, p.getProperty(AntDaemon.KEY_SECRET).length());
+            assertEquals(1, dir.list().length);
+        } finally {
+            f.delete();
+            dir.delete();
+        }
+    }
+}
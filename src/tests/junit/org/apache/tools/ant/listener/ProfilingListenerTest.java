@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.listener;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.apache.tools.ant.BuildFileTest;
+import org.apache.tools.ant.util.FileUtils;
+
+public class ProfilingListenerTest extends BuildFileTest {
+
+    private File trace;
+    private File collapsed;
+
+    public ProfilingListenerTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        configureProject("src/etc/testcases/core/profiling.xml");
+        FileUtils fu = FileUtils.getFileUtils();
+        trace = fu.createTempFile("profile", ".json", null, true, true);
+        collapsed = fu.createTempFile("profile", ".collapsed", null, true, true);
+        getProject().setProperty(ProfilingListener.TRACE_FILE,
+                                 trace.getAbsolutePath());
+        getProject().setProperty(ProfilingListener.COLLAPSED_FILE,
+                                 collapsed.getAbsolutePath());
+    }
+
+    public void testProfile() throws IOException {
+        getProject().addBuildListener(new ProfilingListener());
+        getProject().fireBuildStarted();
+        executeTarget("all");
+        getProject().fireBuildFinished(null);
+
+        String stacks = read(collapsed);
+        assertTrue(stacks, stacks.indexOf("first;echo ") > -1);
+        assertTrue(stacks, stacks.indexOf("all;greet;sequential;echo ") > -1);
+
+        String json = read(trace);
+        assertTrue(json, json.startsWith("{\"traceEvents\":["));
+        assertTrue(json, json.indexOf("{\"name\":\"greet\",\"cat\":\"macro\"") > -1);
+        assertTrue(json, json.indexOf("{\"name\":\"all\",\"cat\":\"target\"") > -1);
+    }
+
+    private static String read(File f) throws IOException {
+        FileReader r = new FileReader(f);
+        try {
+            return FileUtils.readFully(r);
+        } finally {
+            FileUtils.close(r);
+        }
+    }
+}
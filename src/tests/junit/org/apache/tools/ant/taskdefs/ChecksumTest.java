@@ -62,6 +62,10 @@ public class ChecksumTest extends BuildFileTest {
         executeTarget("verifyTotal");
     }
 
+    public void testVerifyTotalThreads() {
+        executeTarget("verifyTotalThreads");
+    }
+
     public void testVerifyTotalRC() {
         executeTarget("verifyTotalRC");
     }
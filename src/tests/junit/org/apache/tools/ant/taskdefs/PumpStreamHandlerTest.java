@@ -0,0 +1,228 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.taskdefs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests running the pumpers of PumpStreamHandler on pooled threads.
+ */
+public class PumpStreamHandlerTest extends TestCase {
+
+    private static final long TIMEOUT = 10000;
+
+    public PumpStreamHandlerTest(String name) {
+        super(name);
+    }
+
+    public void testWorkersAreReused() throws InterruptedException {
+        RecordingInputStream out1 = new RecordingInputStream("a");
+        RecordingInputStream err1 = new RecordingInputStream("");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pump(out1, err1, out);
+        assertEquals("a", out.toString());
+        assertNotSame(Thread.currentThread(), out1.reader);
+        assertTrue(out1.reader.isDaemon());
+        assertNotSame(out1.reader, err1.reader);
+
+        awaitIdle(out1.reader);
+        awaitIdle(err1.reader);
+        RecordingInputStream out2 = new RecordingInputStream("b");
+        RecordingInputStream err2 = new RecordingInputStream("");
+        out = new ByteArrayOutputStream();
+        pump(out2, err2, out);
+        assertEquals("b", out.toString());
+        assertTrue(out2.reader == out1.reader || out2.reader == err1.reader);
+        assertTrue(err2.reader == out1.reader || err2.reader == err1.reader);
+    }
+
+    public void testSilentStreamIsStoppedOnceDrained()
+        throws InterruptedException {
+        PumpStreamHandler h =
+            new PumpStreamHandler(new ByteArrayOutputStream(),
+                                  new ByteArrayOutputStream());
+        SilentInputStream silent = new SilentInputStream();
+        h.setProcessOutputStream(silent);
+        h.setProcessErrorStream(new ByteArrayInputStream(new byte[0]));
+        h.start();
+        // let the pumper back off to its longest poll interval
+        Thread.sleep(500);
+        long start = System.currentTimeMillis();
+        h.stop();
+        long elapsed = System.currentTimeMillis() - start;
+        // without stopWhenDrained stop waits for 200ms before it
+        // stops the pumper
+        assertTrue("stop took " + elapsed + "ms", elapsed < 200);
+        assertFalse(silent.read);
+    }
+
+    public void testInterruptReachesRunnerOnly() throws InterruptedException {
+        final Thread[] pumps = new Thread[2];
+        PumpStreamHandler h =
+            new PumpStreamHandler(new ByteArrayOutputStream(),
+                                  new ByteArrayOutputStream()) {
+                protected Thread createPump(InputStream is, OutputStream os,
+                                            boolean closeWhenExhausted,
+                                            boolean nonBlockingIO) {
+                    Thread t = super.createPump(is, os, closeWhenExhausted,
+                                                nonBlockingIO);
+                    pumps[pumps[0] == null ? 0 : 1] = t;
+                    return t;
+                }
+            };
+        BlockingInputStream blocking = new BlockingInputStream();
+        RecordingInputStream err1 = new RecordingInputStream("");
+        h.setProcessOutputStream(blocking);
+        h.setProcessErrorStream(err1);
+        h.start();
+        blocking.awaitReader();
+        // stop has to interrupt the pooled thread blocked in read
+        h.stop();
+        assertTrue(blocking.interrupted);
+        assertFalse(pumps[0].isAlive());
+
+        // interrupts arriving after the pumpers have finished mustn't
+        // hit the workers waiting for their next pumpers
+        awaitIdle(blocking.reader);
+        awaitIdle(err1.reader);
+        pumps[0].interrupt();
+        pumps[1].interrupt();
+        RecordingInputStream out2 = new RecordingInputStream("next");
+        RecordingInputStream err2 = new RecordingInputStream("");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pump(out2, err2, out);
+        assertTrue(out2.reader == blocking.reader
+                   || err2.reader == blocking.reader);
+        assertFalse(out2.interrupted);
+        assertFalse(err2.interrupted);
+        assertEquals("next", out.toString());
+    }
+
+    private static void pump(InputStream out, InputStream err,
+                             OutputStream dest) {
+        PumpStreamHandler h =
+            new PumpStreamHandler(dest, new ByteArrayOutputStream());
+        h.setProcessOutputStream(out);
+        h.setProcessErrorStream(err);
+        h.start();
+        h.stop();
+    }
+
+    private static void awaitIdle(Thread worker) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!PumpWorkerPool.isIdle(worker)) {
+            assertTrue(worker + " didn't become idle",
+                       System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Remembers the thread reading it and whether that thread has
+     * been interrupted.
+     */
+    private static class RecordingInputStream extends ByteArrayInputStream {
+        private volatile Thread reader;
+        private volatile boolean interrupted;
+
+        RecordingInputStream(String content) {
+            super(content.getBytes());
+        }
+
+        public synchronized int available() {
+            record();
+            return super.available();
+        }
+
+        public synchronized int read(byte[] b, int off, int len) {
+            record();
+            return super.read(b, off, len);
+        }
+
+        private void record() {
+            reader = Thread.currentThread();
+            interrupted |= reader.isInterrupted();
+        }
+    }
+
+    /**
+     * Never has any input available, like the output of a process
+     * whose children keep the stream open.
+     */
+    private static class SilentInputStream extends InputStream {
+        private volatile boolean read;
+
+        public int available() {
+            return 0;
+        }
+
+        public int read() throws IOException {
+            read = true;
+            throw new IOException("read would block");
+        }
+    }
+
+    /**
+     * Claims to have input but blocks reading until interrupted.
+     */
+    private static class BlockingInputStream extends InputStream {
+        private boolean reading;
+        private volatile Thread reader;
+        private volatile boolean interrupted;
+
+        public int available() {
+            return 1;
+        }
+
+        public int read() throws IOException {
+            return read(new byte[1], 0, 1);
+        }
+
+        public synchronized int read(byte[] b, int off, int len)
+            throws IOException {
+            reading = true;
+            reader = Thread.currentThread();
+            notifyAll();
+            try {
+                while (true) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                throw new InterruptedIOException();
+            }
+        }
+
+        synchronized void awaitReader() throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (!reading) {
+                long left = deadline - System.currentTimeMillis();
+                assertTrue("pumper didn't read", left > 0);
+                wait(left);
+            }
+        }
+    }
+}
@@ -19,12 +19,16 @@
 package org.apache.tools.ant.taskdefs;
 
 import java.io.File;
+import java.io.FileWriter;
 
 import junit.framework.AssertionFailedError;
 
 import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.BuildFileTest;
 import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.util.FileUtils;
 
 
 public class SubAntTest extends BuildFileTest {
@@ -74,6 +78,65 @@ public class SubAntTest extends BuildFileTest {
 
     }
     
+    public void testInterruptStopsStartingSubBuilds() throws Exception {
+        File dir = FileUtils.getFileUtils()
+            .createTempFile("subant", "", null, false, false);
+        try {
+            for (int i = 1; i <= 4; i++) {
+                File module = new File(dir, "module" + i);
+                module.mkdirs();
+                FileWriter w = new FileWriter(new File(module, "build.xml"));
+                try {
+                    w.write("<project default='run'><target name='run'>"
+                            + "<sleep milliseconds='500'/>"
+                            + "<touch file='ran'/></target></project>");
+                } finally {
+                    w.close();
+                }
+            }
+            final SubAnt subant = new SubAnt();
+            subant.setProject(project);
+            subant.setThreads(2);
+            FileSet fs = new FileSet();
+            fs.setDir(dir);
+            fs.setIncludes("*/build.xml");
+            subant.addFileset(fs);
+            final Object[] result = new Object[2];
+            Thread t = new Thread() {
+                    public void run() {
+                        try {
+                            subant.execute();
+                        } catch (BuildException e) {
+                            result[0] = e;
+                        }
+                        result[1] = Boolean.valueOf(isInterrupted());
+                    }
+                };
+            t.start();
+            Thread.sleep(200);
+            t.interrupt();
+            t.join(10000);
+            assertFalse(t.isAlive());
+            assertNotNull("subant should fail", result[0]);
+            assertTrue(((BuildException) result[0]).getMessage(),
+                       ((BuildException) result[0]).getMessage()
+                       .indexOf("Interrupted") > -1);
+            assertEquals(Boolean.TRUE, result[1]);
+            int ran = 0;
+            for (int i = 1; i <= 4; i++) {
+                if (new File(dir, "module" + i + "/ran").exists()) {
+                    ran++;
+                }
+            }
+            assertEquals(2, ran);
+        } finally {
+            Delete d = new Delete();
+            d.setProject(project);
+            d.setDir(dir);
+            d.execute();
+        }
+    }
+
     public void testMultipleTargets() {
         executeTarget("multipleTargets");
         assertLogContaining("test1-one");
@@ -131,6 +131,22 @@ public class FilterSetTest extends BuildFileTest {
         assertEquals(result, filters.replaceTokens(line));
     }
     
+    public void testCollectionWithDifferentBeginTokens() {
+        FilterSet fs1 = new FilterSet();
+        fs1.addFilter("a", "%b%");
+        FilterSet fs2 = new FilterSet();
+        fs2.setBeginToken("%");
+        fs2.setEndToken("%");
+        fs2.addFilter("b", "value");
+        FilterSetCollection c = new FilterSetCollection(fs1);
+        c.addFilterSet(fs2);
+
+        assertEquals("no tokens here", c.replaceTokens("no tokens here"));
+        assertEquals("x value y", c.replaceTokens("x @a@ y"));
+        assertEquals("value", c.replaceTokens("%b%"));
+        assertEquals("@c@", c.replaceTokens("@c@"));
+    }
+
     public void testNestedFilterSets() {
         executeTarget("test-nested-filtersets");
 
@@ -36,7 +36,9 @@ import org.apache.tools.ant.types.selectors.modifiedselector.Cache;
 import org.apache.tools.ant.types.selectors.modifiedselector.ChecksumAlgorithm;
 import org.apache.tools.ant.types.selectors.modifiedselector.DigestAlgorithm;
 import org.apache.tools.ant.types.selectors.modifiedselector.EqualComparator;
+import org.apache.tools.ant.types.selectors.modifiedselector.FastHashAlgorithm;
 import org.apache.tools.ant.types.selectors.modifiedselector.HashvalueAlgorithm;
+import org.apache.tools.ant.types.selectors.modifiedselector.LogfileCache;
 import org.apache.tools.ant.types.selectors.modifiedselector.ModifiedSelector;
 import org.apache.tools.ant.types.selectors.modifiedselector.PropertiesfileCache;
 import org.apache.tools.ant.util.FileUtils;
@@ -411,6 +413,89 @@ public class ModifiedSelectorTest extends BaseSelectorTest {
     }
 
 
+    public void testLogfileCache() {
+        LogfileCache cache = new LogfileCache();
+        File cachefile = new File(basedir, "cache.log");
+        cache.setCachefile(cachefile);
+        doTest(cache);
+        assertFalse("Cache file not deleted.", cachefile.exists());
+    }
+
+
+    /** Checks that entries of different caches on the same file are kept. */
+    public void testLogfileCacheSharedFile() {
+        File cachefile = new File(basedir, "cache.log");
+        try {
+            LogfileCache c1 = new LogfileCache(cachefile);
+            LogfileCache c2 = new LogfileCache(cachefile);
+            c1.load();
+            c2.load();
+            c1.put("key1", "value1");
+            c2.put("key2", "value2");
+            c1.save();
+            c2.save();
+            c1.put("key1", "value3");
+            c1.save();
+
+            LogfileCache c3 = new LogfileCache(cachefile);
+            assertEquals("value3", c3.get("key1"));
+            assertEquals("value2", c3.get("key2"));
+        } finally {
+            cachefile.delete();
+        }
+    }
+
+
+    /** Checks that a file keeps its entries while it is compacted. */
+    public void testLogfileCacheCompaction() {
+        File cachefile = new File(basedir, "cache.log");
+        try {
+            LogfileCache cache = new LogfileCache(cachefile);
+            for (int i = 0; i < 3000; i++) {
+                cache.put("key" + (i % 10), "value" + i);
+                cache.save();
+            }
+            long length = cachefile.length();
+            assertTrue("file has not been compacted: " + length,
+                       length < 1024 * 40);
+            LogfileCache other = new LogfileCache(cachefile);
+            for (int i = 0; i < 10; i++) {
+                assertEquals("value" + (2990 + i), other.get("key" + i));
+            }
+        } finally {
+            cachefile.delete();
+        }
+    }
+
+
+    /** Checks that the state of files is recorded. */
+    public void testLogfileCacheRecordsFileState() throws Exception {
+        File cachefile = new File(basedir, "cache.log");
+        File file = new File(basedir, "recorded.txt");
+        try {
+            FILE_UTILS.createNewFile(file, true);
+            file.setLastModified(System.currentTimeMillis() - 60 * 1000);
+            LogfileCache cache = new LogfileCache(cachefile);
+            cache.put(file, "value");
+            cache.save();
+
+            LogfileCache other = new LogfileCache(cachefile);
+            assertEquals("value", other.getIfUnchanged(file));
+            file.setLastModified(System.currentTimeMillis() - 30 * 1000);
+            assertNull(other.getIfUnchanged(file));
+            assertEquals("value", other.get(file.getAbsolutePath()));
+
+            other.setCheckstat(false);
+            file.setLastModified(System.currentTimeMillis() - 60 * 1000);
+            other.put(file, "value");
+            assertNull(other.getIfUnchanged(file));
+        } finally {
+            cachefile.delete();
+            file.delete();
+        }
+    }
+
+
     public void _testCustomCache() {
         // same logic as on algorithm, no testcases created
     }
@@ -502,6 +587,16 @@ public class ModifiedSelectorTest extends BaseSelectorTest {
         doTest(algo);
     }
 
+    public void testFastHashAlgorithm() {
+        doTest(new FastHashAlgorithm());
+    }
+
+    public void testFastHashAlgorithmMurmur3() {
+        FastHashAlgorithm algo = new FastHashAlgorithm();
+        algo.setAlgorithm("murmur3_128");
+        doTest(algo);
+    }
+
 
     /**
      * Test the interface semantic of Algorithms.
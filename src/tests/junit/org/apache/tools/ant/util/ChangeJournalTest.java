@@ -0,0 +1,180 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.util;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.tools.ant.MagicNames;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.Delete;
+import org.apache.tools.ant.taskdefs.Echo;
+
+/**
+ * Tests the change journal as used by SourceFileScanner.
+ */
+public class ChangeJournalTest extends TestCase {
+
+    private static final String[] FILES = {"a.txt", "b.txt"};
+
+    private final long now = System.currentTimeMillis();
+
+    private File base;
+    private File src;
+    private File dest;
+    private File journals;
+    private Echo task;
+
+    public void setUp() throws IOException {
+        base = File.createTempFile("changejournal", "");
+        base.delete();
+        src = new File(base, "src");
+        dest = new File(base, "dest");
+        journals = new File(base, "journal");
+        src.mkdirs();
+        dest.mkdirs();
+        for (int i = 0; i < FILES.length; i++) {
+            write(new File(src, FILES[i]), FILES[i], now - 100000);
+            write(new File(dest, FILES[i]), FILES[i], now - 50000);
+        }
+        dest.setLastModified(now - 50000);
+
+        Project p = new Project();
+        p.setProperty(MagicNames.CHANGE_JOURNAL_DIR,
+                      journals.getAbsolutePath());
+        task = new Echo();
+        task.setProject(p);
+        task.setTaskName("echo");
+    }
+
+    public void tearDown() {
+        Delete d = new Delete();
+        d.setProject(new Project());
+        d.setDir(base);
+        d.execute();
+    }
+
+    public void testNoJournalWithoutProperty() {
+        task.setProject(new Project());
+        assertEquals(0, restrict(new IdentityMapper()).length);
+        assertFalse(journals.exists());
+    }
+
+    public void testUnchangedSourcesSkipTargets() throws IOException {
+        assertEquals(0, restrict(new IdentityMapper()).length);
+        assertEquals(1, journals.list().length);
+
+        // the journal trusts the target, it isn't looked at
+        new File(dest, "a.txt").setLastModified(now - 200000);
+        assertEquals(0, restrict(new IdentityMapper()).length);
+
+        write(new File(src, "a.txt"), "changed", now - 90000);
+        assertEquals(new String[] {"a.txt"}, restrict(new IdentityMapper()));
+    }
+
+    public void testDeletedTarget() {
+        assertEquals(0, restrict(new IdentityMapper()).length);
+        new File(dest, "b.txt").delete();
+        dest.setLastModified(now - 40000);
+        assertEquals(new String[] {"b.txt"}, restrict(new IdentityMapper()));
+        // out of date sources are not recorded
+        assertEquals(new String[] {"b.txt"}, restrict(new IdentityMapper()));
+    }
+
+    public void testMapperChange() throws IOException {
+        assertEquals(0, restrict(glob("*.txt")).length);
+        write(new File(dest, "a.bak"), "a", now - 200000);
+        write(new File(dest, "b.bak"), "b", now - 50000);
+        dest.setLastModified(now - 50000);
+        assertEquals(new String[] {"a.txt"}, restrict(glob("*.bak")));
+    }
+
+    public void testAddedSource() throws IOException {
+        assertEquals(0, restrict(new IdentityMapper()).length);
+        write(new File(src, "c.txt"), "c", now - 100000);
+        assertEquals(new String[] {"c.txt"},
+                     new SourceFileScanner(task)
+                     .restrict(new String[] {"a.txt", "b.txt", "c.txt"},
+                               src, dest, new IdentityMapper()));
+    }
+
+    public void testCorruptJournalIsIgnored() throws IOException {
+        assertEquals(0, restrict(new IdentityMapper()).length);
+        File journal = journals.listFiles()[0];
+        DataOutputStream out =
+            new DataOutputStream(new FileOutputStream(journal));
+        try {
+            out.writeInt(0x416e744a);
+            out.writeInt(1);
+            out.writeInt(-1);
+        } finally {
+            out.close();
+        }
+        assertEquals(0, restrict(new IdentityMapper()).length);
+        // the journal has been replaced
+        assertTrue(journal.length() > 12);
+
+        out = new DataOutputStream(new FileOutputStream(journal));
+        try {
+            out.writeInt(0x416e744a);
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeUTF("a.txt");
+            out.writeLong(1);
+            out.writeLong(2);
+            out.writeInt(Integer.MAX_VALUE);
+        } finally {
+            out.close();
+        }
+        assertEquals(0, restrict(new IdentityMapper()).length);
+    }
+
+    private String[] restrict(FileNameMapper mapper) {
+        return new SourceFileScanner(task).restrict(FILES, src, dest, mapper);
+    }
+
+    private static FileNameMapper glob(String to) {
+        GlobPatternMapper m = new GlobPatternMapper();
+        m.setFrom("*.txt");
+        m.setTo(to);
+        return m;
+    }
+
+    private static void write(File f, String content, long lastModified)
+        throws IOException {
+        FileWriter w = new FileWriter(f);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+        f.setLastModified(lastModified);
+    }
+
+    private static void assertEquals(String[] expected, String[] actual) {
+        assertEquals(java.util.Arrays.asList(expected),
+                     java.util.Arrays.asList(actual));
+    }
+}
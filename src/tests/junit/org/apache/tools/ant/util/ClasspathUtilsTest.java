@@ -18,12 +18,18 @@
 
 package org.apache.tools.ant.util;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Enumeration;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
 
 import junit.framework.TestCase;
 
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.MagicNames;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.Path;
 
@@ -64,4 +70,75 @@ public class ClasspathUtilsTest extends TestCase {
         }
         assertTrue("Should be only one and not " + count + " " + list, count == 1);
     }
+
+    public void testSharedLoader() throws IOException {
+        File jar = FileUtils.getFileUtils()
+            .createTempFile("shared", ".jar", null, true, true);
+        jar.createNewFile();
+        Project p2 = new Project();
+        p2.init();
+        Path path = new Path(p, jar.getAbsolutePath());
+        Path path2 = new Path(p2, jar.getAbsolutePath());
+
+        ClassLoader c = ClasspathUtils.getClassLoaderForPath(p, path, null);
+        ClassLoader c2 = ClasspathUtils.getClassLoaderForPath(p2, path2, null);
+        assertNotSame(c, c2);
+
+        p.setProperty(MagicNames.CLASSLOADER_CACHE, "true");
+        p2.setProperty(MagicNames.CLASSLOADER_CACHE, "true");
+        c = ClasspathUtils.getClassLoaderForPath(p, path, null);
+        c2 = ClasspathUtils.getClassLoaderForPath(p2, path2, null);
+        assertSame(c, c2);
+
+        p.fireBuildFinished(null);
+        p2.fireBuildFinished(null);
+        Project p3 = new Project();
+        p3.init();
+        p3.setProperty(MagicNames.CLASSLOADER_CACHE, "true");
+        assertSame(c, ClasspathUtils.getClassLoaderForPath(p3,
+                                                           new Path(p3, jar.getAbsolutePath()),
+                                                           null));
+        p3.fireBuildFinished(null);
+    }
+
+    public void testSharedLoaderOutlivesCreatingProject() throws IOException {
+        File jar = FileUtils.getFileUtils()
+            .createTempFile("shared", ".jar", null, true, true);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new ZipEntry("shared.txt"));
+            for (int i = 0; i < 10000; i++) {
+                out.write("shared\n".getBytes("US-ASCII"));
+            }
+        } finally {
+            out.close();
+        }
+        Project p2 = new Project();
+        p2.init();
+        p.setProperty(MagicNames.CLASSLOADER_CACHE, "true");
+        p2.setProperty(MagicNames.CLASSLOADER_CACHE, "true");
+        ClassLoader c = ClasspathUtils
+            .getClassLoaderForPath(p, new Path(p, jar.getAbsolutePath()), null);
+        ClassLoader c2 = ClasspathUtils
+            .getClassLoaderForPath(p2, new Path(p2, jar.getAbsolutePath()),
+                                   null);
+        assertSame(c, c2);
+        assertFalse(p.getBuildListeners().contains(c));
+
+        InputStream in = c2.getResourceAsStream("shared.txt");
+        assertNotNull(in);
+        try {
+            in.read();
+            p.fireBuildFinished(null);
+            int count = 1;
+            while (in.read() != -1) {
+                count++;
+            }
+            assertEquals(70000, count);
+        } finally {
+            in.close();
+        }
+        assertNotNull(c2.getResource("shared.txt"));
+        p2.fireBuildFinished(null);
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.util;
+
+import junit.framework.TestCase;
+
+public class FastHashTest extends TestCase {
+
+    private static final String FOX =
+        "The quick brown fox jumps over the lazy dog";
+
+    public void testXXH64() {
+        assertEquals("ef46db3751d8e999", hash(FastHash.XXH64, ""));
+        assertEquals("44bc2cf5ad770999", hash(FastHash.XXH64, "abc"));
+        assertEquals("fbcea83c8a378bf1",
+                     hash(FastHash.XXH64,
+                          "Nobody inspects the spammish repetition"));
+    }
+
+    public void testMurmur3() {
+        assertEquals("00000000000000000000000000000000",
+                     hash(FastHash.MURMUR3_128, ""));
+        assertEquals("6145f501578671e2877dba2be487af7e",
+                     hash(FastHash.MURMUR3_128, "foo"));
+        assertEquals("6c1b07bc7bbc4be347939ac4a93c437a",
+                     hash(FastHash.MURMUR3_128, FOX));
+    }
+
+    public void testUpdateInPieces() {
+        byte[] b = new byte[1000];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) (i * 31);
+        }
+        String[] algorithms = {FastHash.XXH64, FastHash.MURMUR3_128};
+        for (int a = 0; a < algorithms.length; a++) {
+            FastHash h = FastHash.getInstance(algorithms[a]);
+            h.update(b, 0, b.length);
+            String expected = FastHash.toHex(h.digest());
+            for (int piece = 1; piece < 40; piece += 3) {
+                for (int off = 0; off < b.length; off += piece) {
+                    h.update(b, off, Math.min(piece, b.length - off));
+                }
+                assertEquals(algorithms[a] + " in pieces of " + piece,
+                             expected, FastHash.toHex(h.digest()));
+            }
+        }
+    }
+
+    public void testAlgorithmNames() {
+        assertTrue(FastHash.isSupported("xxh64"));
+        assertTrue(FastHash.isSupported("Murmur3_128"));
+        assertFalse(FastHash.isSupported("MD5"));
+        assertFalse(FastHash.isSupported(null));
+        try {
+            FastHash.getInstance("MD5");
+            fail("expected an exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static String hash(String algorithm, String s) {
+        FastHash h = FastHash.getInstance(algorithm);
+        byte[] b = s.getBytes();
+        h.update(b, 0, b.length);
+        return FastHash.toHex(h.digest());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.apache.tools.ant.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+public class MetricsTest extends TestCase {
+
+    private boolean wasEnabled;
+
+    public MetricsTest(String name) {
+        super(name);
+    }
+
+    public void setUp() {
+        wasEnabled = Metrics.isEnabled();
+        Metrics.setEnabled(true);
+    }
+
+    public void tearDown() {
+        Metrics.setEnabled(wasEnabled);
+    }
+
+    public void testCounter() {
+        Metrics.Counter c = Metrics.getMetrics()
+            .getCounter("test_counter_total", "a counter");
+        assertSame(c, Metrics.getMetrics().getCounter("test_counter_total", "x"));
+        long before = c.getValue();
+        c.increment();
+        c.add(41);
+        assertEquals(before + 42, c.getValue());
+        Metrics.setEnabled(false);
+        c.add(1);
+        assertEquals(before + 42, c.getValue());
+    }
+
+    public void testHistogram() {
+        Metrics.Histogram h = Metrics.getMetrics()
+            .getHistogram("test_histogram", "a histogram");
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(1000, h.getCount());
+        assertEquals(500500000L, h.getSum());
+        assertEquals(1000, h.getMin());
+        assertEquals(1000000, h.getMax());
+        assertWithin(500000, h.getQuantile(0.5));
+        assertWithin(900000, h.getQuantile(0.9));
+        assertWithin(990000, h.getQuantile(0.99));
+        assertEquals(1000000, h.getQuantile(1));
+    }
+
+    public void testOutput() throws IOException {
+        Metrics.getMetrics().getCounter("test_output_total", "some help").add(3);
+        StringWriter w = new StringWriter();
+        Metrics.getMetrics().writePrometheus(w);
+        String s = w.toString();
+        assertTrue(s, s.indexOf("# HELP test_output_total some help\n"
+                                + "# TYPE test_output_total counter\n"
+                                + "test_output_total 3\n") > -1);
+        w = new StringWriter();
+        Metrics.getMetrics().writeJson(w);
+        s = w.toString();
+        assertTrue(s, s.indexOf("\"test_output_total\": 3") > -1);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual,
+                   Math.abs(expected - actual) <= expected / 8);
+    }
+}
@@ -18,12 +18,19 @@
 
 package org.apache.tools.ant.util;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 import junit.framework.TestCase;
 
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Echo;
 import org.apache.tools.ant.types.Resource;
 import org.apache.tools.ant.types.ResourceFactory;
+import org.apache.tools.ant.types.resources.FileResource;
+import org.apache.tools.ant.types.resources.StringResource;
 
 /**
  * Tests for org.apache.tools.ant.util.ResourceUtils.
@@ -47,6 +54,88 @@ public class ResourceUtilsTest extends TestCase
         assertEquals(1, toNew.length);
     }
 
+    public void testBinaryCompareFiles() throws IOException {
+        byte[] content = new byte[200 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        File f1 = createFile(content, content.length);
+        File f2 = createFile(content, content.length);
+        try {
+            assertTrue(ResourceUtils.contentEquals(new FileResource(f1),
+                                                   new FileResource(f2),
+                                                   false));
+            assertEquals(0, ResourceUtils.binaryCompare(f1, f2, 3));
+
+            content[150 * 1024] = (byte) 0xF0;
+            write(f2, content, content.length);
+            assertFalse(ResourceUtils.contentEquals(new FileResource(f1),
+                                                    new FileResource(f2),
+                                                    false));
+            assertEquals(-1, ResourceUtils.binaryCompare(f1, f2, 3));
+            assertEquals(1, ResourceUtils.binaryCompare(f2, f1, 3));
+
+            // the first difference decides
+            content[10] = 0;
+            write(f2, content, content.length);
+            assertEquals(1, ResourceUtils.binaryCompare(f1, f2, 3));
+
+            write(f2, content, 11);
+            write(f1, content, 10);
+            assertEquals(-1, ResourceUtils.compareContent(new FileResource(f1),
+                                                          new FileResource(f2),
+                                                          false));
+            assertEquals(-1, ResourceUtils.binaryCompare(f1, f2, 3));
+        } finally {
+            f1.delete();
+            f2.delete();
+        }
+    }
+
+    public void testBinaryCompareStreams() throws IOException {
+        assertEquals(0, binaryCompare("foo", "foo"));
+        assertEquals(-1, binaryCompare("foo", "fop"));
+        assertEquals(-1, binaryCompare("fo", "foo"));
+        assertEquals(1, binaryCompare("foo", "fo"));
+    }
+
+    public void testTextCompare() throws IOException {
+        assertEquals(0, textCompare("a\r\nb", "a\nb\n"));
+        assertEquals(0, textCompare("a\rb\r", "a\r\nb"));
+        assertEquals(1, textCompare("a\n\n", "a\n"));
+        assertEquals(-1, textCompare("", "\n"));
+        assertEquals(-1, textCompare("a", "a\tb"));
+        assertEquals(1, textCompare("ab", "a\nb"));
+        assertEquals(-1, textCompare("a\nb", "a\nc"));
+    }
+
+    private static int binaryCompare(String s1, String s2) throws IOException {
+        return ResourceUtils.compareContent(new StringResource(s1),
+                                            new StringResource(s2), false);
+    }
+
+    private static int textCompare(String s1, String s2) throws IOException {
+        return ResourceUtils.compareContent(new StringResource(s1),
+                                            new StringResource(s2), true);
+    }
+
+    private static File createFile(byte[] content, int len) throws IOException {
+        File f = File.createTempFile("resourceutils", ".bin");
+        f.deleteOnExit();
+        write(f, content, len);
+        return f;
+    }
+
+    private static void write(File f, byte[] content, int len)
+        throws IOException {
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(content, 0, len);
+        } finally {
+            out.close();
+        }
+    }
+
     /* ============ ResourceFactory interface ====================== */
     public Resource getResource(String name) {
         return new Resource(name); // implies lastModified == 0